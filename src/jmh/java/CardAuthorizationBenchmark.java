@@ -0,0 +1,59 @@
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to authorize a batch of card payments through a LocalCardGateway with 2 ms latency, waiting for each answer
+ * before sending the next, against pipelining them through a CardAuthorizer with 1, 8 or 32 requests in flight.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CardAuthorizationBenchmark {
+
+    private static final int PAYMENTS = 64;
+    private static final long AMOUNT_IN_MINOR_UNITS = 347_50;
+
+    @Param({"1", "8", "32"})
+    public int maxRequestsInFlight;
+
+    private LocalCardGateway gateway;
+    private CardAuthorizer authorizer;
+
+    @Setup(Level.Trial)
+    public void openGateway() {
+        gateway = new LocalCardGateway.LocalCardGatewayBuilder().setLatencyInMs(2).build();
+        authorizer = new CardAuthorizer(gateway, maxRequestsInFlight, 1000, 3);
+    }
+
+    @TearDown(Level.Trial)
+    public void closeGateway() {
+        authorizer.close();
+        gateway.close();
+    }
+
+    @Benchmark
+    public int waitForEachAnswer() {
+        int approved = 0;
+        for (int i = 0; i < PAYMENTS; i++) {
+            if (authorizer.authorize(AMOUNT_IN_MINOR_UNITS).join()) {
+                approved++;
+            }
+        }
+        return approved;
+    }
+
+    @Benchmark
+    public int pipelined() {
+        CompletableFuture<?>[] answers = new CompletableFuture<?>[PAYMENTS];
+        for (int i = 0; i < PAYMENTS; i++) {
+            answers[i] = authorizer.authorize(AMOUNT_IN_MINOR_UNITS);
+        }
+        CompletableFuture.allOf(answers).join();
+        return answers.length;
+    }
+}
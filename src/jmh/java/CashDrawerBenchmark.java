@@ -0,0 +1,58 @@
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of making change from a CashDrawer: from a full drawer, where greedy change is enough, from a drawer out of
+ * 20 kr notes and 2 kr coins, which needs the change-making table, and from a drawer that cannot make the change.
+ * Every exchange is undone, so the drawers stay the same between invocations.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CashDrawerBenchmark {
+
+    @Param({"1_00", "652_00", "1996_00"})
+    public String change;
+
+    private long changeInMinorUnits;
+    private final int[] tender = new int[CashDrawer.NUMBER_OF_DENOMINATIONS];
+    private final int[] result = new int[CashDrawer.NUMBER_OF_DENOMINATIONS];
+    private CashDrawer fullDrawer;
+    private CashDrawer drawerOutOfTwenties;
+    private CashDrawer drawerOutOfCoins;
+
+    @Setup(Level.Trial)
+    public void fillDrawers() {
+        changeInMinorUnits = Long.parseLong(change.replace("_", ""));
+        fullDrawer = new CashDrawer(5, 10, 20, 20, 20, 20, 20, 20, 20, 20, 500);
+        drawerOutOfTwenties = new CashDrawer(5, 10, 20, 20, 20, 0, 20, 20, 0, 20, 500);
+        drawerOutOfCoins = new CashDrawer(5, 10, 20, 20, 20, 20, 20, 0, 0, 0, 0);
+    }
+
+    @Benchmark
+    public boolean greedy() {
+        return exchangeAndUndo(fullDrawer);
+    }
+
+    @Benchmark
+    public boolean table() {
+        return exchangeAndUndo(drawerOutOfTwenties);
+    }
+
+    @Benchmark
+    public boolean insufficientChange() {
+        return exchangeAndUndo(drawerOutOfCoins);
+    }
+
+    private boolean exchangeAndUndo(CashDrawer drawer) {
+        boolean exchanged = drawer.exchange(tender, changeInMinorUnits, result);
+        if (exchanged) {
+            drawer.undoExchange(tender, result);
+        }
+        return exchanged;
+    }
+}
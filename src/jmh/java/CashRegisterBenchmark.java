@@ -0,0 +1,125 @@
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of taking one payment, by card and by cash with change, including recording it in the register's storage:
+ * rewriting the balance file (REWRITE), appending to its payment log with each PaymentLog.Durability, storing into
+ * the mapped balance file with and without forcing it (MAPPED_FORCED, MAPPED), or in memory only (IN_MEMORY).
+ * A split-tender payment, taken as one transaction, is measured against the same payment as one call per tender.
+ * The balance file is a temporary copy, so the real one in src/main/resources is never touched.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CashRegisterBenchmark {
+
+    private static final long COST_IN_MINOR_UNITS = 347_50;
+    private static final long GIFT_CARD_AMOUNT_IN_MINOR_UNITS = 100_00;
+    private static final long CARD_AMOUNT_IN_MINOR_UNITS = 200_00;
+
+    @Param({"REWRITE", "PER_PAYMENT", "BATCHED", "ASYNC", "MAPPED_FORCED", "MAPPED", "IN_MEMORY"})
+    public String persistence;
+
+    private Path balanceFile;
+    private String balanceFileName;
+    private CashRegister cashRegister;
+    private HashMap<CashMoney, Integer> payment;
+    private final int[] tender = new int[CashDrawer.NUMBER_OF_DENOMINATIONS];
+    private final int[] change = new int[CashDrawer.NUMBER_OF_DENOMINATIONS];
+    private SplitPayment splitPayment;
+    private final int[] cashRest = new int[CashDrawer.NUMBER_OF_DENOMINATIONS];
+
+    @Setup(Level.Trial)
+    public void createCashRegister() throws IOException {
+        boolean slotted = persistence.equals("REWRITE") || persistence.startsWith("MAPPED");
+        balanceFile = Files.createTempFile("cashRegisterMoney", slotted ? RegisterStateFile.STATE_FILE_EXTENSION : ".txt");
+        RegisterStateFile.write(balanceFile, 0, 0);
+        balanceFileName = balanceFile.toString();
+        cashRegister = new CashRegister(switch (persistence) {
+            case "REWRITE" -> new FileRegisterStorage(balanceFileName);
+            case "MAPPED_FORCED" -> new MappedRegisterStorage(balanceFileName, true);
+            case "MAPPED" -> new MappedRegisterStorage(balanceFileName, false);
+            case "IN_MEMORY" -> new InMemoryRegisterStorage();
+            default -> new PaymentLog(balanceFileName, PaymentLog.Durability.valueOf(persistence));
+        });
+
+        payment = new HashMap<>();
+        payment.put(new CashMoney(200_00), 1);
+        payment.put(new CashMoney(100_00), 1);
+        payment.put(new CashMoney(50_00), 1);
+        for (CashMoney cash : payment.keySet()) {
+            tender[CashDrawer.indexOf(cash.getCashMoneyDenomination())] = payment.get(cash);
+        }
+        splitPayment = new SplitPayment.SplitPaymentBuilder(COST_IN_MINOR_UNITS)
+                .addGiftCard(GIFT_CARD_AMOUNT_IN_MINOR_UNITS)
+                .addCard(CARD_AMOUNT_IN_MINOR_UNITS)
+                .addCash(CashMoney.valueOf(100_00), 1)
+                .build();
+        cashRest[CashDrawer.indexOf(100_00)] = 1;
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteBalanceFile() throws IOException {
+        cashRegister.close();
+        Files.deleteIfExists(balanceFile);
+        Files.deleteIfExists(Path.of(balanceFileName + ".wal"));
+    }
+
+    /**
+     * Four lanes paying at once, where BATCHED shares one fsync between the payments waiting for it.
+     */
+    @Benchmark
+    @Threads(4)
+    public CashRegister payByCardFromFourLanes() {
+        cashRegister.payByCard(COST_IN_MINOR_UNITS);
+        return cashRegister;
+    }
+
+    @Benchmark
+    public CashRegister payByCard() {
+        cashRegister.payByCard(COST_IN_MINOR_UNITS);
+        return cashRegister;
+    }
+
+    @Benchmark
+    public HashMap<CashMoney, Integer> payByCashWithChange() {
+        return cashRegister.payByCash(payment, COST_IN_MINOR_UNITS);
+    }
+
+    /**
+     * A payment part by gift card, part by card and the rest in cash, taken as one transaction with one write.
+     */
+    @Benchmark
+    public int[] splitTender() {
+        cashRegister.pay(splitPayment, change);
+        return change;
+    }
+
+    /**
+     * The same payment as splitTender, taken as one call per tender, each with its own write.
+     */
+    @Benchmark
+    public int[] splitTenderAsSequentialCalls() {
+        cashRegister.payByCard(GIFT_CARD_AMOUNT_IN_MINOR_UNITS);
+        cashRegister.payByCard(CARD_AMOUNT_IN_MINOR_UNITS);
+        cashRegister.payByCash(cashRest, COST_IN_MINOR_UNITS - GIFT_CARD_AMOUNT_IN_MINOR_UNITS - CARD_AMOUNT_IN_MINOR_UNITS, change);
+        return change;
+    }
+
+    /**
+     * The same payment as payByCashWithChange, with tender and change as reused vectors of counts.
+     */
+    @Benchmark
+    public int[] payByCashWithChangeFromTender() {
+        cashRegister.payByCash(tender, COST_IN_MINOR_UNITS, change);
+        return change;
+    }
+}
@@ -0,0 +1,90 @@
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Measures card payments from 8 lanes at once, each paying at a register of its own in one CashRegisterGroup,
+ * against 8 lanes sharing one register, and the cost of the consistent store-wide total while lanes pay.
+ * Registers log asynchronously, so the benchmarks measure the totals rather than the disk.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CashRegisterGroupBenchmark {
+
+    private static final int LANES = 8;
+    private static final long COST_IN_MINOR_UNITS = 347_50;
+
+    @State(Scope.Benchmark)
+    public static class Store {
+
+        Path directory;
+        CashRegisterGroup group;
+        final AtomicInteger nextLane = new AtomicInteger();
+
+        @Setup(Level.Trial)
+        public void openRegisters() throws IOException {
+            directory = Files.createTempDirectory("registers");
+            group = new CashRegisterGroup(directory.toString(), LANES, PaymentLog.Durability.ASYNC);
+        }
+
+        @TearDown(Level.Trial)
+        public void deleteRegisters() throws IOException {
+            group.close();
+            try (Stream<Path> files = Files.walk(directory)) {
+                for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Lane {
+
+        CashRegister register;
+
+        @Setup(Level.Trial)
+        public void pickRegister(Store store) {
+            register = store.group.getRegister(store.nextLane.getAndIncrement() % LANES);
+        }
+    }
+
+    @Benchmark
+    @Threads(LANES)
+    public CashRegister ownRegisterPerLane(Lane lane) {
+        lane.register.payByCard(COST_IN_MINOR_UNITS);
+        return lane.register;
+    }
+
+    @Benchmark
+    @Threads(LANES)
+    public CashRegister sharedRegister(Store store) {
+        CashRegister register = store.group.getRegister(0);
+        register.payByCard(COST_IN_MINOR_UNITS);
+        return register;
+    }
+
+    @Benchmark
+    @Group("payingWhileTotaling")
+    @GroupThreads(LANES - 1)
+    public CashRegister pay(Lane lane) {
+        lane.register.payByCard(COST_IN_MINOR_UNITS);
+        return lane.register;
+    }
+
+    @Benchmark
+    @Group("payingWhileTotaling")
+    @GroupThreads(1)
+    public long total(Store store) {
+        return store.group.getAmountOfMoneyInStore();
+    }
+}
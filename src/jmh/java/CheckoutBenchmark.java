@@ -0,0 +1,109 @@
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of one customer at the till: scanning a basket of [basketSize] distinct products, removing every scanned
+ * product again, and printing or rendering the receipt for a basket of that size. The pallet benchmarks compare scanning
+ * PALLET_SIZE units of one product unit by unit with scanning them in one call.
+ * Stock is large enough that no scan ever runs out, and every basket is given back, so iterations are independent.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CheckoutBenchmark {
+
+    private static final int NUMBER_OF_PRODUCTS = 10_000;
+    private static final int PALLET_SIZE = 500;
+
+    @Param({"5", "25", "100"})
+    public int basketSize;
+
+    private Product[] basket;
+    private Receipt receipt;
+    private final ByteBuffer receiptBuffer = ByteBuffer.allocateDirect(64 * 1024);
+
+    @Setup(Level.Trial)
+    public void createBasket() {
+        InventoryBalance inventoryBalance = new InventoryBalance(NUMBER_OF_PRODUCTS);
+        for (int i = 0; i < NUMBER_OF_PRODUCTS; i++) {
+            inventoryBalance.addProduct(new Product.ProductBuilder("Brand" + (i % 500), "Product" + i)
+                    .setPrice(10_00 + i % 500)
+                    .setAmount(1_000_000_000)
+                    .setVatRate(i % 3 == 0 ? VAT.STANDARD : VAT.FOOD)
+                    .setDiscount(i % 4 == 0 ? 10 : 0)
+                    .build());
+        }
+        basket = new Product[basketSize];
+        for (int i = 0; i < basketSize; i++) {
+            basket[i] = inventoryBalance.get("Brand" + ((i * 97) % 500), "Product" + ((i * 97) % NUMBER_OF_PRODUCTS));
+        }
+
+        Purchase purchase = new Purchase();
+        for (Product product : basket) {
+            purchase.scanItem(product);
+        }
+        receipt = new Receipt(purchase);
+    }
+
+    @Benchmark
+    public Purchase scanBasket() {
+        Purchase purchase = new Purchase();
+        for (Product product : basket) {
+            purchase.scanItem(product);
+        }
+        purchase.cancelPurchase();
+        return purchase;
+    }
+
+    @Benchmark
+    public Purchase scanAndRemoveBasket() {
+        Purchase purchase = new Purchase();
+        for (Product product : basket) {
+            purchase.scanItem(product);
+        }
+        for (Product product : basket) {
+            purchase.removeScannedItem(product);
+        }
+        return purchase;
+    }
+
+    @Benchmark
+    public Purchase scanPalletUnitByUnit() {
+        Purchase purchase = new Purchase();
+        for (int i = 0; i < PALLET_SIZE; i++) {
+            purchase.scanItem(basket[0]);
+        }
+        purchase.cancelPurchase();
+        return purchase;
+    }
+
+    @Benchmark
+    public Purchase scanPalletAtOnce() {
+        Purchase purchase = new Purchase();
+        purchase.scanItem(basket[0], PALLET_SIZE);
+        purchase.cancelPurchase();
+        return purchase;
+    }
+
+    @Benchmark
+    public String printReceipt() {
+        return receipt.toString();
+    }
+
+    @Benchmark
+    public int renderReceiptToByteBuffer() {
+        receiptBuffer.clear();
+        return ReceiptRenderer.renderText(receipt, receiptBuffer);
+    }
+
+    @Benchmark
+    public int renderJsonReceiptToByteBuffer() {
+        receiptBuffer.clear();
+        return ReceiptRenderer.renderJson(receipt, receiptBuffer);
+    }
+}
@@ -0,0 +1,29 @@
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of validating and building a Customer, with only the mandatory values and with every value set.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CustomerBenchmark {
+
+    @Benchmark
+    public Customer buildWithMandatoryValues() {
+        return new Customer.CustomerBuilder("Anna Andersson", "9001011234").build();
+    }
+
+    @Benchmark
+    public Customer buildWithAllValues() {
+        return new Customer.CustomerBuilder("Anna Andersson", "9001011234")
+                .setPhoneNumber("0701234567")
+                .setEmailAddress("anna.andersson@example.com")
+                .setAddress("Storgatan 1")
+                .build();
+    }
+}
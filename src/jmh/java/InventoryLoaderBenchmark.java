@@ -0,0 +1,53 @@
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the line-by-line csv-loader with the memory-mapped, parallel one.
+ * A catalog with [numberOfProducts] unique products is generated once per trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class InventoryLoaderBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    public int numberOfProducts;
+
+    private Path catalogFile;
+
+    @Setup(Level.Trial)
+    public void writeCatalogFile() throws IOException {
+        catalogFile = Files.createTempFile("catalog", ".csv");
+        try (BufferedWriter writer = Files.newBufferedWriter(catalogFile, StandardCharsets.UTF_8)) {
+            writer.write("brandName,productName,priceInMinorUnits,vatRate,amount,discount,\n");
+            for (int i = 0; i < numberOfProducts; i++) {
+                writer.write("Brand" + (i % 500) + ",Product" + i + "," + (100 + i % 100_000)
+                        + ",VAT.FOOD," + (1 + i % 50) + "," + (i % 10) + ",\n");
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteCatalogFile() throws IOException {
+        Files.deleteIfExists(catalogFile);
+    }
+
+    @Benchmark
+    public InventoryBalance bufferedReader() {
+        return InventoryLoader.createInventoryBalanceFromTextFile(catalogFile.toString());
+    }
+
+    @Benchmark
+    public InventoryBalance mappedFile() {
+        return InventoryLoader.createInventoryBalanceFromMappedFile(catalogFile.toString());
+    }
+}
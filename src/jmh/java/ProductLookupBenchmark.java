@@ -0,0 +1,67 @@
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of looking a product up at the till, by brand and name or by barcode.
+ * Run with -prof gc to confirm that none of the lookups allocate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ProductLookupBenchmark {
+
+    private static final long FIRST_BARCODE = 7_310_000_000_000L;
+
+    @Param({"1000", "1000000"})
+    public int numberOfProducts;
+
+    private InventoryBalance inventoryBalance;
+    private String[] brandNames;
+    private String[] productNames;
+    private Product[] products;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void createInventory() {
+        inventoryBalance = new InventoryBalance(numberOfProducts);
+        brandNames = new String[numberOfProducts];
+        productNames = new String[numberOfProducts];
+        products = new Product[numberOfProducts];
+        for (int i = 0; i < numberOfProducts; i++) {
+            brandNames[i] = "Brand" + (i % 500);
+            productNames[i] = "Product" + i;
+            products[i] = new Product.ProductBuilder(brandNames[i], productNames[i])
+                    .setPrice(10_00)
+                    .setAmount(10)
+                    .setVatRate(VAT.FOOD)
+                    .setBarcode(FIRST_BARCODE + i)
+                    .build();
+            inventoryBalance.addProduct(products[i]);
+        }
+    }
+
+    private int nextIndex() {
+        next = (next + 7919) % numberOfProducts;
+        return next;
+    }
+
+    @Benchmark
+    public Product getByName() {
+        int i = nextIndex();
+        return inventoryBalance.get(brandNames[i], productNames[i]);
+    }
+
+    @Benchmark
+    public Product getByBarcode() {
+        return inventoryBalance.getByBarcode(FIRST_BARCODE + nextIndex());
+    }
+
+    @Benchmark
+    public boolean contains() {
+        return inventoryBalance.contains(products[nextIndex()]);
+    }
+}
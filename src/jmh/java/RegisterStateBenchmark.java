@@ -0,0 +1,96 @@
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of writing the register's balance file and of recovering the balance from it at startup.
+ * <p>
+ * Writing over the older of the two checksummed copies of a .state file is measured against the two ways of writing
+ * a text file: truncating and rewriting the text in place, as the register used to, which is neither forced nor safe
+ * against a crash, and writing a temporary file, forcing it and renaming it over the balance file, as
+ * RegisterStateFile writes text files now. Recovery reads both copies of a .state file, against reading a text file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RegisterStateBenchmark {
+
+    private static final long PAYMENT_IN_MINOR_UNITS = 347_50;
+
+    private Path directory;
+    private Path slottedFile;
+    private Path textFile;
+    private long balance;
+
+    @Setup(Level.Trial)
+    public void createBalanceFiles() throws IOException {
+        directory = Files.createTempDirectory("register-state");
+        slottedFile = directory.resolve("slotted.state");
+        textFile = directory.resolve("text.txt");
+        RegisterStateFile.write(slottedFile, 0, 0);
+        Files.writeString(textFile, "0");
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteBalanceFiles() throws IOException {
+        Files.deleteIfExists(slottedFile);
+        Files.deleteIfExists(textFile);
+        Files.deleteIfExists(directory.resolve("text.txt.tmp"));
+        Files.delete(directory);
+    }
+
+    @Benchmark
+    public long writeOverOlderCopy() {
+        balance += PAYMENT_IN_MINOR_UNITS;
+        RegisterStateFile.write(slottedFile, balance, 0);
+        return balance;
+    }
+
+    @Benchmark
+    public long rewriteTextInPlace() throws IOException {
+        balance += PAYMENT_IN_MINOR_UNITS;
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(textFile.toFile()))) {
+            writer.write(String.valueOf(balance));
+        }
+        return balance;
+    }
+
+    @Benchmark
+    public long writeTemporaryFileAndRename() throws IOException {
+        balance += PAYMENT_IN_MINOR_UNITS;
+        Path temporaryFile = directory.resolve("text.txt.tmp");
+        try (FileChannel channel = FileChannel.open(temporaryFile, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer content = StandardCharsets.UTF_8.encode(String.valueOf(balance));
+            while (content.hasRemaining()) {
+                channel.write(content);
+            }
+            channel.force(true);
+        }
+        Files.move(temporaryFile, textFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return balance;
+    }
+
+    @Benchmark
+    public long recoverFromSlottedFile() {
+        return RegisterStateFile.read(slottedFile).getBalanceInMinorUnit();
+    }
+
+    @Benchmark
+    public long recoverFromTextFile() {
+        return RegisterStateFile.read(textFile).getBalanceInMinorUnit();
+    }
+}
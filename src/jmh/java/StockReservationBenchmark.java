@@ -0,0 +1,83 @@
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Measures Product.tryReserve/release under contention, with 1 and 20 lanes.
+ * In the hotProduct benchmarks every lane reserves the same product; in the ownProduct benchmarks every lane
+ * reserves a product of its own from the same inventory.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class StockReservationBenchmark {
+
+    private static final int LANES = 20;
+
+    @State(Scope.Benchmark)
+    public static class SharedInventory {
+
+        InventoryBalance inventoryBalance;
+        Product hotProduct;
+        final AtomicInteger nextLane = new AtomicInteger();
+
+        @Setup(Level.Trial)
+        public void createInventory() {
+            inventoryBalance = new InventoryBalance(LANES + 1);
+            hotProduct = createProduct("Hot");
+            inventoryBalance.addProduct(hotProduct);
+            for (int i = 0; i < LANES; i++) {
+                inventoryBalance.addProduct(createProduct("Lane " + i));
+            }
+        }
+
+        private static Product createProduct(String productName) {
+            return new Product.ProductBuilder("Benchmark", productName)
+                    .setPrice(10_00)
+                    .setAmount(1_000_000)
+                    .setVatRate(VAT.FOOD)
+                    .build();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Lane {
+
+        Product ownProduct;
+
+        @Setup(Level.Trial)
+        public void pickProduct(SharedInventory shared) {
+            int lane = shared.nextLane.getAndIncrement() % LANES;
+            ownProduct = shared.inventoryBalance.get("Benchmark", "Lane " + lane);
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean hotProductOneLane(SharedInventory shared) {
+        return reserveAndRelease(shared.hotProduct);
+    }
+
+    @Benchmark
+    @Threads(LANES)
+    public boolean hotProductTwentyLanes(SharedInventory shared) {
+        return reserveAndRelease(shared.hotProduct);
+    }
+
+    @Benchmark
+    @Threads(LANES)
+    public boolean ownProductTwentyLanes(Lane lane) {
+        return reserveAndRelease(lane.ownProduct);
+    }
+
+    private static boolean reserveAndRelease(Product product) {
+        boolean reserved = product.tryReserve(1);
+        if (reserved) {
+            product.release(1);
+        }
+        return reserved;
+    }
+}
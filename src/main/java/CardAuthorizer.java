@@ -0,0 +1,202 @@
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends card authorizations to a CardGateway without making the lane wait for each answer.
+ * <p>
+ * authorize(amount) returns a future at once. At most [maxRequestsInFlight] requests are sent to the gateway at a
+ * time; further requests wait in a queue and are sent as answers come back, so a slow gateway is never flooded.
+ * A request that is not answered within [timeoutInMs], or fails, is sent again with the same request id after a
+ * backoff that doubles from RETRY_BACKOFF_IN_MS, until it has been sent [maxAttempts] times. A declined payment is
+ * an answer and is not retried.
+ * <p>
+ * A timed-out attempt may still be approved by the gateway later, so a request given up on is reversed, as is an
+ * approved payment whose sale cannot be recorded. The customer is never charged for a payment the lane was told
+ * failed. Reversals are retried like requests, without taking a place in flight.
+ */
+public class CardAuthorizer implements AutoCloseable {
+
+    static final long RETRY_BACKOFF_IN_MS = 10;
+
+    private final CardGateway gateway;
+    private final long timeoutInMs;
+    private final int maxAttempts;
+    private final Semaphore requestsInFlight;
+    private final Queue<Request> waitingRequests = new ConcurrentLinkedQueue<>();
+    private final AtomicLong lastRequestId = new AtomicLong();
+    private final ScheduledExecutorService retryScheduler;
+
+    /**
+     * @throws IllegalArgumentException if [maxRequestsInFlight], [timeoutInMs] or [maxAttempts] is not positive.
+     */
+    public CardAuthorizer(CardGateway gateway, int maxRequestsInFlight, long timeoutInMs, int maxAttempts) {
+        if (gateway == null) {
+            throw new IllegalArgumentException("Gateway missing.");
+        }
+        if (maxRequestsInFlight <= 0 || timeoutInMs <= 0 || maxAttempts <= 0) {
+            throw new IllegalArgumentException("Requests in flight, timeout and attempts must be positive.");
+        }
+        this.gateway = gateway;
+        this.timeoutInMs = timeoutInMs;
+        this.maxAttempts = maxAttempts;
+        this.requestsInFlight = new Semaphore(maxRequestsInFlight);
+        this.retryScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "card-authorization-retries");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Asks for authorization of a card payment of [amountInMinorUnit].
+     *
+     * @return a future completed with true if the payment is approved, false if it is declined, or completed
+     * exceptionally if the gateway gave no answer after every attempt.
+     * @throws IllegalArgumentException if the amount is negative.
+     */
+    public CompletableFuture<Boolean> authorize(long amountInMinorUnit) {
+        return authorize(amountInMinorUnit, () -> {
+        });
+    }
+
+    /**
+     * Asks for authorization of a card payment of [amountInMinorUnit], and runs [onApproved] once it is approved,
+     * before the future completes, for example to record the sale.
+     *
+     * @return a future completed with true if the payment is approved and [onApproved] returned, false if it is
+     * declined, or completed exceptionally if the gateway gave no answer after every attempt or [onApproved] threw.
+     * In both of the latter cases the payment has been sent for reversal before the future completes.
+     * @throws IllegalArgumentException if the amount is negative.
+     */
+    public CompletableFuture<Boolean> authorize(long amountInMinorUnit, Runnable onApproved) {
+        if (amountInMinorUnit < 0) {
+            throw new IllegalArgumentException("You cannot pay a negative amount");
+        }
+        Request request = new Request(lastRequestId.incrementAndGet(), amountInMinorUnit, onApproved);
+        waitingRequests.add(request);
+        sendWaitingRequests();
+        return request.result;
+    }
+
+    /**
+     * Stops retrying. Requests already sent still complete when the gateway answers or times out, and are reversed
+     * if given up on, but not retried.
+     */
+    @Override
+    public void close() {
+        retryScheduler.shutdownNow();
+    }
+
+    /**
+     * Sends waiting requests while there is room in flight. Called after every enqueue and every answer, so a
+     * request is never left waiting while a permit is free.
+     */
+    private void sendWaitingRequests() {
+        while (!waitingRequests.isEmpty() && requestsInFlight.tryAcquire()) {
+            Request request = waitingRequests.poll();
+            if (request == null) {
+                requestsInFlight.release();
+            } else {
+                send(request);
+            }
+        }
+    }
+
+    private void send(Request request) {
+        request.attempts++;
+        CompletableFuture<Boolean> answer;
+        try {
+            answer = gateway.authorize(request.id, request.amountInMinorUnit).copy();
+        } catch (RuntimeException exception) {
+            answer = CompletableFuture.failedFuture(exception);
+        }
+        answer.orTimeout(timeoutInMs, TimeUnit.MILLISECONDS).whenComplete((approved, failure) -> {
+            requestsInFlight.release();
+            if (failure == null) {
+                answered(request, approved);
+            } else if (request.attempts < maxAttempts) {
+                retry(request, failure);
+            } else {
+                reverse(request, failure, 1);
+            }
+            sendWaitingRequests();
+        });
+    }
+
+    private void answered(Request request, boolean approved) {
+        if (approved) {
+            try {
+                request.onApproved.run();
+            } catch (RuntimeException exception) {
+                reverse(request, exception, 1);
+                return;
+            }
+        }
+        request.result.complete(approved);
+    }
+
+    /**
+     * Sends the reversal of [request], retrying it after the same backoff as a request until it has been sent
+     * [maxAttempts] times, and then completes the request with [failure].
+     */
+    private void reverse(Request request, Throwable failure, int attempt) {
+        CompletableFuture<Void> reversal;
+        try {
+            reversal = gateway.reverse(request.id).copy();
+        } catch (RuntimeException exception) {
+            reversal = CompletableFuture.failedFuture(exception);
+        }
+        reversal.orTimeout(timeoutInMs, TimeUnit.MILLISECONDS).whenComplete((reversed, reversalFailure) -> {
+            if (reversalFailure == null || attempt >= maxAttempts) {
+                if (reversalFailure != null) {
+                    failure.addSuppressed(reversalFailure);
+                }
+                request.result.completeExceptionally(failure);
+                return;
+            }
+            try {
+                retryScheduler.schedule(() -> reverse(request, failure, attempt + 1),
+                        RETRY_BACKOFF_IN_MS << Math.min(attempt - 1, 16), TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException exception) {
+                // Closed: the reversal gets no more attempts.
+                failure.addSuppressed(reversalFailure);
+                request.result.completeExceptionally(failure);
+            }
+        });
+    }
+
+    private void retry(Request request, Throwable failure) {
+        long backoffInMs = RETRY_BACKOFF_IN_MS << Math.min(request.attempts - 1, 16);
+        try {
+            retryScheduler.schedule(() -> {
+                waitingRequests.add(request);
+                sendWaitingRequests();
+            }, backoffInMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException exception) {
+            // Closed: the request gets no more attempts.
+            reverse(request, failure, maxAttempts);
+        }
+    }
+
+    private static class Request {
+
+        private final long id;
+        private final long amountInMinorUnit;
+        private final Runnable onApproved;
+        private final CompletableFuture<Boolean> result = new CompletableFuture<>();
+        private int attempts;
+
+        private Request(long id, long amountInMinorUnit, Runnable onApproved) {
+            this.id = id;
+            this.amountInMinorUnit = amountInMinorUnit;
+            this.onApproved = onApproved;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A card payment gateway, which authorizes card payments. See CardAuthorizer, which sends requests to a gateway,
+ * and LocalCardGateway, an in-process stand-in for tests and load tests.
+ */
+public interface CardGateway {
+
+    /**
+     * Asks the gateway to authorize a card payment of [amountInMinorUnit]. Must not block.
+     *
+     * @param requestId identifies the payment; a retry of the same payment uses the same id, and must get the same
+     *                  answer as the first attempt that was answered, so a retry never approves a payment twice.
+     * @return a future completed with true if the payment is approved and false if it is declined, or completed
+     * exceptionally if the gateway could not be reached, in which case the request may be retried.
+     */
+    CompletableFuture<Boolean> authorize(long requestId, long amountInMinorUnit);
+
+    /**
+     * Asks the gateway to reverse the payment [requestId], for a payment the register did not record. Reversing a
+     * payment that was declined or never answered does nothing, and a reversed payment is declined if its request
+     * is sent again. Must not block.
+     *
+     * @return a future completed once the payment is reversed, or completed exceptionally if the gateway could not
+     * be reached, in which case the reversal may be retried.
+     */
+    CompletableFuture<Void> reverse(long requestId);
+}
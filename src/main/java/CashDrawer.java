@@ -0,0 +1,271 @@
+import java.util.Arrays;
+
+/**
+ * The notes and coins in the drawer of a CashRegister: the number of pieces of each denomination.
+ * <p>
+ * A cash payment puts the customer's pieces in the drawer and takes the change out of it, in one step under the
+ * drawer's lock. Change is the fewest pieces that add up to the amount using only what is in the drawer:
+ * <ul>
+ *     <li>If the drawer holds less money than the change, or too few öre for the part below one krona,
+ *     it fails at once.</li>
+ *     <li>Otherwise change is first made greedily, largest denomination first. When no denomination runs out on the
+ *     way, this is the fewest pieces, since Swedish denominations follow the 1-2-5 pattern, for which greedy
+ *     change is optimal.</li>
+ *     <li>When a denomination runs out, the fewest pieces are found with a bounded change-making table over the
+ *     kronor amount, one row per denomination, filled with a sliding-window minimum so each row takes time
+ *     proportional to the amount. The tables are kept between payments and only grow.</li>
+ * </ul>
+ * Öre coins beyond the part below one krona can stand in for whole kronor, 100 at a time, when nothing else fits.
+ * Change above MAX_TABLE_AMOUNT_IN_KRONOR, which no lane gives, is only made greedily.
+ */
+public class CashDrawer {
+
+    /**
+     * Denominations in minor units, largest first. Counts are kept in this order everywhere.
+     */
+    static final int[] DENOMINATIONS = {1000_00, 500_00, 200_00, 100_00, 50_00, 20_00, 10_00, 5_00, 2_00, 1_00, 1};
+    public static final int NUMBER_OF_DENOMINATIONS = DENOMINATIONS.length;
+    private static final int ORE = NUMBER_OF_DENOMINATIONS - 1;
+    private static final int MINOR_UNITS_PER_KRONA = 100;
+    private static final int IMPOSSIBLE = Integer.MAX_VALUE / 2;
+    static final int MAX_TABLE_AMOUNT_IN_KRONOR = 100_000;
+
+    private final int[] counts = new int[NUMBER_OF_DENOMINATIONS];
+    private long total;
+
+    /**
+     * Change-making tables, guarded by this. pieces[row][amount] is the fewest pieces making [amount] kronor with
+     * the denominations up to [row], where row ORE is öre coins in bundles of 100.
+     */
+    private int[][] pieces = new int[NUMBER_OF_DENOMINATIONS][0];
+    private int[] window = new int[0];
+
+    /**
+     * Creates an empty drawer.
+     */
+    public CashDrawer() {
+    }
+
+    /**
+     * Creates a drawer holding [counts] pieces of each denomination, from 1000 kr down to 1 öre.
+     *
+     * @throws IllegalArgumentException if there is not one count per denomination, or a count is negative.
+     */
+    public CashDrawer(int... counts) {
+        if (counts.length != NUMBER_OF_DENOMINATIONS) {
+            throw new IllegalArgumentException(String.format("%d counts given, one per denomination (%d) expected.",
+                    counts.length, NUMBER_OF_DENOMINATIONS));
+        }
+        for (int i = 0; i < NUMBER_OF_DENOMINATIONS; i++) {
+            if (counts[i] < 0) {
+                throw new IllegalArgumentException(String.format("%d is not a valid count.", counts[i]));
+            }
+            this.counts[i] = counts[i];
+        }
+        total = valueOf(counts);
+    }
+
+    /**
+     * @return the number of pieces of [denomination], in minor units, in the drawer.
+     * @throws IllegalArgumentException if there is no such denomination.
+     */
+    public synchronized int getCount(int denomination) {
+        return counts[indexOf(denomination)];
+    }
+
+    /**
+     * @return the money in the drawer, in minor units.
+     */
+    public synchronized long getTotal() {
+        return total;
+    }
+
+    /**
+     * Puts [tender] in the drawer and takes out change for [amountInMinorUnit] into [change].
+     * If the drawer cannot make the change, it is left as it was.
+     *
+     * @return false if the drawer cannot make the change.
+     */
+    synchronized boolean exchange(int[] tender, long amountInMinorUnit, int[] change) {
+        add(tender, 1);
+        if (!makeChange(amountInMinorUnit, change)) {
+            add(tender, -1);
+            return false;
+        }
+        add(change, -1);
+        return true;
+    }
+
+    /**
+     * Undoes exchange(tender, amount, change), for a payment that failed afterwards.
+     */
+    synchronized void undoExchange(int[] tender, int[] change) {
+        add(change, 1);
+        add(tender, -1);
+    }
+
+    /**
+     * Change for [amountInMinorUnit] from a drawer that never runs out, as CashRegister has always made it.
+     */
+    static void makeUnboundedChange(long amountInMinorUnit, int[] change) {
+        for (int i = 0; i < NUMBER_OF_DENOMINATIONS; i++) {
+            change[i] = (int) (amountInMinorUnit / DENOMINATIONS[i]);
+            amountInMinorUnit %= DENOMINATIONS[i];
+        }
+    }
+
+    /**
+     * @return the index of [denomination], in minor units, in tender and change vectors, from 0 for 1000 kr
+     * to NUMBER_OF_DENOMINATIONS - 1 for 1 öre.
+     * @throws IllegalArgumentException if there is no such denomination.
+     */
+    public static int indexOf(int denomination) {
+        return switch (denomination) {
+            case 1000_00 -> 0;
+            case 500_00 -> 1;
+            case 200_00 -> 2;
+            case 100_00 -> 3;
+            case 50_00 -> 4;
+            case 20_00 -> 5;
+            case 10_00 -> 6;
+            case 5_00 -> 7;
+            case 2_00 -> 8;
+            case 1_00 -> 9;
+            case 1 -> 10;
+            default -> throw new IllegalArgumentException(String.format("%d is not a denomination.", denomination));
+        };
+    }
+
+    /**
+     * @return the value in minor units of [counts] pieces of each denomination.
+     */
+    static long valueOf(int[] counts) {
+        long value = 0;
+        for (int i = 0; i < NUMBER_OF_DENOMINATIONS; i++) {
+            value += (long) counts[i] * DENOMINATIONS[i];
+        }
+        return value;
+    }
+
+    private void add(int[] pieces, int sign) {
+        for (int i = 0; i < NUMBER_OF_DENOMINATIONS; i++) {
+            counts[i] += sign * pieces[i];
+        }
+        total += sign * valueOf(pieces);
+    }
+
+    /**
+     * Writes the fewest pieces in the drawer that make [amountInMinorUnit] into [change].
+     *
+     * @return false if the pieces in the drawer cannot make the amount.
+     */
+    private boolean makeChange(long amountInMinorUnit, int[] change) {
+        Arrays.fill(change, 0);
+        int ore = (int) (amountInMinorUnit % MINOR_UNITS_PER_KRONA);
+        if (amountInMinorUnit > total || ore > counts[ORE]) {
+            return false;
+        }
+        int kronor = (int) (amountInMinorUnit / MINOR_UNITS_PER_KRONA);
+        int oreBundles = (counts[ORE] - ore) / MINOR_UNITS_PER_KRONA;
+        change[ORE] = ore;
+        if (makeGreedyChange(kronor, change)) {
+            return true;
+        }
+        Arrays.fill(change, 0, ORE, 0);
+        if (kronor > MAX_TABLE_AMOUNT_IN_KRONOR || !makeTableChange(kronor, oreBundles, change)) {
+            Arrays.fill(change, 0);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return true if greedy change for [kronor] never ran out of a denomination, which makes it the fewest pieces.
+     */
+    private boolean makeGreedyChange(int kronor, int[] change) {
+        int remaining = kronor;
+        for (int i = 0; i < ORE; i++) {
+            int kronorPerPiece = DENOMINATIONS[i] / MINOR_UNITS_PER_KRONA;
+            int wanted = remaining / kronorPerPiece;
+            if (wanted > counts[i]) {
+                return false;
+            }
+            change[i] = wanted;
+            remaining -= wanted * kronorPerPiece;
+        }
+        return true;
+    }
+
+    /**
+     * Fills one table row per denomination, then walks back from the last row to read off the pieces.
+     *
+     * @return false if [kronor] cannot be made from the drawer.
+     */
+    private boolean makeTableChange(int kronor, int oreBundles, int[] change) {
+        if (pieces[0].length <= kronor) {
+            int capacity = Math.max(kronor + 1, pieces[0].length * 2);
+            for (int row = 0; row < NUMBER_OF_DENOMINATIONS; row++) {
+                pieces[row] = new int[capacity];
+            }
+            window = new int[capacity];
+        }
+        for (int row = 0; row < NUMBER_OF_DENOMINATIONS; row++) {
+            int value = row == ORE ? 1 : DENOMINATIONS[row] / MINOR_UNITS_PER_KRONA;
+            int cost = row == ORE ? MINOR_UNITS_PER_KRONA : 1;
+            int available = row == ORE ? oreBundles : counts[row];
+            fillRow(row, value, cost, available, kronor);
+        }
+        if (pieces[ORE][kronor] >= IMPOSSIBLE) {
+            return false;
+        }
+        int remaining = kronor;
+        for (int row = ORE; row > 0; row--) {
+            int value = row == ORE ? 1 : DENOMINATIONS[row] / MINOR_UNITS_PER_KRONA;
+            int cost = row == ORE ? MINOR_UNITS_PER_KRONA : 1;
+            int target = pieces[row][remaining];
+            int taken = 0;
+            while (pieces[row - 1][remaining - taken * value] >= IMPOSSIBLE
+                    || pieces[row - 1][remaining - taken * value] + taken * cost != target) {
+                taken++;
+            }
+            remaining -= taken * value;
+            change[row] += row == ORE ? taken * MINOR_UNITS_PER_KRONA : taken;
+        }
+        change[0] = remaining / (DENOMINATIONS[0] / MINOR_UNITS_PER_KRONA);
+        return true;
+    }
+
+    /**
+     * pieces[row][a] = min over 0 <= k <= available of pieces[row - 1][a - k * value] + k * cost. For each residue
+     * of a modulo value this is a minimum over a sliding window of the previous row, kept in a monotonic deque.
+     */
+    private void fillRow(int row, int value, int cost, int available, int kronor) {
+        int[] current = pieces[row];
+        int[] previous = row == 0 ? null : pieces[row - 1];
+        for (int residue = 0; residue < value && residue <= kronor; residue++) {
+            int head = 0;
+            int tail = 0;
+            for (int j = 0, amount = residue; amount <= kronor; j++, amount += value) {
+                if (previous == null) {
+                    current[amount] = residue == 0 && j <= available ? j * cost : IMPOSSIBLE;
+                    continue;
+                }
+                // window holds indexes j of the previous row, by increasing previous[..] - j * cost.
+                while (tail > head && key(previous, residue, value, cost, window[tail - 1]) >= key(previous, residue, value, cost, j)) {
+                    tail--;
+                }
+                window[tail++] = j;
+                while (window[head] < j - available) {
+                    head++;
+                }
+                int best = key(previous, residue, value, cost, window[head]);
+                current[amount] = best >= IMPOSSIBLE ? IMPOSSIBLE : best + j * cost;
+            }
+        }
+    }
+
+    private static int key(int[] previous, int residue, int value, int cost, int j) {
+        int pieces = previous[residue + j * value];
+        return pieces >= IMPOSSIBLE ? IMPOSSIBLE : pieces - j * cost;
+    }
+}
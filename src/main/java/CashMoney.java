@@ -1,7 +1,17 @@
-import java.util.Objects;
-
+/**
+ * A note or coin. CashMoney is immutable, so the canonical instance of each denomination from valueOf(denomination)
+ * can be shared instead of creating a new one.
+ */
 public class CashMoney {
 
+    private static final CashMoney[] CANONICAL = new CashMoney[CashDrawer.NUMBER_OF_DENOMINATIONS];
+
+    static {
+        for (int i = 0; i < CANONICAL.length; i++) {
+            CANONICAL[i] = new CashMoney(CashDrawer.DENOMINATIONS[i]);
+        }
+    }
+
     private final int amountInMinorUnit;
     public CashMoney(int denomination){
         switch (denomination) {
@@ -20,6 +30,14 @@ public class CashMoney {
         }
     }
 
+    /**
+     * @return the shared instance of [denomination], in minor units.
+     * @throws IllegalArgumentException if there is no such denomination.
+     */
+    public static CashMoney valueOf(int denomination){
+        return CANONICAL[CashDrawer.indexOf(denomination)];
+    }
+
     public int getCashMoneyDenomination(){
         return amountInMinorUnit;
     }
@@ -40,6 +58,6 @@ public class CashMoney {
 
     @Override
     public int hashCode() {
-        return Objects.hash(amountInMinorUnit);
+        return amountInMinorUnit;
     }
 }
@@ -1,17 +1,87 @@
-import java.io.*;
+import java.nio.file.Path;
 import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
-public class CashRegister {
+/**
+ * The store's cash register, keeping the store's amount of money in a RegisterStorage chosen when it is created.
+ * <p>
+ * A register created with a file name rewrites the database file with every payment, see FileRegisterStorage.
+ * A text file, such as the default cashRegisterMoney.txt, stays a text file; only a file named *.state is kept in
+ * the faster slotted format, and FileRegisterStorage.migrateToStateFile(fileName) turns one into the other.
+ * A register created with a PaymentLog.Durability instead appends every payment to a write-ahead log next to the
+ * database file, see PaymentLog. Any other storage, such as a MappedRegisterStorage or an InMemoryRegisterStorage, is
+ * passed to CashRegister(storage). The deprecated methods that still take a file name only accept the database
+ * file of the register's storage.
+ * <p>
+ * The amount of money is kept in a StripedTotals counter, so payments from several threads are never lost.
+ * Registers of a CashRegisterGroup share one StripedTotals, each adding to its own lane.
+ * <p>
+ * A register with a CashDrawer keeps count of the notes and coins in it, and only gives change it actually holds.
+ * Without one, change is made as if the drawer never ran out of anything.
+ */
+public class CashRegister implements AutoCloseable {
 
-    Money amountOfMoneyInStore;
-    final int[] denominations = new int[]{1000_00, 500_00, 200_00, 100_00, 50_00, 20_00, 10_00, 5_00, 2_00, 1_00, 1};
+    private static final String DEFAULT_DATABASE_FILE_NAME = "src/main/resources/cashRegisterMoney.txt";
+
+    private final RegisterStorage storage;
+    private final CashDrawer drawer;
+    private final StripedTotals totals;
+    private final int lane;
 
     public CashRegister(){
-        readFromDatabaseFile("src/main/resources/cashRegisterMoney.txt");
+        this(DEFAULT_DATABASE_FILE_NAME);
     }
 
+    /**
+     * Creates a register that keeps the amount of money in the database file [cashRegisterMoneyDatabaseFileName].
+     * @throws IllegalArgumentException if the file does not exist or cannot be read, or holds a negative or
+     * non-numeric amount. The message says which.
+     */
     public CashRegister(String cashRegisterMoneyDatabaseFileName){
-        readFromDatabaseFile(cashRegisterMoneyDatabaseFileName);
+        this(new FileRegisterStorage(cashRegisterMoneyDatabaseFileName));
+    }
+
+    /**
+     * Creates a register that logs payments in a write-ahead log next to [cashRegisterMoneyDatabaseFileName],
+     * and recovers the amount of money from the database file plus the payments in the log.
+     * @param durability how long a payment waits for its log record to reach the disk.
+     */
+    public CashRegister(String cashRegisterMoneyDatabaseFileName, PaymentLog.Durability durability){
+        this(new PaymentLog(cashRegisterMoneyDatabaseFileName, durability));
+    }
+
+    /**
+     * Creates a register with a payment log, like CashRegister(fileName, durability), that gives change from [drawer].
+     */
+    public CashRegister(String cashRegisterMoneyDatabaseFileName, PaymentLog.Durability durability, CashDrawer drawer){
+        this(new PaymentLog(cashRegisterMoneyDatabaseFileName, durability), drawer);
+    }
+
+    /**
+     * Creates a register that keeps the amount of money in [storage], starting from the amount already in it.
+     * The register closes the storage when it is closed.
+     */
+    public CashRegister(RegisterStorage storage){
+        this(storage, null);
+    }
+
+    /**
+     * Creates a register that keeps the amount of money in [storage] and gives change from [drawer].
+     */
+    public CashRegister(RegisterStorage storage, CashDrawer drawer){
+        this(storage, drawer, new StripedTotals(1), 0);
+    }
+
+    /**
+     * Creates a register that adds the money it takes to [lane] of [totals]. Used by CashRegisterGroup.
+     */
+    CashRegister(RegisterStorage storage, CashDrawer drawer, StripedTotals totals, int lane){
+        this.storage = storage;
+        this.drawer = drawer;
+        this.totals = totals;
+        this.lane = lane;
+        totals.add(lane, storage.getBalance());
     }
 
     /**
@@ -19,114 +89,192 @@ public class CashRegister {
      * @return amount of money in store
      */
     public long getAmountOfMoneyInStore(){
-        return amountOfMoneyInStore.getAmountInMinorUnit();
+        return totals.get(lane);
     }
 
     /**
-     * A method that handles payment by card. Calls on helper method to write the new amount
-     * to the database file.
+     * A method that handles payment by card, same as payByCard(amountInMinorUnit).
      * @param amountInMinorUnit cost of the purchase
-     * @param fileName database file containing the store's money that should be updated.
+     * @param fileName the database file of the register's storage.
+     * @throws IllegalArgumentException if [fileName] is not the database file of the register's storage.
+     * @deprecated the storage is chosen when the register is created; use payByCard(amountInMinorUnit).
      */
+    @Deprecated
     public void payByCard(long amountInMinorUnit, String fileName){
-        writeToDatabaseFile(amountInMinorUnit, fileName);
-        amountOfMoneyInStore.add(amountInMinorUnit);
+        checkDatabaseFileName(fileName);
+        payByCard(amountInMinorUnit);
+    }
+
+    /**
+     * Handles payment by card, recording it in the register's storage.
+     * @param amountInMinorUnit cost of the purchase
+     * @throws IllegalArgumentException if the amount is negative or cannot be stored.
+     */
+    public void payByCard(long amountInMinorUnit){
+        storage.recordPayment(amountInMinorUnit);
+        totals.add(lane, amountInMinorUnit);
+    }
+
+    /**
+     * Handles payment by card with authorization: the payment is sent to [authorizer], and the sale is recorded in
+     * the register's storage only when the payment is approved. Returns at once, so the
+     * lane can go on while the gateway answers.
+     * An approved payment that cannot be recorded is reversed at the gateway, so the customer is not charged for it.
+     * @param amountInMinorUnit cost of the purchase
+     * @return a future completed with true once the payment is approved and recorded, false if it is declined,
+     * or completed exceptionally if the gateway gave no answer or the payment could not be recorded.
+     * @throws IllegalArgumentException if the amount is negative.
+     */
+    public CompletableFuture<Boolean> payByCardAsync(long amountInMinorUnit, CardAuthorizer authorizer){
+        return authorizer.authorize(amountInMinorUnit, () -> payByCard(amountInMinorUnit));
     }
 
     /**
      * A method that handles payment by cash. If the amount of cash is less than cost of purchase, an exception is thrown.
-     * Calls on helper method to write the new amount to the database file.
+     * Same as payByCash(payment, actualCostInMinorUnit).
      * @param payment the cash the customer pays with
      * @param actualCostInMinorUnit the cost of the purchase
-     * @param filename database file containing the store's money that should be updated.
+     * @param filename the database file of the register's storage.
      * @return a map containing the change where the key is a CashMoney object in a specific denomination
      * and the corresponding value represents how many bills there is of that specific denomination.
-     * If there is no change an empty map is returned.     I
+     * If there is no change an empty map is returned.
+     * @throws IllegalArgumentException if [filename] is not the database file of the register's storage.
+     * @deprecated the storage is chosen when the register is created; use payByCash(payment, actualCostInMinorUnit).
      */
+    @Deprecated
     public HashMap<CashMoney, Integer> payByCash(HashMap<CashMoney, Integer> payment, long actualCostInMinorUnit, String filename){
-        long amountInCash = 0;
-        HashMap<CashMoney, Integer> returnWallet = new HashMap<>();
-        for(CashMoney cash: payment.keySet()){
-            for(int i = 0; i < payment.get(cash); i++){
-                amountInCash += cash.getCashMoneyDenomination();
+        checkDatabaseFileName(filename);
+        return payByCash(payment, actualCostInMinorUnit);
+    }
+
+    /**
+     * Same as payByCashForChange(payment, actualCostInMinorUnit).
+     * @throws IllegalArgumentException if [filename] is not the database file of the register's storage.
+     * @deprecated the storage is chosen when the register is created;
+     * use payByCashForChange(payment, actualCostInMinorUnit).
+     */
+    @Deprecated
+    public Change payByCashForChange(Map<CashMoney, Integer> payment, long actualCostInMinorUnit, String filename){
+        checkDatabaseFileName(filename);
+        return payByCashForChange(payment, actualCostInMinorUnit);
+    }
+
+    /**
+     * Handles payment by cash like payByCash(payment, actualCostInMinorUnit), but returns the change
+     * as a Change. A register with a CashDrawer puts [payment] in the drawer and takes the change out of it.
+     * @throws IllegalArgumentException if the payment is less than the cost, or the drawer cannot make the change,
+     * in which case the drawer is left as it was.
+     */
+    public Change payByCashForChange(Map<CashMoney, Integer> payment, long actualCostInMinorUnit){
+        int[] tender = new int[CashDrawer.NUMBER_OF_DENOMINATIONS];
+        for(Map.Entry<CashMoney, Integer> cash : payment.entrySet()){
+            if(cash.getValue() < 0){
+                throw new IllegalArgumentException("You cannot pay with a negative number of bills");
             }
+            tender[CashDrawer.indexOf(cash.getKey().getCashMoneyDenomination())] += cash.getValue();
         }
-        if(amountInCash < actualCostInMinorUnit){
-            throw new IllegalArgumentException("You have not paid enough money");
+        int[] change = new int[CashDrawer.NUMBER_OF_DENOMINATIONS];
+        payByCash(tender, actualCostInMinorUnit, change);
+        return new Change(change);
+    }
+
+    /**
+     * Handles payment by cash with the tender and change as vectors of counts, one per denomination, indexed by
+     * CashDrawer.indexOf(denomination). The amount paid is the dot product of [tender] and the denominations.
+     * With a payment log or an in-memory storage, a cash sale allocates nothing, so a lane can reuse the same two vectors for every customer.
+     * @param tender the number of pieces of each denomination the customer pays with.
+     * @param change receives the number of pieces of each denomination to give back.
+     * @throws IllegalArgumentException if a vector does not have one count per denomination, a count in [tender] is
+     * negative, the payment is less than the cost, or the drawer cannot make the change, in which case the drawer is
+     * left as it was.
+     */
+    public void payByCash(int[] tender, long actualCostInMinorUnit, int[] change){
+        if(tender.length != CashDrawer.NUMBER_OF_DENOMINATIONS){
+            throw new IllegalArgumentException("Tender and change need one count per denomination");
         }
-        if(amountInCash > actualCostInMinorUnit){
-            long change = amountInCash - actualCostInMinorUnit;
-            returnWallet = calculateChange(change);
+        for(int count : tender){
+            if(count < 0){
+                throw new IllegalArgumentException("You cannot pay with a negative number of bills");
+            }
         }
-        writeToDatabaseFile(actualCostInMinorUnit, filename);
-        amountOfMoneyInStore.add(actualCostInMinorUnit);
-        return returnWallet;
+        commitPayment(tender, actualCostInMinorUnit, actualCostInMinorUnit, change);
     }
 
     /**
-     * Method that calculates the change with regard to the available denominations in SEK.
-     * @param amount the amount of change to be given to the customer
-     * @return a map containing the change where the key is a CashMoney object in a specific denomination
-     * and the corresponding value represents how many bills there is of that specific denomination.
+     * Takes a payment made with several tenders as one transaction. The tenders were validated when [payment] was
+     * built; change is made once for the cash part, and the total cost is recorded in the register's storage
+     * in one write. If the drawer cannot make the change nothing is written, and if writing fails the drawer
+     * is put back as it was.
+     * @param change receives the number of pieces of each denomination to give back, indexed by
+     * CashDrawer.indexOf(denomination).
+     * @throws IllegalArgumentException if [change] does not have one count per denomination, the drawer cannot make
+     * the change, or the payment cannot be written.
      */
-    private HashMap<CashMoney, Integer> calculateChange(long amount){
-        HashMap<CashMoney, Integer> returnWallet = new HashMap<>();
-        for(int denomination : denominations){
-            int currentDenomination = (int) (amount/denomination);
+    public void pay(SplitPayment payment, int[] change){
+        commitPayment(payment.getCashTender(), payment.getCashPartInMinorUnit(), payment.getCostInMinorUnit(), change);
+    }
 
-            if((currentDenomination > 0)){
-                returnWallet.put(new CashMoney(denomination), currentDenomination);
-                amount %= denomination;
+    /**
+     * Puts [tender] in the drawer and takes out its change for [cashPartInMinorUnit], then records
+     * [totalInMinorUnit] with one write.
+     */
+    private void commitPayment(int[] tender, long cashPartInMinorUnit, long totalInMinorUnit, int[] change){
+        if(change.length != CashDrawer.NUMBER_OF_DENOMINATIONS){
+            throw new IllegalArgumentException("Tender and change need one count per denomination");
+        }
+        long amountInCash = CashDrawer.valueOf(tender);
+        if(amountInCash < cashPartInMinorUnit){
+            throw new IllegalArgumentException("You have not paid enough money");
+        }
+        if(drawer == null){
+            CashDrawer.makeUnboundedChange(amountInCash - cashPartInMinorUnit, change);
+            storage.recordPayment(totalInMinorUnit);
+        } else {
+            if(!drawer.exchange(tender, amountInCash - cashPartInMinorUnit, change)){
+                throw new IllegalArgumentException("There is not enough change in the drawer");
+            }
+            try {
+                storage.recordPayment(totalInMinorUnit);
+            } catch (RuntimeException exception){
+                drawer.undoExchange(tender, change);
+                throw exception;
             }
         }
-        return returnWallet;
+        totals.add(lane, totalInMinorUnit);
     }
 
     /**
-     * Method that writes the new amount of money to the database file containing the store's total
-     * amount of money. Throws exception if amount of money is less than zero.
-     * @param amountInMinorUnit the amount to be added to the database file
-     * @param fileName the database file to be changed
+     * @return the drawer the register gives change from, or null if it has none.
      */
-    private void writeToDatabaseFile(long amountInMinorUnit, String fileName){
-        try{
-            if(amountInMinorUnit < 0){
-                throw new IllegalArgumentException("You cannot have negative money");
-            }
-            FileWriter fileWriter = new FileWriter(fileName);
-            BufferedWriter writer = new BufferedWriter(fileWriter);
-
-            long prePurchaseAmountOfMoney = getAmountOfMoneyInStore();
-            long amountOfMoneyAfterPurchase = prePurchaseAmountOfMoney + amountInMinorUnit;
-            String amountToDatabase = String.valueOf(amountOfMoneyAfterPurchase);
-            writer.write(amountToDatabase);
-            writer.close();
-        } catch (IOException e) {
-            throw new IllegalArgumentException(e);
-        }
+    public CashDrawer getCashDrawer(){
+        return drawer;
     }
 
     /**
-     * Method that reads the amount of money currently in the database file containing the store's total
-     * amount of money.
-     * @param fileName the database file to be read from.
+     * Handles payment by cash, recording it in the register's storage.
+     * See payByCash(payment, actualCostInMinorUnit, filename).
      */
-    private void readFromDatabaseFile(String fileName){
-        try {
-            FileReader fileReader = new FileReader(fileName);
-            BufferedReader reader = new BufferedReader(fileReader);
-            String readLine = reader.readLine();
+    public HashMap<CashMoney, Integer> payByCash(HashMap<CashMoney, Integer> payment, long actualCostInMinorUnit){
+        return payByCashForChange(payment, actualCostInMinorUnit).toWallet();
+    }
 
-            if(readLine == null){
-                amountOfMoneyInStore = new Money(0);
-            } else if(Long.parseLong(readLine) < 0) {
-                throw new IllegalArgumentException("Money cannot be negative");
-            } else{
-                amountOfMoneyInStore = new Money(Long.parseLong(readLine));
-            }
-            reader.close();
-        } catch (Exception e) {
-            throw new IllegalArgumentException();
+    /**
+     * Payments used to be written to the file passed with them. Now that they always go to the register's storage,
+     * a different file is refused rather than silently left as it is.
+     */
+    private void checkDatabaseFileName(String fileName){
+        String databaseFileName = storage.getDatabaseFileName();
+        if(databaseFileName == null || fileName == null
+                || !Path.of(fileName).toAbsolutePath().normalize().equals(Path.of(databaseFileName).toAbsolutePath().normalize())){
+            throw new IllegalArgumentException(String.format("%s is not the database file of this register.", fileName));
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Closes the register's storage, which makes every payment recorded so far as durable as the storage makes them.
+     */
+    @Override
+    public void close(){
+        storage.close();
+    }
+}
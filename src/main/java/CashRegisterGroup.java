@@ -0,0 +1,80 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * The cash registers of every lane of a store, run in one JVM.
+ * <p>
+ * Each lane has its own CashRegister with its own database file, lane-[lane].txt in the group's directory,
+ * and its own payment log, so lanes never write to the same file. The money each register takes is added to its
+ * own counter in a shared StripedTotals, so a payment takes no lock shared with other lanes, while
+ * getAmountOfMoneyInStore() still gives a consistent total of every lane.
+ */
+public class CashRegisterGroup implements AutoCloseable {
+
+    private static final String LANE_FILE_FORMAT = "lane-%d.txt";
+
+    private final StripedTotals totals;
+    private final CashRegister[] registers;
+
+    /**
+     * Opens the registers of [numberOfLanes] lanes in [directoryPath], creating the directory and an empty database
+     * file for each new lane, and recovers the money of each lane from its database file and payment log.
+     *
+     * @throws IllegalArgumentException if the number of lanes is not positive or a lane cannot be opened.
+     */
+    public CashRegisterGroup(String directoryPath, int numberOfLanes, PaymentLog.Durability durability) {
+        totals = new StripedTotals(numberOfLanes);
+        registers = new CashRegister[numberOfLanes];
+        Path directory = Path.of(directoryPath);
+        try {
+            Files.createDirectories(directory);
+            for (int lane = 0; lane < numberOfLanes; lane++) {
+                Path databaseFile = directory.resolve(String.format(LANE_FILE_FORMAT, lane));
+                if (!Files.exists(databaseFile)) {
+                    Files.writeString(databaseFile, "0");
+                }
+                registers[lane] = new CashRegister(new PaymentLog(databaseFile.toString(), durability), null, totals, lane);
+            }
+        } catch (IOException exception) {
+            close();
+            throw new IllegalArgumentException(exception);
+        } catch (IllegalArgumentException exception) {
+            close();
+            throw exception;
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if there is no lane [lane].
+     */
+    public CashRegister getRegister(int lane) {
+        if (lane < 0 || lane >= registers.length) {
+            throw new IllegalArgumentException(String.format("There is no lane %d.", lane));
+        }
+        return registers[lane];
+    }
+
+    public int getNumberOfLanes() {
+        return registers.length;
+    }
+
+    /**
+     * @return the money taken by every lane together, in minor units, as it was at one moment during the call.
+     */
+    public long getAmountOfMoneyInStore() {
+        return totals.sum();
+    }
+
+    /**
+     * Closes the register of every lane.
+     */
+    @Override
+    public void close() {
+        for (CashRegister register : registers) {
+            if (register != null) {
+                register.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,52 @@
+import java.util.HashMap;
+
+/**
+ * The change given back for a cash payment: how many pieces of each denomination, kept as one int per denomination
+ * in the order of CashDrawer.DENOMINATIONS, from 1000 kr down to 1 öre.
+ */
+public final class Change {
+
+    private final int[] counts;
+
+    Change(int[] counts) {
+        this.counts = counts;
+    }
+
+    /**
+     * @return the number of pieces of [denomination], in minor units, e.g. 20_00 for 20 kr notes.
+     * @throws IllegalArgumentException if there is no such denomination.
+     */
+    public int getCount(int denomination) {
+        return counts[CashDrawer.indexOf(denomination)];
+    }
+
+    public int getNumberOfPieces() {
+        int pieces = 0;
+        for (int count : counts) {
+            pieces += count;
+        }
+        return pieces;
+    }
+
+    public long getAmountInMinorUnit() {
+        return CashDrawer.valueOf(counts);
+    }
+
+    /**
+     * @return the change as payByCash has always returned it: the number of pieces by CashMoney,
+     * without the denominations of which there are none.
+     */
+    public HashMap<CashMoney, Integer> toWallet() {
+        HashMap<CashMoney, Integer> wallet = new HashMap<>();
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) {
+                wallet.put(CashMoney.valueOf(CashDrawer.DENOMINATIONS[i]), counts[i]);
+            }
+        }
+        return wallet;
+    }
+
+    int[] counts() {
+        return counts;
+    }
+}
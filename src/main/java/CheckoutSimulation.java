@@ -0,0 +1,415 @@
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Load engine running a number of concurrent checkout lanes against one InventoryBalance and one CashRegister.
+ * Used to size hardware and to catch contention regressions in the inventory and register paths.
+ * <p>
+ * Every lane serves [customersPerLane] customers in turn. For each customer it creates a Purchase, scans a basket of
+ * products, pays by card or by cash and creates the Receipt, timing each of those stages.
+ * The workload is drawn from three distributions:
+ * basket sizes are uniform between the minimum and maximum basket size, products are picked by a Zipf distribution
+ * over the products of the inventory (the first product is the most popular), and each customer pays by card with
+ * the given probability and by cash otherwise. A cash payment the register cannot give change for, e.g. from an
+ * empty CashDrawer, is counted as failed and the customer leaves without paying, like a scan of a product that has
+ * run out.
+ * <p>
+ * Lanes run on virtual threads when the JVM has them (Java 21 and later), and on one platform thread each otherwise.
+ * Lanes pay at the same CashRegister at once; the PAY stage includes any time its storage makes them wait.
+ * <p>
+ * Creation of CheckoutSimulation is handled with builder pattern - see bottom of class.
+ */
+public class CheckoutSimulation {
+
+    public enum Stage {
+        SCAN, PAY, RECEIPT, CHECKOUT
+    }
+
+    private static final Method NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR = findVirtualThreadExecutorFactory();
+
+    private final InventoryBalance inventoryBalance;
+    private final CashRegister cashRegister;
+    private final int numberOfLanes;
+    private final int customersPerLane;
+    private final int minimumBasketSize;
+    private final int maximumBasketSize;
+    private final double cardPaymentShare;
+    private final long seed;
+
+    private final Product[] productsByPopularity;
+    private final double[] cumulativePopularity;
+
+    private CheckoutSimulation(SimulationBuilder builder) {
+        this.inventoryBalance = builder.inventoryBalance;
+        this.cashRegister = builder.cashRegister;
+        this.numberOfLanes = builder.numberOfLanes;
+        this.customersPerLane = builder.customersPerLane;
+        this.minimumBasketSize = builder.minimumBasketSize;
+        this.maximumBasketSize = builder.maximumBasketSize;
+        this.cardPaymentShare = builder.cardPaymentShare;
+        this.seed = builder.seed;
+
+        productsByPopularity = inventoryBalance.getProducts().toArray(new Product[0]);
+        cumulativePopularity = new double[productsByPopularity.length];
+        double sum = 0;
+        for (int rank = 0; rank < cumulativePopularity.length; rank++) {
+            sum += 1 / Math.pow(rank + 1, builder.zipfExponent);
+            cumulativePopularity[rank] = sum;
+        }
+        for (int rank = 0; rank < cumulativePopularity.length; rank++) {
+            cumulativePopularity[rank] /= sum;
+        }
+    }
+
+    /**
+     * Runs every lane to completion.
+     *
+     * @return the throughput and the latencies of every stage.
+     * @throws IllegalArgumentException if a lane fails.
+     */
+    public Report run() {
+        boolean virtualThreads = NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null;
+        ExecutorService lanes = newLaneExecutor(numberOfLanes);
+        long start = System.nanoTime();
+        List<Future<Lane>> results = new ArrayList<>(numberOfLanes);
+        for (int i = 0; i < numberOfLanes; i++) {
+            Lane lane = new Lane(new SplittableRandom(seed + i));
+            results.add(lanes.submit(() -> {
+                lane.serveCustomers();
+                return lane;
+            }));
+        }
+        List<Lane> finishedLanes = new ArrayList<>(numberOfLanes);
+        try {
+            for (Future<Lane> result : results) {
+                finishedLanes.add(result.get());
+            }
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new IllegalArgumentException(exception);
+        } catch (ExecutionException exception) {
+            throw new IllegalArgumentException(exception.getCause());
+        } finally {
+            lanes.shutdownNow();
+        }
+        return new Report(finishedLanes, System.nanoTime() - start, virtualThreads);
+    }
+
+    /**
+     * @return an executor running every task on a virtual thread of its own if the JVM has them,
+     * or on one of [numberOfLanes] platform threads otherwise.
+     */
+    private static ExecutorService newLaneExecutor(int numberOfLanes) {
+        if (NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null) {
+            try {
+                return (ExecutorService) NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR.invoke(null);
+            } catch (ReflectiveOperationException exception) {
+                throw new IllegalArgumentException(exception);
+            }
+        }
+        return Executors.newFixedThreadPool(numberOfLanes);
+    }
+
+    /**
+     * Looked up by reflection, since the project is built for Java 17, which has no virtual threads.
+     */
+    private static Method findVirtualThreadExecutorFactory() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException exception) {
+            return null;
+        }
+    }
+
+    private class Lane {
+
+        private final SplittableRandom random;
+        private final long[][] latencies = new long[Stage.values().length][customersPerLane];
+        private int numberOfCustomers;
+        private int numberOfScans;
+        private int numberOfOutOfStockScans;
+        private int numberOfCardPayments;
+        private int numberOfFailedCashPayments;
+        private long revenueInMinorUnits;
+
+        private Lane(SplittableRandom random) {
+            this.random = random;
+        }
+
+        private void serveCustomers() {
+            for (int customer = 0; customer < customersPerLane; customer++) {
+                long checkoutStart = System.nanoTime();
+                Purchase purchase = new Purchase();
+                int basketSize = random.nextInt(minimumBasketSize, maximumBasketSize + 1);
+                for (int i = 0; i < basketSize; i++) {
+                    try {
+                        purchase.scanItem(pickProduct());
+                        numberOfScans++;
+                    } catch (IllegalArgumentException outOfStock) {
+                        numberOfOutOfStockScans++;
+                    }
+                }
+                long payStart = System.nanoTime();
+                boolean paid = pay(purchase.getTotalPrice());
+                long receiptStart = System.nanoTime();
+                Receipt receipt = new Receipt(purchase);
+                long checkoutEnd = System.nanoTime();
+
+                latencies[Stage.SCAN.ordinal()][customer] = payStart - checkoutStart;
+                latencies[Stage.PAY.ordinal()][customer] = receiptStart - payStart;
+                latencies[Stage.RECEIPT.ordinal()][customer] = checkoutEnd - receiptStart;
+                latencies[Stage.CHECKOUT.ordinal()][customer] = checkoutEnd - checkoutStart;
+                if (paid) {
+                    revenueInMinorUnits += receipt.getTotalPrice();
+                }
+                numberOfCustomers++;
+            }
+        }
+
+        private Product pickProduct() {
+            int rank = Arrays.binarySearch(cumulativePopularity, random.nextDouble());
+            rank = rank >= 0 ? rank : Math.min(-rank - 1, productsByPopularity.length - 1);
+            return productsByPopularity[rank];
+        }
+
+        /**
+         * @return false if the customer paid by cash and the register could not give change.
+         */
+        private boolean pay(int totalPrice) {
+            if (random.nextDouble() < cardPaymentShare) {
+                cashRegister.payByCard(totalPrice);
+                numberOfCardPayments++;
+                return true;
+            }
+            HashMap<CashMoney, Integer> payment = new HashMap<>();
+            payment.put(CashMoney.valueOf(1000_00), totalPrice / 1000_00 + 1);
+            try {
+                cashRegister.payByCash(payment, totalPrice);
+                return true;
+            } catch (IllegalArgumentException noChange) {
+                numberOfFailedCashPayments++;
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Outcome of a simulation run: counts, throughput and latency percentiles per Stage.
+     */
+    public static class Report {
+
+        private final int numberOfCustomers;
+        private final int numberOfScans;
+        private final int numberOfOutOfStockScans;
+        private final int numberOfCardPayments;
+        private final int numberOfFailedCashPayments;
+        private final long revenueInMinorUnits;
+        private final long elapsedNanos;
+        private final boolean virtualThreads;
+        private final Map<Stage, long[]> sortedLatencies = new EnumMap<>(Stage.class);
+
+        private Report(List<Lane> lanes, long elapsedNanos, boolean virtualThreads) {
+            int customers = 0;
+            int scans = 0;
+            int outOfStockScans = 0;
+            int cardPayments = 0;
+            int failedCashPayments = 0;
+            long revenue = 0;
+            for (Lane lane : lanes) {
+                customers += lane.numberOfCustomers;
+                scans += lane.numberOfScans;
+                outOfStockScans += lane.numberOfOutOfStockScans;
+                cardPayments += lane.numberOfCardPayments;
+                failedCashPayments += lane.numberOfFailedCashPayments;
+                revenue += lane.revenueInMinorUnits;
+            }
+            for (Stage stage : Stage.values()) {
+                long[] latencies = new long[customers];
+                int position = 0;
+                for (Lane lane : lanes) {
+                    System.arraycopy(lane.latencies[stage.ordinal()], 0, latencies, position, lane.numberOfCustomers);
+                    position += lane.numberOfCustomers;
+                }
+                Arrays.sort(latencies);
+                sortedLatencies.put(stage, latencies);
+            }
+            this.numberOfCustomers = customers;
+            this.numberOfScans = scans;
+            this.numberOfOutOfStockScans = outOfStockScans;
+            this.numberOfCardPayments = cardPayments;
+            this.numberOfFailedCashPayments = failedCashPayments;
+            this.revenueInMinorUnits = revenue;
+            this.elapsedNanos = elapsedNanos;
+            this.virtualThreads = virtualThreads;
+        }
+
+        public int getNumberOfCustomers() {
+            return numberOfCustomers;
+        }
+
+        public int getNumberOfScans() {
+            return numberOfScans;
+        }
+
+        /**
+         * @return the number of scans that failed because the product had run out.
+         */
+        public int getNumberOfOutOfStockScans() {
+            return numberOfOutOfStockScans;
+        }
+
+        public int getNumberOfCardPayments() {
+            return numberOfCardPayments;
+        }
+
+        /**
+         * @return the number of cash payments that failed because the register could not give change.
+         */
+        public int getNumberOfFailedCashPayments() {
+            return numberOfFailedCashPayments;
+        }
+
+        /**
+         * @return the sum of the total price of every paid receipt.
+         */
+        public long getRevenueInMinorUnits() {
+            return revenueInMinorUnits;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        public boolean usedVirtualThreads() {
+            return virtualThreads;
+        }
+
+        /**
+         * @return the number of customers checked out per second, over all lanes.
+         */
+        public double getCustomersPerSecond() {
+            return elapsedNanos == 0 ? 0 : numberOfCustomers * 1_000_000_000.0 / elapsedNanos;
+        }
+
+        /**
+         * @param percentile is between 0 and 100, e.g. 99.9 for p999.
+         * @return the latency of [stage] in nanoseconds that [percentile] percent of the customers stayed within.
+         */
+        public long getLatencyNanos(Stage stage, double percentile) {
+            if (percentile < 0 || percentile > 100) {
+                throw new IllegalArgumentException(String.format("%s is not a valid percentile.", percentile));
+            }
+            long[] latencies = sortedLatencies.get(stage);
+            if (latencies.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(percentile / 100 * latencies.length) - 1;
+            return latencies[Math.max(0, index)];
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format("%d customers, %d scans (%d out of stock), %d card payments, %d failed cash payments"
+                            + " in %.1f ms: %.0f customers/s%s",
+                    numberOfCustomers, numberOfScans, numberOfOutOfStockScans, numberOfCardPayments, numberOfFailedCashPayments,
+                    elapsedNanos / 1_000_000.0, getCustomersPerSecond(), virtualThreads ? " on virtual threads" : ""));
+            for (Stage stage : Stage.values()) {
+                sb.append(String.format("%n%-8s p50 %8d ns, p99 %8d ns, p999 %8d ns", stage,
+                        getLatencyNanos(stage, 50), getLatencyNanos(stage, 99), getLatencyNanos(stage, 99.9)));
+            }
+            return sb.toString();
+        }
+    }
+
+    public static class SimulationBuilder {
+
+        private final InventoryBalance inventoryBalance;
+        private final CashRegister cashRegister;
+        private int numberOfLanes = 8;
+        private int customersPerLane = 1000;
+        private int minimumBasketSize = 1;
+        private int maximumBasketSize = 30;
+        private double zipfExponent = 1.0;
+        private double cardPaymentShare = 0.8;
+        private long seed = 42;
+
+        /**
+         * @param cashRegister is where every lane pays, recording the payments in its own storage.
+         */
+        public SimulationBuilder(InventoryBalance inventoryBalance, CashRegister cashRegister) {
+            this.inventoryBalance = inventoryBalance;
+            this.cashRegister = cashRegister;
+        }
+
+        public SimulationBuilder setNumberOfLanes(int numberOfLanes) {
+            this.numberOfLanes = numberOfLanes;
+            return this;
+        }
+
+        public SimulationBuilder setCustomersPerLane(int customersPerLane) {
+            this.customersPerLane = customersPerLane;
+            return this;
+        }
+
+        public SimulationBuilder setBasketSize(int minimumBasketSize, int maximumBasketSize) {
+            this.minimumBasketSize = minimumBasketSize;
+            this.maximumBasketSize = maximumBasketSize;
+            return this;
+        }
+
+        /**
+         * @param zipfExponent is 0 for products being equally popular; the higher, the more popular the top products.
+         */
+        public SimulationBuilder setZipfExponent(double zipfExponent) {
+            this.zipfExponent = zipfExponent;
+            return this;
+        }
+
+        /**
+         * @param cardPaymentShare is the probability, between 0 and 1, that a customer pays by card.
+         */
+        public SimulationBuilder setCardPaymentShare(double cardPaymentShare) {
+            this.cardPaymentShare = cardPaymentShare;
+            return this;
+        }
+
+        public SimulationBuilder setSeed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        public CheckoutSimulation build() {
+            validateSimulation();
+            return new CheckoutSimulation(this);
+        }
+
+        private void validateSimulation() {
+            if (inventoryBalance == null || inventoryBalance.getProducts().isEmpty()) {
+                throw new IllegalArgumentException("Inventory missing or empty.");
+            }
+            if (cashRegister == null) {
+                throw new IllegalArgumentException("Cash register missing.");
+            }
+            if (numberOfLanes <= 0 || customersPerLane < 0) {
+                throw new IllegalArgumentException("Number of lanes or customers per lane invalid.");
+            }
+            if (minimumBasketSize < 0 || maximumBasketSize < minimumBasketSize) {
+                throw new IllegalArgumentException("Basket size invalid.");
+            }
+            if (zipfExponent < 0 || cardPaymentShare < 0 || cardPaymentShare > 1) {
+                throw new IllegalArgumentException("Zipf exponent or card payment share invalid.");
+            }
+        }
+    }
+}
@@ -0,0 +1,82 @@
+import java.util.Arrays;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Index of SKU ids by expiration date, used by ProductStore.
+ * Every epoch day that at least one product expires on has a bucket holding the SKU ids of those products.
+ * The buckets are kept sorted by day, so finding the products that expire on or before a given day only touches
+ * the buckets up to that day, and dropping every day before today only touches the buckets being dropped.
+ */
+class ExpirationIndex {
+
+    private final TreeMap<Long, Bucket> buckets = new TreeMap<>();
+
+    synchronized void add(long epochDay, int skuId) {
+        buckets.computeIfAbsent(epochDay, day -> new Bucket()).add(skuId);
+    }
+
+    synchronized void remove(long epochDay, int skuId) {
+        Bucket bucket = buckets.get(epochDay);
+        if (bucket != null && bucket.remove(skuId) && bucket.size == 0) {
+            buckets.remove(epochDay);
+        }
+    }
+
+    /**
+     * @return the SKU ids of every product that expires on or before [epochDay], earliest day first.
+     */
+    synchronized int[] expiringOnOrBefore(long epochDay) {
+        NavigableMap<Long, Bucket> relevantBuckets = buckets.headMap(epochDay, true);
+        int numberOfSkuIds = 0;
+        for (Bucket bucket : relevantBuckets.values()) {
+            numberOfSkuIds += bucket.size;
+        }
+        int[] result = new int[numberOfSkuIds];
+        int position = 0;
+        for (Bucket bucket : relevantBuckets.values()) {
+            System.arraycopy(bucket.skuIds, 0, result, position, bucket.size);
+            position += bucket.size;
+        }
+        return result;
+    }
+
+    /**
+     * Drops every bucket for a day before [epochDay].
+     *
+     * @return the number of SKU ids that were dropped.
+     */
+    synchronized int dropBefore(long epochDay) {
+        NavigableMap<Long, Bucket> pastBuckets = buckets.headMap(epochDay, false);
+        int dropped = 0;
+        for (Map.Entry<Long, Bucket> entry : pastBuckets.entrySet()) {
+            dropped += entry.getValue().size;
+        }
+        pastBuckets.clear();
+        return dropped;
+    }
+
+    private static class Bucket {
+
+        private int[] skuIds = new int[4];
+        private int size;
+
+        private void add(int skuId) {
+            if (size == skuIds.length) {
+                skuIds = Arrays.copyOf(skuIds, size * 2);
+            }
+            skuIds[size++] = skuId;
+        }
+
+        private boolean remove(int skuId) {
+            for (int i = 0; i < size; i++) {
+                if (skuIds[i] == skuId) {
+                    skuIds[i] = skuIds[--size];
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+import java.nio.file.Path;
+
+/**
+ * Keeps the amount of money in a database file, forced to disk with every payment. This is how a CashRegister
+ * created with a file name has always kept it.
+ * <p>
+ * A text file, such as the default cashRegisterMoney.txt, stays a text file and is rewritten whole with every
+ * payment. A .state file is written over the older of its two copies instead, which takes one write and an fsync,
+ * see RegisterStateFile. migrateToStateFile(fileName) turns a text file into a .state file.
+ */
+public class FileRegisterStorage implements RegisterStorage {
+
+    private final String databaseFileName;
+    private final Path databaseFile;
+    private long balance;
+
+    /**
+     * Reads the amount of money from the database file [databaseFileName], in either format RegisterStateFile reads.
+     *
+     * @throws IllegalArgumentException if the file does not exist or cannot be read, holds no valid copy, or holds
+     * a negative or non-numeric amount. The message says which.
+     */
+    public FileRegisterStorage(String databaseFileName) {
+        this.databaseFileName = databaseFileName;
+        this.databaseFile = Path.of(databaseFileName);
+        this.balance = RegisterStateFile.read(databaseFile).getBalanceInMinorUnit();
+    }
+
+    /**
+     * Writes the amount of money in the text database file [textFileName] to a .state file of the same name next to
+     * it, e.g. cashRegisterMoney.state for cashRegisterMoney.txt, for a FileRegisterStorage or MappedRegisterStorage
+     * to be created with. The text file is left as it is.
+     *
+     * @return the name of the .state file.
+     * @throws IllegalArgumentException if the text file cannot be read, or the .state file already exists or cannot
+     * be written.
+     */
+    public static String migrateToStateFile(String textFileName) {
+        return RegisterStateFile.migrate(Path.of(textFileName)).toString();
+    }
+
+    @Override
+    public synchronized long getBalance() {
+        return balance;
+    }
+
+    /**
+     * Writes the amount after the payment to the database file before it returns.
+     * If writing fails the amount is left as it was.
+     */
+    @Override
+    public synchronized long recordPayment(long amountInMinorUnit) {
+        if (amountInMinorUnit < 0) {
+            throw new IllegalArgumentException("You cannot have negative money");
+        }
+        RegisterStateFile.write(databaseFile, balance + amountInMinorUnit, 0);
+        balance += amountInMinorUnit;
+        return balance;
+    }
+
+    @Override
+    public String getDatabaseFileName() {
+        return databaseFileName;
+    }
+
+    /**
+     * Every payment is already on disk, so there is nothing to do.
+     */
+    @Override
+    public void close() {
+    }
+}
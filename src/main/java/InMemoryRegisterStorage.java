@@ -0,0 +1,54 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the amount of money in memory only, so it is lost when the register is closed. For tests and load tests
+ * that should not touch the disk; a payment is one atomic add.
+ */
+public class InMemoryRegisterStorage implements RegisterStorage {
+
+    private final AtomicLong balance;
+
+    /**
+     * Creates a storage holding no money.
+     */
+    public InMemoryRegisterStorage() {
+        this(0);
+    }
+
+    /**
+     * Creates a storage holding [balanceInMinorUnit].
+     *
+     * @throws IllegalArgumentException if the amount is negative.
+     */
+    public InMemoryRegisterStorage(long balanceInMinorUnit) {
+        if (balanceInMinorUnit < 0) {
+            throw new IllegalArgumentException("Money cannot be negative");
+        }
+        this.balance = new AtomicLong(balanceInMinorUnit);
+    }
+
+    @Override
+    public long getBalance() {
+        return balance.get();
+    }
+
+    @Override
+    public long recordPayment(long amountInMinorUnit) {
+        if (amountInMinorUnit < 0) {
+            throw new IllegalArgumentException("You cannot have negative money");
+        }
+        return balance.addAndGet(amountInMinorUnit);
+    }
+
+    /**
+     * @return null, since the amount of money is kept in no file.
+     */
+    @Override
+    public String getDatabaseFileName() {
+        return null;
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -3,37 +3,65 @@ import java.util.*;
 
 /**
  * Class representing the inventory balance for the store.
- * Products are stored in a Map: the products' hashcode is the key, and the Product is the value. (For faster search.)
+ * Products are stored in a ProductStore: every product gets a dense SKU id, and its values are kept in parallel
+ * primitive arrays indexed by that id. Products are found by brand and product name through the store's index.
  * <p>
  * The inventory holds direct references to the actual Products.
  * This means that, if the amount of a Product is changed elsewhere (without interacting with the inventory)
  * the inventory will still reflect that change.
  * <p>
+ * Instead of polling the list methods, interested parties can subscribe an InventoryChangeListener,
+ * see subscribe(listener).
+ * <p>
  * To create an inventory balance preloaded with values, see the InventoryLoader class.
  */
 public class InventoryBalance {
 
-    private final Map<Integer, Product> inventory;
-    private static final int PRODUCT_LOW_IN_STOCK = 5;
+    private final ProductStore inventory;
+    private final InventoryChangePublisher changePublisher;
+    static final int PRODUCT_LOW_IN_STOCK = 5;
     private static final int DAYS_BEFORE_SHORT_DATE_WARNING = 5;
 
     public InventoryBalance() {
-        inventory = new HashMap<>();
+        inventory = new ProductStore(16);
+        changePublisher = new InventoryChangePublisher(inventory);
+    }
+
+    /**
+     * Creates an empty inventory sized to hold [expectedNumberOfProducts] without growing.
+     * Used by InventoryLoader when the number of products is known before they are added.
+     *
+     * @param expectedNumberOfProducts is the number of products the inventory is expected to hold.
+     */
+    public InventoryBalance(int expectedNumberOfProducts) {
+        if (expectedNumberOfProducts < 0) {
+            throw new IllegalArgumentException(String.format("%d is not a valid size.", expectedNumberOfProducts));
+        }
+        inventory = new ProductStore(expectedNumberOfProducts);
+        changePublisher = new InventoryChangePublisher(inventory);
     }
 
     /**
      * Adds a product to the inventory.
      * Adding a product that's already present in the inventory should NOT increase the amount of that product.
      * If you want to do that, you should call adjustValue(product) instead.
+     * The values of the product are moved into the inventory's store, so a Product can only be in one inventory;
+     * delete it from the other inventory first.
      *
      * @param product is the Product to be added.
-     * @throws IllegalArgumentException if trying to add an item already present in the inventory.
+     * @throws IllegalArgumentException if trying to add an item already present in this or another inventory.
      */
     public void addProduct(Product product) throws IllegalArgumentException {
         if (contains(product)) {
             throw new IllegalArgumentException("Product already present in inventory.");
         }
-        inventory.put(product.hashCode(), product);
+        if (product.getStore() != null) {
+            throw new IllegalArgumentException("Product already present in another inventory.");
+        }
+        if (product.hasABarcode() && inventory.indexOfBarcode(product.getBarcode()) >= 0) {
+            throw new IllegalArgumentException("Barcode already present in inventory.");
+        }
+        product.attach(inventory);
     }
 
     /**
@@ -44,66 +72,100 @@ public class InventoryBalance {
      * @throws NoSuchElementException if trying to remove a Product not present in the inventory.
      */
     public void deleteProduct(Product product) throws NoSuchElementException {
-        Product removedProduct = inventory.remove(product.hashCode());
-        if (removedProduct == null) {
-            throw new NoSuchElementException("Product not in inventory.");
-        }
+        deleteProduct(product.getBrandName(), product.getProductName());
     }
 
     /**
      * Overloaded remove method.
-     * A temporary product is created with the same name and brand, but with junk values.
-     * That product is then sent to deleteProduct(product).
+     * Looks the product up by brand and name directly, without creating a temporary Product.
+     *
+     * @throws NoSuchElementException if trying to remove a Product not present in the inventory.
      */
-    public void deleteProduct(String brandName, String productName) {
-        Product tempProduct = new Product.ProductBuilder(brandName, productName)
-                .setPrice(1)
-                .setAmount(1)
-                .setVatRate(VAT.STANDARD)
-                .build();
-        deleteProduct(tempProduct);
+    public void deleteProduct(String brandName, String productName) throws NoSuchElementException {
+        int skuId = inventory.indexOf(brandName, productName);
+        if (skuId < 0) {
+            throw new NoSuchElementException("Product not in inventory.");
+        }
+        inventory.view(skuId).detach();
     }
 
     /**
      * Checks the inventory for products that are low in stock.
+     * A product is low in stock when its amount is below its low-stock threshold, which defaults to
+     * PRODUCT_LOW_IN_STOCK and can be changed per product with Product.setLowStockThreshold(threshold).
+     * The inventory keeps the set of products low in stock up to date as amounts change,
+     * so this costs as much as the size of the returned list.
      *
      * @return a list of products that are currently low in stock.
      */
     public List<Product> getProductsLowInStock() {
-        ArrayList<Product> listOfProductsLowInStock = new ArrayList<>();
-
-        for (Product product : inventory.values()) {
-            if (product.getAmount() < PRODUCT_LOW_IN_STOCK) {
-                listOfProductsLowInStock.add(product);
-            }
-        }
-        return listOfProductsLowInStock;
+        return inventory.productsLowInStock();
     }
 
     /**
      * Checks the inventory for products that are about to reach their expiration date.
      * Performs check based on constant DAYS_BEFORE_SHORT_DATE_WARNING.
+     * Products that have already expired are included until rollExpirationIndexForward(today) drops them.
      *
      * @return the list of products that are about to expire.
      */
     public List<Product> getProductsAboutToExpire() {
-        ArrayList<Product> productsAboutToExpire = new ArrayList<>();
-        LocalDate expirationDate;
-        int daysDifference;
-        for (Product product : inventory.values()) {
-            if (product.hasAnExpirationDate()) {
-                expirationDate = product.getExpirationDate();
-                daysDifference = expirationDate.getDayOfYear() - LocalDate.now().getDayOfYear();
-                if (daysDifference <= DAYS_BEFORE_SHORT_DATE_WARNING) {
-                    productsAboutToExpire.add(product);
-                }
-            }
+        return getProductsExpiringWithin(DAYS_BEFORE_SHORT_DATE_WARNING);
+    }
+
+    /**
+     * Finds the products that expire at most [days] days from today, using the inventory's expiration index.
+     * Only the index buckets for the days up to that date are read.
+     *
+     * @param days is the number of days from today to look ahead.
+     * @return the list of products expiring within [days] days, earliest expiration date first.
+     */
+    public List<Product> getProductsExpiringWithin(int days) {
+        if (days < 0) {
+            throw new IllegalArgumentException(String.format("%d is not a valid number of days.", days));
+        }
+        return inventory.productsExpiringOnOrBefore(LocalDate.now().toEpochDay() + days);
+    }
+
+    /**
+     * Daily roll-forward of the expiration index: drops every product that expired before [today] from the index,
+     * so they are no longer reported by getProductsAboutToExpire(). The products themselves stay in the inventory.
+     *
+     * @param today is the current date.
+     * @return the number of products dropped from the index.
+     */
+    public int rollExpirationIndexForward(LocalDate today) {
+        return inventory.dropExpirationsBefore(today.toEpochDay());
+    }
+
+    /**
+     * Subscribes [listener] to changes of amount, discount and expiration date of the products in the inventory,
+     * whether made through a Product or through a Purchase scanning products.
+     * Changes are collected per product and delivered in batches on a background thread, so a listener
+     * gets at most one InventoryChange per product and batch, holding the latest values of that product.
+     *
+     * @param listener is the InventoryChangeListener to be subscribed.
+     */
+    public void subscribe(InventoryChangeListener listener) {
+        if (listener == null) {
+            throw new IllegalArgumentException("Listener can not be null.");
+        }
+        changePublisher.subscribe(listener);
+    }
+
+    /**
+     * Stops delivering changes to [listener].
+     *
+     * @throws NoSuchElementException if [listener] is not subscribed.
+     */
+    public void unsubscribe(InventoryChangeListener listener) throws NoSuchElementException {
+        if (!changePublisher.unsubscribe(listener)) {
+            throw new NoSuchElementException("Listener not subscribed.");
         }
-        return productsAboutToExpire;
     }
 
     public boolean contains(Product product) {
-        return inventory.containsKey(product.hashCode());
+        return inventory.indexOf(product.getBrandName(), product.getProductName()) >= 0;
     }
 
     /**
@@ -114,29 +176,93 @@ public class InventoryBalance {
      * @throws NoSuchElementException when the searched Product is not found in inventory.
      */
     public Product get(Product product) throws NoSuchElementException {
-        if (inventory.get(product.hashCode()) == null) {
+        return get(product.getBrandName(), product.getProductName());
+    }
+
+    /**
+     * Overloaded get method.
+     * Looks the product up by brand and name directly, without creating a temporary Product,
+     * so a lookup by name at the till allocates nothing.
+     *
+     * @throws NoSuchElementException when the searched Product is not found in inventory.
+     */
+    public Product get(String brandName, String productName) throws NoSuchElementException {
+        int skuId = inventory.indexOf(brandName, productName);
+        if (skuId < 0) {
             throw new NoSuchElementException("Product not in inventory.");
         }
-        return inventory.get(product.hashCode());
+        return inventory.view(skuId);
     }
 
     /**
-     * Overloaded get method.
-     * Creates a product with junk values in order to pass to other get method.
+     * Finds a product by the barcode read by a scanner. Allocates nothing.
+     *
+     * @param barcode is the EAN/UPC barcode of the product.
+     * @return the Product with the barcode.
+     * @throws NoSuchElementException when no Product in inventory has the barcode.
      */
-    public Product get(String brandName, String productName) {
-        Product product = new Product.ProductBuilder(brandName, productName)
-                .setAmount(1)
-                .setPrice(1)
-                .setVatRate(VAT.STANDARD)
-                .build();
-        return get(product);
+    public Product getByBarcode(long barcode) throws NoSuchElementException {
+        int skuId = inventory.indexOfBarcode(barcode);
+        if (skuId < 0) {
+            throw new NoSuchElementException("Barcode not in inventory.");
+        }
+        return inventory.view(skuId);
+    }
+
+    /**
+     * Saves the inventory as a binary snapshot, see InventorySnapshot.
+     *
+     * @param filePath is the path to the snapshot file, which is replaced if it already exists.
+     */
+    public void saveSnapshot(String filePath) {
+        InventorySnapshot.save(this, filePath);
+    }
+
+    /**
+     * Returns an InventoryBalance loaded from a binary snapshot created by saveSnapshot(filePath).
+     *
+     * @param filePath is the path to the snapshot file.
+     */
+    public static InventoryBalance loadSnapshot(String filePath) {
+        return InventorySnapshot.load(filePath);
+    }
+
+    /**
+     * @return the store holding the products of the inventory, whose SKU ids are used by ReceiptJournal.
+     */
+    ProductStore getStore() {
+        return inventory;
+    }
+
+    /**
+     * @return a read-only view of every Product in the inventory.
+     */
+    Collection<Product> getProducts() {
+        return Collections.unmodifiableCollection(inventory.views());
+    }
+
+    /**
+     * Adds a product straight into the inventory's store, without building a separate Product first.
+     * Used when loading values that have already been validated, such as a snapshot.
+     *
+     * @throws IllegalArgumentException if a product with the same names is already present in the inventory.
+     */
+    Product addProduct(String brandName, String productName, int priceInMinorUnits, VAT vatRate, int amount,
+                       int discount, long barcode, long expirationEpochDay) {
+        if (inventory.indexOf(brandName, productName) >= 0) {
+            throw new IllegalArgumentException("Product already present in inventory.");
+        }
+        if (inventory.indexOfBarcode(barcode) >= 0) {
+            throw new IllegalArgumentException("Barcode already present in inventory.");
+        }
+        return new Product(inventory, brandName, productName, priceInMinorUnits, vatRate, amount, discount, barcode,
+                expirationEpochDay);
     }
 
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
-        for (Product p : inventory.values()) {
+        for (Product p : inventory.views()) {
             sb.append(p);
             sb.append(" : ").append(p.getAmount()).append("st");
             sb.append("\n");
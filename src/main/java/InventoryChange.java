@@ -0,0 +1,64 @@
+import java.time.LocalDate;
+
+/**
+ * A change to one product in an InventoryBalance, as delivered to an InventoryChangeListener.
+ * Changes are coalesced per product: if the amount of a product changes ten times between two deliveries,
+ * subscribers get a single InventoryChange holding the amount after the last change.
+ * The values are read when the batch is delivered, so they are the latest values of the product at that time.
+ */
+public class InventoryChange {
+
+    public static final int AMOUNT_CHANGED = 1;
+    public static final int DISCOUNT_CHANGED = 1 << 1;
+    public static final int EXPIRATION_DATE_CHANGED = 1 << 2;
+
+    private final Product product;
+    private final int changes;
+    private final int amount;
+    private final int discount;
+    private final long expirationEpochDay;
+
+    InventoryChange(Product product, int changes, int amount, int discount, long expirationEpochDay) {
+        this.product = product;
+        this.changes = changes;
+        this.amount = amount;
+        this.discount = discount;
+        this.expirationEpochDay = expirationEpochDay;
+    }
+
+    public Product getProduct() {
+        return product;
+    }
+
+    public boolean hasAmountChanged() {
+        return (changes & AMOUNT_CHANGED) != 0;
+    }
+
+    public boolean hasDiscountChanged() {
+        return (changes & DISCOUNT_CHANGED) != 0;
+    }
+
+    public boolean hasExpirationDateChanged() {
+        return (changes & EXPIRATION_DATE_CHANGED) != 0;
+    }
+
+    public int getAmount() {
+        return amount;
+    }
+
+    public int getDiscount() {
+        return discount;
+    }
+
+    /**
+     * @return the expiration date of the product, or null if it has none.
+     */
+    public LocalDate getExpirationDate() {
+        return expirationEpochDay == ProductStore.NO_EXPIRATION_DATE ? null : LocalDate.ofEpochDay(expirationEpochDay);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: amount %d, discount %d", product, amount, discount);
+    }
+}
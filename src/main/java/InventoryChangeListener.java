@@ -0,0 +1,14 @@
+import java.util.List;
+
+/**
+ * Subscriber to the changes of an InventoryBalance, see InventoryBalance.subscribe(listener).
+ * Batches are delivered on a background thread, never on the thread that changed the inventory,
+ * so a slow listener does not slow down the checkout.
+ */
+public interface InventoryChangeListener {
+
+    /**
+     * @param changes holds one InventoryChange per product that changed since the previous batch.
+     */
+    void onInventoryChanges(List<InventoryChange> changes);
+}
@@ -0,0 +1,114 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Delivers the changes of a ProductStore to the InventoryChangeListeners of an InventoryBalance.
+ * <p>
+ * The thread that changes a product only marks the kind of change in the store's pending-change mask for its
+ * SKU id, and, if no change of that SKU id was pending yet, appends the SKU id to the pending list here.
+ * Every DELIVERY_INTERVAL_IN_MS a single daemon thread takes the pending list, clears the mask of every SKU id
+ * in it and hands one InventoryChange per SKU id to every listener. Any number of changes to the same product
+ * between two deliveries therefore become one InventoryChange, and a listener never runs on the checkout thread.
+ */
+class InventoryChangePublisher {
+
+    static final long DELIVERY_INTERVAL_IN_MS = 50;
+
+    private final ProductStore store;
+    private final List<InventoryChangeListener> listeners = new CopyOnWriteArrayList<>();
+    private ScheduledExecutorService dispatcher;
+
+    /**
+     * SKU ids with pending changes are appended to pendingSkuIds; delivery swaps it with drainedSkuIds,
+     * so neither side allocates. Both are guarded by this.
+     */
+    private int[] pendingSkuIds = new int[16];
+    private int[] drainedSkuIds = new int[16];
+    private int numberOfPendingSkuIds;
+
+    InventoryChangePublisher(ProductStore store) {
+        this.store = store;
+    }
+
+    synchronized void subscribe(InventoryChangeListener listener) {
+        listeners.add(listener);
+        if (dispatcher == null) {
+            store.setChangePublisher(this);
+            dispatcher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "inventory-change-dispatcher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            dispatcher.scheduleWithFixedDelay(this::deliverPendingChanges,
+                    DELIVERY_INTERVAL_IN_MS, DELIVERY_INTERVAL_IN_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Removes [listener]. When the last listener is gone the dispatcher thread is stopped and the store no longer
+     * records changes, so an inventory without subscribers pays nothing for this.
+     *
+     * @return true if [listener] was subscribed.
+     */
+    synchronized boolean unsubscribe(InventoryChangeListener listener) {
+        boolean removed = listeners.remove(listener);
+        if (removed && listeners.isEmpty()) {
+            store.setChangePublisher(null);
+            dispatcher.shutdown();
+            dispatcher = null;
+            numberOfPendingSkuIds = 0;
+        }
+        return removed;
+    }
+
+    /**
+     * Called by the store when the first change of [skuId] since its last delivery is made.
+     */
+    synchronized void enqueue(int skuId) {
+        if (numberOfPendingSkuIds == pendingSkuIds.length) {
+            int[] grown = new int[pendingSkuIds.length * 2];
+            System.arraycopy(pendingSkuIds, 0, grown, 0, numberOfPendingSkuIds);
+            pendingSkuIds = grown;
+        }
+        pendingSkuIds[numberOfPendingSkuIds++] = skuId;
+    }
+
+    private void deliverPendingChanges() {
+        int[] skuIds;
+        int numberOfSkuIds;
+        synchronized (this) {
+            if (numberOfPendingSkuIds == 0) {
+                return;
+            }
+            skuIds = pendingSkuIds;
+            numberOfSkuIds = numberOfPendingSkuIds;
+            pendingSkuIds = drainedSkuIds.length >= skuIds.length ? drainedSkuIds : new int[skuIds.length];
+            drainedSkuIds = skuIds;
+            numberOfPendingSkuIds = 0;
+        }
+
+        List<InventoryChange> changes = new ArrayList<>(numberOfSkuIds);
+        for (int i = 0; i < numberOfSkuIds; i++) {
+            InventoryChange change = store.takePendingChange(skuIds[i]);
+            if (change != null) {
+                changes.add(change);
+            }
+        }
+        if (changes.isEmpty()) {
+            return;
+        }
+        List<InventoryChange> batch = Collections.unmodifiableList(changes);
+        for (InventoryChangeListener listener : listeners) {
+            try {
+                listener.onInventoryChanges(batch);
+            } catch (RuntimeException exception) {
+                exception.printStackTrace();
+            }
+        }
+    }
+}
@@ -2,12 +2,38 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 /**
  * Support class used to create InventoryBalance and Product objects from text files.
+ * Each line holds brandName, productName, priceInMinorUnits, vatRate, amount and discount,
+ * optionally followed by the product's EAN/UPC barcode.
  */
 public class InventoryLoader {
 
+    /**
+     * Chunks are never made smaller than this, so small files are parsed by a single task.
+     */
+    private static final long MIN_CHUNK_SIZE_IN_BYTES = 1 << 20;
+
+    /**
+     * Chunks are never made larger than this, so every chunk fits in a single MappedByteBuffer.
+     */
+    private static final long MAX_CHUNK_SIZE_IN_BYTES = 1 << 28;
+
+    private static final byte[] VAT_STANDARD = "VAT.STANDARD".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] VAT_FOOD = "VAT.FOOD".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] VAT_REDUCED = "VAT.REDUCED".getBytes(StandardCharsets.US_ASCII);
+
     /**
      * Returns an InventoryBalance loaded with all the data from [filePath].
      * IMPORTANT: Call br.readLine() once before reading values from csv-file.
@@ -17,7 +43,7 @@ public class InventoryLoader {
         InventoryBalance inventoryBalance = new InventoryBalance();
         File file = new File(filePath);
         try {
-            BufferedReader br = new BufferedReader(new FileReader(file));
+            BufferedReader br = new BufferedReader(new FileReader(file, StandardCharsets.UTF_8));
             String currentLine;
             br.readLine();
             String[] values;
@@ -33,6 +59,7 @@ public class InventoryLoader {
     }
 
     /**
+     * The barcode column is optional: lines with only six values create products without a barcode.
      * @param values is the String array containing all the values needed for the product.
      * @return a new Product created from the values.
      */
@@ -43,12 +70,14 @@ public class InventoryLoader {
         VAT vatRate = readVatFromString(values[3]);
         int amount = Integer.parseInt(values[4]);
         int discount = Integer.parseInt(values[5]);
+        long barcode = values.length > 6 && !values[6].isBlank() ? Long.parseLong(values[6].trim()) : 0;
 
         return new Product.ProductBuilder(brandName, productName)
                 .setPrice(priceInMinorUnits)
                 .setVatRate(vatRate)
                 .setAmount(amount)
                 .setDiscount(discount)
+                .setBarcode(barcode)
                 .build();
     }
 
@@ -70,7 +99,7 @@ public class InventoryLoader {
     public static Product createSingleProductFromTextFile(String filePath) {
         File file = new File(filePath);
         try {
-            BufferedReader br = new BufferedReader(new FileReader(file));
+            BufferedReader br = new BufferedReader(new FileReader(file, StandardCharsets.UTF_8));
             String currentLine;
             br.readLine();
             currentLine = br.readLine();
@@ -82,4 +111,308 @@ public class InventoryLoader {
         }
         return null;
     }
+
+    /**
+     * Returns an InventoryBalance loaded with all the data from [filePath], using the same csv-format as
+     * createInventoryBalanceFromTextFile(filePath).
+     * Intended for large catalogs: the file is memory-mapped and split into line-aligned chunks, which are parsed
+     * in parallel on the common fork-join pool. Numeric and VAT fields are parsed straight from the mapped bytes,
+     * only brandName and productName are turned into Strings.
+     * The chunks are then merged, in file order, into an InventoryBalance sized for the total number of products.
+     *
+     * @param filePath is the path to the file to read values from.
+     */
+    public static InventoryBalance createInventoryBalanceFromMappedFile(String filePath) {
+        return createInventoryBalanceFromMappedFile(filePath, 0);
+    }
+
+    /**
+     * Same as createInventoryBalanceFromMappedFile(filePath), with chunks of [chunkSizeInBytes] rounded up to the
+     * next line, or of a size chosen from the size of the file if [chunkSizeInBytes] is 0.
+     */
+    static InventoryBalance createInventoryBalanceFromMappedFile(String filePath, long chunkSizeInBytes) {
+        try (FileChannel channel = FileChannel.open(Path.of(filePath), StandardOpenOption.READ)) {
+            long[] chunkBoundaries = findChunkBoundaries(channel, chunkSizeInBytes);
+            List<List<Product>> chunks = ForkJoinPool.commonPool()
+                    .invoke(new ChunkParseTask(channel, chunkBoundaries, 0, chunkBoundaries.length - 1));
+
+            int numberOfProducts = 0;
+            for (List<Product> chunk : chunks) {
+                numberOfProducts += chunk.size();
+            }
+            InventoryBalance inventoryBalance = new InventoryBalance(numberOfProducts);
+            for (List<Product> chunk : chunks) {
+                for (Product product : chunk) {
+                    inventoryBalance.addProduct(product);
+                }
+            }
+            return inventoryBalance;
+        } catch (IOException exception) {
+            exception.printStackTrace();
+        }
+        return new InventoryBalance();
+    }
+
+    /**
+     * Splits the file, after the header line, into chunks that each start at the beginning of a line.
+     *
+     * @param chunkSize is the size of a chunk before it is rounded up to the next line, or 0 to choose it.
+     * @return the chunk boundaries as file positions. Chunk i covers [boundaries[i], boundaries[i + 1]).
+     */
+    private static long[] findChunkBoundaries(FileChannel channel, long chunkSize) throws IOException {
+        long fileSize = channel.size();
+        long firstLineStart = findNextLineStart(channel, 0);
+
+        if (chunkSize <= 0) {
+            long bytesToParse = fileSize - firstLineStart;
+            int wantedChunks = ForkJoinPool.getCommonPoolParallelism() * 4;
+            chunkSize = Math.max(MIN_CHUNK_SIZE_IN_BYTES, bytesToParse / Math.max(1, wantedChunks));
+        }
+        chunkSize = Math.min(chunkSize, MAX_CHUNK_SIZE_IN_BYTES);
+
+        List<Long> boundaries = new ArrayList<>();
+        boundaries.add(firstLineStart);
+        long position = firstLineStart;
+        while (fileSize - position > chunkSize) {
+            position = findNextLineStart(channel, position + chunkSize);
+            boundaries.add(position);
+        }
+        if (position < fileSize) {
+            boundaries.add(fileSize);
+        }
+
+        long[] result = new long[boundaries.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = boundaries.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * @return the position right after the first line break at or after [position], or the file size if there is none.
+     */
+    private static long findNextLineStart(FileChannel channel, long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        long fileSize = channel.size();
+        while (position < fileSize) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return fileSize;
+    }
+
+    /**
+     * Fork-join task that splits a range of chunks in half until a single chunk remains, which is then parsed.
+     */
+    private static class ChunkParseTask extends RecursiveTask<List<List<Product>>> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient FileChannel channel;
+        private final long[] boundaries;
+        private final int firstChunk;
+        private final int lastChunk;
+
+        private ChunkParseTask(FileChannel channel, long[] boundaries, int firstChunk, int lastChunk) {
+            this.channel = channel;
+            this.boundaries = boundaries;
+            this.firstChunk = firstChunk;
+            this.lastChunk = lastChunk;
+        }
+
+        @Override
+        protected List<List<Product>> compute() {
+            List<List<Product>> result = new ArrayList<>(lastChunk - firstChunk);
+            if (lastChunk - firstChunk == 0) {
+                return result;
+            }
+            if (lastChunk - firstChunk == 1) {
+                result.add(parseChunk(boundaries[firstChunk], boundaries[firstChunk + 1]));
+                return result;
+            }
+            int middleChunk = (firstChunk + lastChunk) >>> 1;
+            ChunkParseTask left = new ChunkParseTask(channel, boundaries, firstChunk, middleChunk);
+            ChunkParseTask right = new ChunkParseTask(channel, boundaries, middleChunk, lastChunk);
+            left.fork();
+            List<List<Product>> rightResult = right.compute();
+            result.addAll(left.join());
+            result.addAll(rightResult);
+            return result;
+        }
+
+        private List<Product> parseChunk(long start, long end) {
+            MappedByteBuffer buffer;
+            try {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+            } catch (IOException exception) {
+                throw new IllegalArgumentException(exception);
+            }
+            List<Product> products = new ArrayList<>();
+            int limit = buffer.limit();
+            int lineStart = 0;
+            while (lineStart < limit) {
+                int lineEnd = lineStart;
+                while (lineEnd < limit && buffer.get(lineEnd) != '\n') {
+                    lineEnd++;
+                }
+                int contentEnd = lineEnd;
+                if (contentEnd > lineStart && buffer.get(contentEnd - 1) == '\r') {
+                    contentEnd--;
+                }
+                if (contentEnd > lineStart) {
+                    products.add(createProductFromBytes(buffer, lineStart, contentEnd));
+                }
+                lineStart = lineEnd + 1;
+            }
+            return products;
+        }
+    }
+
+    /**
+     * Byte-level equivalent of createProductFromString(values), reading the comma-separated fields of the line
+     * in [start, end) directly from [buffer].
+     */
+    private static Product createProductFromBytes(ByteBuffer buffer, int start, int end) {
+        int brandEnd = nextFieldEnd(buffer, start, end);
+        String brandName = decodeString(buffer, start, brandEnd);
+        int productStart = brandEnd + 1;
+        int productEnd = nextFieldEnd(buffer, productStart, end);
+        String productName = decodeString(buffer, productStart, productEnd);
+        int priceStart = productEnd + 1;
+        int priceEnd = nextFieldEnd(buffer, priceStart, end);
+        int vatStart = priceEnd + 1;
+        int vatEnd = nextFieldEnd(buffer, vatStart, end);
+        int amountStart = vatEnd + 1;
+        int amountEnd = nextFieldEnd(buffer, amountStart, end);
+        int discountStart = amountEnd + 1;
+        int discountEnd = nextFieldEnd(buffer, discountStart, end);
+        long barcode = 0;
+        if (discountEnd < end) {
+            int barcodeStart = discountEnd + 1;
+            int barcodeEnd = nextFieldEnd(buffer, barcodeStart, end);
+            if (barcodeEnd > barcodeStart) {
+                barcode = parseLong(buffer, barcodeStart, barcodeEnd);
+            }
+        }
+
+        return new Product.ProductBuilder(brandName, productName)
+                .setPrice(parseInt(buffer, priceStart, priceEnd))
+                .setVatRate(readVatFromBytes(buffer, vatStart, vatEnd))
+                .setAmount(parseInt(buffer, amountStart, amountEnd))
+                .setDiscount(parseInt(buffer, discountStart, discountEnd))
+                .setBarcode(barcode)
+                .build();
+    }
+
+    private static int nextFieldEnd(ByteBuffer buffer, int position, int end) {
+        if (position > end) {
+            throw new IllegalArgumentException("Missing value in csv-line.");
+        }
+        while (position < end && buffer.get(position) != ',') {
+            position++;
+        }
+        return position;
+    }
+
+    private static String decodeString(ByteBuffer buffer, int start, int end) {
+        byte[] bytes = new byte[end - start];
+        buffer.get(start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Same rules as Integer.parseInt, without creating a String first.
+     */
+    private static int parseInt(ByteBuffer buffer, int start, int end) {
+        if (start >= end) {
+            throw new NumberFormatException("Empty number in csv-line.");
+        }
+        boolean negative = buffer.get(start) == '-';
+        int position = negative || buffer.get(start) == '+' ? start + 1 : start;
+        if (position == end) {
+            throw new NumberFormatException("Sign without digits in csv-line.");
+        }
+        long value = 0;
+        while (position < end) {
+            int digit = buffer.get(position++) - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("Non-numeric character in csv-line.");
+            }
+            value = value * 10 + digit;
+            if (value > (long) Integer.MAX_VALUE + 1) {
+                throw new NumberFormatException("Number out of range in csv-line.");
+            }
+        }
+        value = negative ? -value : value;
+        if (value > Integer.MAX_VALUE) {
+            throw new NumberFormatException("Number out of range in csv-line.");
+        }
+        return (int) value;
+    }
+
+    /**
+     * Parses a barcode: only digits, at most 18 of them, so the value always fits in a long. Surrounding spaces
+     * are skipped like String.trim() does, and a field of only spaces is no barcode.
+     */
+    private static long parseLong(ByteBuffer buffer, int start, int end) {
+        while (start < end && isSpace(buffer.get(start))) {
+            start++;
+        }
+        while (end > start && isSpace(buffer.get(end - 1))) {
+            end--;
+        }
+        if (end - start > 18) {
+            throw new NumberFormatException("Barcode too long in csv-line.");
+        }
+        long value = 0;
+        for (int position = start; position < end; position++) {
+            int digit = buffer.get(position) - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("Non-numeric character in csv-line.");
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    /**
+     * @return true for the characters String.trim() removes; bytes of multi-byte UTF-8 characters are negative.
+     */
+    private static boolean isSpace(byte value) {
+        return value >= 0 && value <= ' ';
+    }
+
+    private static VAT readVatFromBytes(ByteBuffer buffer, int start, int end) {
+        if (bytesEqual(buffer, start, end, VAT_STANDARD)) {
+            return VAT.STANDARD;
+        }
+        if (bytesEqual(buffer, start, end, VAT_FOOD)) {
+            return VAT.FOOD;
+        }
+        if (bytesEqual(buffer, start, end, VAT_REDUCED)) {
+            return VAT.REDUCED;
+        }
+        return VAT.NO_TAX;
+    }
+
+    private static boolean bytesEqual(ByteBuffer buffer, int start, int end, byte[] expected) {
+        if (end - start != expected.length) {
+            return false;
+        }
+        for (int i = 0; i < expected.length; i++) {
+            if (buffer.get(start + i) != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
 }
@@ -0,0 +1,231 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Support class used to save an InventoryBalance to, and load it from, a versioned binary snapshot file.
+ * The csv-files read by InventoryLoader are the import format, snapshots are what a register starts from.
+ * <p>
+ * Layout (all values big-endian):
+ * <pre>
+ * header      magic, version, productCount, stringCount, stringByteLength   (5 x int)
+ * dictionary  stringCount + 1 offsets into the string bytes (int), followed by the UTF-8 string bytes
+ * padding     up to the next multiple of 8
+ * columns     expirationEpochDay, barcode (long), brandId, productNameId, price, amount, discount (int),
+ *             vatOrdinal (byte)
+ * </pre>
+ * Brand and product names are stored once each in the dictionary and referred to by id from the columns.
+ * Every column holds productCount fixed-width values, so loading is a matter of mapping the file and reading
+ * each value at a computed offset.
+ */
+public class InventorySnapshot {
+
+    static final int MAGIC = 0x494E5642;
+    static final int VERSION = 2;
+
+    private static final int HEADER_SIZE_IN_BYTES = 5 * Integer.BYTES;
+    private static final int BYTES_PER_PRODUCT = 2 * Long.BYTES + 5 * Integer.BYTES + 1;
+    private static final VAT[] VAT_RATES = VAT.values();
+
+    private InventorySnapshot() {
+    }
+
+    /**
+     * Writes every product in [inventoryBalance] to [filePath].
+     * The snapshot is first written to a temporary file which then replaces [filePath],
+     * so an interrupted save never leaves a half-written snapshot behind.
+     *
+     * @throws IllegalArgumentException if the file cannot be written.
+     */
+    public static void save(InventoryBalance inventoryBalance, String filePath) {
+        List<Product> products = new ArrayList<>(inventoryBalance.getProducts());
+        Map<String, Integer> dictionaryIds = new HashMap<>();
+        List<byte[]> dictionary = new ArrayList<>();
+        int[] brandIds = new int[products.size()];
+        int[] productNameIds = new int[products.size()];
+        int stringByteLength = 0;
+
+        for (int i = 0; i < products.size(); i++) {
+            Product product = products.get(i);
+            for (int column = 0; column < 2; column++) {
+                String value = column == 0 ? product.getBrandName() : product.getProductName();
+                Integer id = dictionaryIds.get(value);
+                if (id == null) {
+                    id = dictionary.size();
+                    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                    dictionary.add(bytes);
+                    dictionaryIds.put(value, id);
+                    stringByteLength += bytes.length;
+                }
+                if (column == 0) {
+                    brandIds[i] = id;
+                } else {
+                    productNameIds[i] = id;
+                }
+            }
+        }
+
+        int productCount = products.size();
+        long columnsStart = columnsStart(dictionary.size(), stringByteLength);
+        long fileSize = columnsStart + (long) productCount * BYTES_PER_PRODUCT;
+        if (fileSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Inventory too large for a single snapshot file.");
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) fileSize);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(productCount).putInt(dictionary.size()).putInt(stringByteLength);
+        int offset = 0;
+        for (byte[] bytes : dictionary) {
+            buffer.putInt(offset);
+            offset += bytes.length;
+        }
+        buffer.putInt(offset);
+        for (byte[] bytes : dictionary) {
+            buffer.put(bytes);
+        }
+
+        buffer.position((int) columnsStart);
+        for (Product product : products) {
+            buffer.putLong(product.hasAnExpirationDate() ? product.getExpirationDate().toEpochDay() : ProductStore.NO_EXPIRATION_DATE);
+        }
+        for (Product product : products) {
+            buffer.putLong(product.getBarcode());
+        }
+        for (int brandId : brandIds) {
+            buffer.putInt(brandId);
+        }
+        for (int productNameId : productNameIds) {
+            buffer.putInt(productNameId);
+        }
+        for (Product product : products) {
+            buffer.putInt(product.getPriceInMinorUnits());
+        }
+        for (Product product : products) {
+            buffer.putInt(product.getAmount());
+        }
+        for (Product product : products) {
+            buffer.putInt(product.getDiscount());
+        }
+        for (Product product : products) {
+            buffer.put((byte) product.getVat().ordinal());
+        }
+        buffer.flip();
+
+        Path target = Path.of(filePath);
+        Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        } catch (IOException exception) {
+            throw new IllegalArgumentException(exception);
+        }
+        try {
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException exception) {
+            throw new IllegalArgumentException(exception);
+        }
+    }
+
+    /**
+     * Returns an InventoryBalance holding every product in the snapshot at [filePath].
+     *
+     * @throws IllegalArgumentException if the file cannot be read, is not a snapshot of the current version, or
+     * holds a dictionary offset, dictionary id or VAT rate out of range.
+     */
+    public static InventoryBalance load(String filePath) {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(Path.of(filePath), StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException exception) {
+            throw new IllegalArgumentException(exception);
+        }
+
+        if (buffer.limit() < HEADER_SIZE_IN_BYTES || buffer.getInt(0) != MAGIC) {
+            throw new IllegalArgumentException(String.format("%s is not an inventory snapshot.", filePath));
+        }
+        int version = buffer.getInt(4);
+        if (version != VERSION) {
+            throw new IllegalArgumentException(String.format("Snapshot version %d is not supported.", version));
+        }
+        int productCount = buffer.getInt(8);
+        int stringCount = buffer.getInt(12);
+        int stringByteLength = buffer.getInt(16);
+
+        if (productCount < 0 || stringCount < 0 || stringByteLength < 0
+                || columnsStart(stringCount, stringByteLength) > buffer.limit()) {
+            throw new IllegalArgumentException(String.format("%s is truncated.", filePath));
+        }
+
+        int offsetsStart = HEADER_SIZE_IN_BYTES;
+        int stringsStart = offsetsStart + (stringCount + 1) * Integer.BYTES;
+        String[] dictionary = new String[stringCount];
+        for (int i = 0; i < stringCount; i++) {
+            int start = buffer.getInt(offsetsStart + i * Integer.BYTES);
+            int end = buffer.getInt(offsetsStart + (i + 1) * Integer.BYTES);
+            if (start < 0 || end < start || end > stringByteLength) {
+                throw new IllegalArgumentException(String.format("String %d of %s is out of range.", i, filePath));
+            }
+            byte[] bytes = new byte[end - start];
+            buffer.get(stringsStart + start, bytes);
+            dictionary[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        long expectedFileSize = columnsStart(stringCount, stringByteLength)
+                + (long) productCount * BYTES_PER_PRODUCT;
+        if (expectedFileSize > buffer.limit()) {
+            throw new IllegalArgumentException(String.format("%s is truncated.", filePath));
+        }
+        int expirationColumn = (int) columnsStart(stringCount, stringByteLength);
+        int barcodeColumn = expirationColumn + productCount * Long.BYTES;
+        int brandColumn = barcodeColumn + productCount * Long.BYTES;
+        int productNameColumn = brandColumn + productCount * Integer.BYTES;
+        int priceColumn = productNameColumn + productCount * Integer.BYTES;
+        int amountColumn = priceColumn + productCount * Integer.BYTES;
+        int discountColumn = amountColumn + productCount * Integer.BYTES;
+        int vatColumn = discountColumn + productCount * Integer.BYTES;
+
+        InventoryBalance inventoryBalance = new InventoryBalance(productCount);
+        for (int i = 0; i < productCount; i++) {
+            int brandId = buffer.getInt(brandColumn + i * Integer.BYTES);
+            int productNameId = buffer.getInt(productNameColumn + i * Integer.BYTES);
+            int vatOrdinal = buffer.get(vatColumn + i);
+            if (brandId < 0 || brandId >= dictionary.length || productNameId < 0 || productNameId >= dictionary.length) {
+                throw new IllegalArgumentException(String.format("Name of product %d in %s is out of range.", i, filePath));
+            }
+            if (vatOrdinal < 0 || vatOrdinal >= VAT_RATES.length) {
+                throw new IllegalArgumentException(String.format("VAT rate of product %d in %s is out of range.", i, filePath));
+            }
+            inventoryBalance.addProduct(
+                    dictionary[brandId],
+                    dictionary[productNameId],
+                    buffer.getInt(priceColumn + i * Integer.BYTES),
+                    VAT_RATES[vatOrdinal],
+                    buffer.getInt(amountColumn + i * Integer.BYTES),
+                    buffer.getInt(discountColumn + i * Integer.BYTES),
+                    buffer.getLong(barcodeColumn + i * Long.BYTES),
+                    buffer.getLong(expirationColumn + i * Long.BYTES));
+        }
+        return inventoryBalance;
+    }
+
+    /**
+     * The columns start at the first multiple of 8 after the dictionary, so the long columns are aligned.
+     */
+    private static long columnsStart(int stringCount, int stringByteLength) {
+        long dictionaryEnd = HEADER_SIZE_IN_BYTES + (long) (stringCount + 1) * Integer.BYTES + stringByteLength;
+        return (dictionaryEnd + 7) & ~7L;
+    }
+}
@@ -0,0 +1,154 @@
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An in-process stand-in for a card payment gateway, for tests and load tests of CardAuthorizer and CashRegister.
+ * <p>
+ * Every request is answered after a configurable latency, on a daemon thread. Failures are injected at random:
+ * a share of requests fail, a share are never answered, so they time out, and a share are declined. The rest are
+ * approved. With the same seed, requests made in the same order get the same outcomes.
+ * <p>
+ * A decision is kept per request id: a request sent again with the same id, as CardAuthorizer does after a timeout
+ * or a failure, gets the decision of the first attempt that was answered, whatever it draws itself. A reversed
+ * request is declined from then on. Decisions are kept for the life of the gateway.
+ * <p>
+ * To create a gateway, see the LocalCardGatewayBuilder class.
+ */
+public class LocalCardGateway implements CardGateway, AutoCloseable {
+
+    private final long latencyInMs;
+    private final double failureRate;
+    private final double noAnswerRate;
+    private final double declineRate;
+    private final Random random;
+    private final ScheduledExecutorService responder;
+    private final AtomicLong numberOfRequests = new AtomicLong();
+    private final AtomicLong numberOfReversals = new AtomicLong();
+    private final ConcurrentHashMap<Long, Boolean> decisions = new ConcurrentHashMap<>();
+
+    private LocalCardGateway(LocalCardGatewayBuilder builder) {
+        this.latencyInMs = builder.latencyInMs;
+        this.failureRate = builder.failureRate;
+        this.noAnswerRate = builder.noAnswerRate;
+        this.declineRate = builder.declineRate;
+        this.random = new Random(builder.seed);
+        this.responder = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "local-card-gateway");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Boolean> authorize(long requestId, long amountInMinorUnit) {
+        numberOfRequests.incrementAndGet();
+        double outcome = random.nextDouble();
+        CompletableFuture<Boolean> answer = new CompletableFuture<>();
+        if (outcome < noAnswerRate) {
+            return answer;
+        }
+        responder.schedule(() -> {
+            if (outcome < noAnswerRate + failureRate) {
+                answer.completeExceptionally(new IllegalStateException(String.format("Request %d failed.", requestId)));
+            } else {
+                answer.complete(decisions.computeIfAbsent(requestId, id -> outcome >= noAnswerRate + failureRate + declineRate));
+            }
+        }, latencyInMs, TimeUnit.MILLISECONDS);
+        return answer;
+    }
+
+    /**
+     * Reverses [requestId] after the same latency as an answer. Reversals are never failed or left unanswered.
+     */
+    @Override
+    public CompletableFuture<Void> reverse(long requestId) {
+        CompletableFuture<Void> reversal = new CompletableFuture<>();
+        responder.schedule(() -> {
+            if (Boolean.TRUE.equals(decisions.put(requestId, false))) {
+                numberOfReversals.incrementAndGet();
+            }
+            reversal.complete(null);
+        }, latencyInMs, TimeUnit.MILLISECONDS);
+        return reversal;
+    }
+
+    /**
+     * @return the number of requests received, retries included.
+     */
+    public long getNumberOfRequests() {
+        return numberOfRequests.get();
+    }
+
+    /**
+     * @return the number of approved payments that have been reversed.
+     */
+    public long getNumberOfReversals() {
+        return numberOfReversals.get();
+    }
+
+    @Override
+    public void close() {
+        responder.shutdownNow();
+    }
+
+    public static class LocalCardGatewayBuilder {
+
+        private long latencyInMs;
+        private double failureRate;
+        private double noAnswerRate;
+        private double declineRate;
+        private long seed;
+
+        public LocalCardGatewayBuilder setLatencyInMs(long latencyInMs) {
+            this.latencyInMs = latencyInMs;
+            return this;
+        }
+
+        /**
+         * Share of requests, from 0 to 1, that fail after the latency.
+         */
+        public LocalCardGatewayBuilder setFailureRate(double failureRate) {
+            this.failureRate = failureRate;
+            return this;
+        }
+
+        /**
+         * Share of requests, from 0 to 1, that are never answered.
+         */
+        public LocalCardGatewayBuilder setNoAnswerRate(double noAnswerRate) {
+            this.noAnswerRate = noAnswerRate;
+            return this;
+        }
+
+        /**
+         * Share of requests, from 0 to 1, that are declined.
+         */
+        public LocalCardGatewayBuilder setDeclineRate(double declineRate) {
+            this.declineRate = declineRate;
+            return this;
+        }
+
+        public LocalCardGatewayBuilder setSeed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        /**
+         * @throws IllegalArgumentException if the latency or a rate is negative, or the rates add up to more than 1.
+         */
+        public LocalCardGateway build() {
+            if (latencyInMs < 0) {
+                throw new IllegalArgumentException(String.format("%d is not a valid latency.", latencyInMs));
+            }
+            if (failureRate < 0 || noAnswerRate < 0 || declineRate < 0 || failureRate + noAnswerRate + declineRate > 1) {
+                throw new IllegalArgumentException("Rates must be between 0 and 1, and add up to at most 1.");
+            }
+            return new LocalCardGateway(this);
+        }
+    }
+}
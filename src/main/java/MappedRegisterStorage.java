@@ -0,0 +1,107 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Keeps the amount of money in a .state database file mapped into memory, in the slotted format of
+ * RegisterStateFile. A text database file is first turned into one with FileRegisterStorage.migrateToStateFile.
+ * <p>
+ * A payment puts a copy of the new amount over the older copy in the mapping, with no system call. The operating
+ * system writes it back in its own time, so it survives a crash of the register but not of the machine, unless
+ * the storage forces every payment, which then costs one msync of the copy's page instead of a write and an fsync.
+ * A copy torn by a crash fails its checksum and the other copy is read instead.
+ */
+public class MappedRegisterStorage implements RegisterStorage {
+
+    private final String databaseFileName;
+    private final FileChannel channel;
+    private final MappedByteBuffer slots;
+    private final boolean forceEveryPayment;
+
+    /**
+     * Everything below is guarded by this.
+     */
+    private long balance;
+    private final long generation;
+    private long sequence;
+    private int newestSlot;
+    private boolean closed;
+
+    /**
+     * Reads the amount of money from the .state database file [databaseFileName], writes it back in the slotted
+     * format if it was not, and maps it.
+     *
+     * @param forceEveryPayment whether recordPayment waits for the new amount to reach the disk.
+     * @throws IllegalArgumentException if the file is not a .state file, does not exist or cannot be read or mapped,
+     * holds no valid copy, or holds a negative or non-numeric amount.
+     */
+    public MappedRegisterStorage(String databaseFileName, boolean forceEveryPayment) {
+        this.databaseFileName = databaseFileName;
+        Path databaseFile = Path.of(databaseFileName);
+        if (!RegisterStateFile.isStateFile(databaseFile)) {
+            throw new IllegalArgumentException(String.format("%s is not a %s file; migrate it with "
+                    + "FileRegisterStorage.migrateToStateFile first.", databaseFile, RegisterStateFile.STATE_FILE_EXTENSION));
+        }
+        RegisterStateFile.State state = RegisterStateFile.read(databaseFile);
+        RegisterStateFile.write(databaseFile, state.getBalanceInMinorUnit(), state.getGeneration());
+        this.forceEveryPayment = forceEveryPayment;
+        try {
+            channel = FileChannel.open(databaseFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            slots = channel.map(FileChannel.MapMode.READ_WRITE, 0, RegisterStateFile.FILE_SIZE_IN_BYTES);
+        } catch (IOException exception) {
+            throw new IllegalArgumentException(String.format("%s cannot be mapped.", databaseFile), exception);
+        }
+        newestSlot = RegisterStateFile.newestValidSlot(slots);
+        sequence = RegisterStateFile.sequenceOf(slots, newestSlot);
+        balance = RegisterStateFile.balanceOf(slots, newestSlot);
+        generation = RegisterStateFile.generationOf(slots, newestSlot);
+    }
+
+    @Override
+    public synchronized long getBalance() {
+        return balance;
+    }
+
+    @Override
+    public synchronized long recordPayment(long amountInMinorUnit) {
+        if (amountInMinorUnit < 0) {
+            throw new IllegalArgumentException("You cannot have negative money");
+        }
+        if (closed) {
+            throw new IllegalArgumentException("Storage is closed.");
+        }
+        int olderSlot = 1 - newestSlot;
+        RegisterStateFile.putCopy(slots, olderSlot, sequence + 1, balance + amountInMinorUnit, generation);
+        if (forceEveryPayment) {
+            slots.force(olderSlot * RegisterStateFile.SLOT_SIZE_IN_BYTES, RegisterStateFile.SLOT_SIZE_IN_BYTES);
+        }
+        newestSlot = olderSlot;
+        sequence++;
+        balance += amountInMinorUnit;
+        return balance;
+    }
+
+    @Override
+    public String getDatabaseFileName() {
+        return databaseFileName;
+    }
+
+    /**
+     * Forces the mapping to disk and closes the file.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        slots.force();
+        try {
+            channel.close();
+        } catch (IOException exception) {
+            throw new IllegalArgumentException(exception);
+        }
+    }
+}
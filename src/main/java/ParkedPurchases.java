@@ -0,0 +1,198 @@
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Purchases parked mid-scan, e.g. when a customer has forgotten their wallet, so the lane can serve the next customer.
+ * <p>
+ * Parking a purchase turns it into a small binary blob of product names and quantities plus its running totals,
+ * see Purchase.suspend(inventory), and empties it. The blob is kept in memory or, when a directory is given,
+ * in a file per parked purchase. Resuming reads the lines and totals back as they were, in O(lines),
+ * without computing any price again. A purchase that cannot be read back stays parked.
+ * <p>
+ * The stock reserved by a parked purchase stays reserved until it is resumed and paid or cancelled,
+ * or until cancel(ticket) gives it back. Reservations live in memory only, so purchases found in the directory
+ * when it is opened, parked before a restart, hold no stock: resuming one reserves its stock again, and cancelling
+ * one gives nothing back.
+ */
+public class ParkedPurchases {
+
+    private static final String FILE_PREFIX = "parked-";
+    private static final String FILE_SUFFIX = ".basket";
+
+    private final ProductStore inventory;
+    private final Promotions promotions;
+    private final Path directory;
+    private final Map<Long, byte[]> blobs = new ConcurrentHashMap<>();
+    private final AtomicLong lastTicket = new AtomicLong();
+    private final Set<Long> ticketsWithoutStock = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Parks purchases, without promotions, in memory.
+     */
+    public ParkedPurchases(InventoryBalance inventoryBalance) {
+        this(inventoryBalance, null);
+    }
+
+    /**
+     * Parks purchases made with [promotions] in memory.
+     */
+    public ParkedPurchases(InventoryBalance inventoryBalance, Promotions promotions) {
+        this.inventory = inventoryBalance.getStore();
+        this.promotions = promotions;
+        this.directory = null;
+    }
+
+    /**
+     * Parks purchases made with [promotions], or without if null, in files in [directoryPath],
+     * creating the directory if needed. Purchases already parked there can be resumed, which reserves their stock
+     * again.
+     *
+     * @throws IllegalArgumentException if the directory cannot be read.
+     */
+    public ParkedPurchases(InventoryBalance inventoryBalance, Promotions promotions, String directoryPath) {
+        this.inventory = inventoryBalance.getStore();
+        this.promotions = promotions;
+        this.directory = Path.of(directoryPath);
+        try {
+            Files.createDirectories(directory);
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, FILE_PREFIX + "*" + FILE_SUFFIX)) {
+                for (Path file : files) {
+                    String name = file.getFileName().toString();
+                    long ticket = Long.parseLong(name.substring(FILE_PREFIX.length(), name.length() - FILE_SUFFIX.length()));
+                    blobs.put(ticket, new byte[0]);
+                    ticketsWithoutStock.add(ticket);
+                    lastTicket.accumulateAndGet(ticket, Math::max);
+                }
+            }
+        } catch (IOException | NumberFormatException exception) {
+            throw new IllegalArgumentException(exception);
+        }
+    }
+
+    /**
+     * Parks [purchase], leaving it empty so it can be used for the next customer.
+     *
+     * @return the ticket to resume the purchase with.
+     * @throws IllegalArgumentException if [purchase] holds a product not in the inventory, or cannot be written,
+     * in which case it is left as it was.
+     */
+    public long park(Purchase purchase) {
+        byte[] blob = purchase.suspend(inventory);
+        long ticket = lastTicket.incrementAndGet();
+        if (directory != null) {
+            try {
+                Path temporaryFile = directory.resolve(fileName(ticket) + ".tmp");
+                Files.write(temporaryFile, blob);
+                Files.move(temporaryFile, directory.resolve(fileName(ticket)), StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException exception) {
+                throw new IllegalArgumentException(exception);
+            }
+            blob = new byte[0];
+        }
+        blobs.put(ticket, blob);
+        purchase.clearWithoutReleasing();
+        return ticket;
+    }
+
+    /**
+     * Resumes the purchase parked with [ticket], with the same lines and totals, and stock still reserved.
+     * The ticket is only given up once the purchase has been read back.
+     *
+     * @throws NoSuchElementException if no purchase is parked with [ticket].
+     * @throws IllegalArgumentException if the parked purchase holds a product no longer in the inventory, or was
+     * parked before a restart and there is no longer enough stock of a product, in which case it stays parked.
+     */
+    public Purchase resume(long ticket) throws NoSuchElementException {
+        byte[] storedBlob = storedBlob(ticket);
+        Purchase purchase = Purchase.resume(read(ticket, storedBlob), inventory, promotions);
+        boolean reservedAgain = ticketsWithoutStock.contains(ticket);
+        if (reservedAgain) {
+            purchase.reserveAgain();
+        }
+        try {
+            remove(ticket, storedBlob);
+        } catch (RuntimeException exception) {
+            if (reservedAgain) {
+                purchase.cancelPurchase();
+            }
+            throw exception;
+        }
+        return purchase;
+    }
+
+    /**
+     * Drops the purchase parked with [ticket] and gives its reserved stock back to the inventory.
+     *
+     * @throws NoSuchElementException if no purchase is parked with [ticket].
+     * @throws IllegalArgumentException if the parked purchase holds a product no longer in the inventory, in which
+     * case it stays parked.
+     */
+    public void cancel(long ticket) throws NoSuchElementException {
+        byte[] storedBlob = storedBlob(ticket);
+        Purchase purchase = Purchase.resume(read(ticket, storedBlob), inventory, promotions);
+        boolean holdsStock = !ticketsWithoutStock.contains(ticket);
+        remove(ticket, storedBlob);
+        if (holdsStock) {
+            purchase.cancelPurchase();
+        }
+    }
+
+    public int getNumberOfParkedPurchases() {
+        return blobs.size();
+    }
+
+    private byte[] storedBlob(long ticket) {
+        byte[] storedBlob = blobs.get(ticket);
+        if (storedBlob == null) {
+            throw new NoSuchElementException(String.format("No purchase parked with ticket %d.", ticket));
+        }
+        return storedBlob;
+    }
+
+    /**
+     * @return the blob parked with [ticket], from its file if the purchases are parked in files.
+     */
+    private byte[] read(long ticket, byte[] storedBlob) {
+        if (directory == null) {
+            return storedBlob;
+        }
+        try {
+            return Files.readAllBytes(directory.resolve(fileName(ticket)));
+        } catch (IOException exception) {
+            throw new IllegalArgumentException(exception);
+        }
+    }
+
+    /**
+     * Gives up [ticket], unless another thread resumed or cancelled it first, and deletes its file.
+     *
+     * @throws NoSuchElementException if the ticket has already been given up.
+     * @throws IllegalArgumentException if the file cannot be deleted, in which case the ticket stays parked.
+     */
+    private void remove(long ticket, byte[] storedBlob) {
+        if (!blobs.remove(ticket, storedBlob)) {
+            throw new NoSuchElementException(String.format("No purchase parked with ticket %d.", ticket));
+        }
+        if (directory != null) {
+            try {
+                Files.delete(directory.resolve(fileName(ticket)));
+            } catch (IOException exception) {
+                blobs.put(ticket, storedBlob);
+                throw new IllegalArgumentException(exception);
+            }
+        }
+        ticketsWithoutStock.remove(ticket);
+    }
+
+    private static String fileName(long ticket) {
+        return FILE_PREFIX + ticket + FILE_SUFFIX;
+    }
+}
@@ -0,0 +1,465 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Write-ahead log of the payments taken by a CashRegister, next to its balance file.
+ * <p>
+ * The balance file is the snapshot: the balance and the generation of the log, see RegisterStateFile. Every payment
+ * appends one record to [balance file].wal:
+ * <pre>
+ * header      magic (int), generation (long)
+ * records     amount in minor units (long), CRC32 of the amount (int)
+ * </pre>
+ * On opening, the balance is the snapshot plus the records of the log, read up to the first record that is cut
+ * short or has a bad checksum, which is where a crash stopped writing. A log whose generation is not that of the
+ * snapshot has already been folded into it, or belongs to a balance file rewritten by hand, and is ignored.
+ * <p>
+ * Every COMPACTION_INTERVAL_IN_RECORDS records the log is compacted: the balance is written to a new snapshot with
+ * the next generation, over the older copy in the balance file, and the log is started over. The payment that
+ * crosses the interval compacts once it is as durable as the log promises, so a compaction that fails does not undo
+ * it; the log still holds every payment and the next payment tries again.
+ * <p>
+ * How long append(amount) waits for its record to reach the disk is chosen by Durability.
+ */
+public class PaymentLog implements RegisterStorage {
+
+    /**
+     * When a payment is durable, i.e. survives a crash of the machine.
+     */
+    public enum Durability {
+        /**
+         * append(amount) writes and forces its own record before it returns: one fsync per payment.
+         */
+        PER_PAYMENT,
+        /**
+         * append(amount) returns once its record is forced. Payments appended while a force is running are
+         * written and forced together by the next one, so concurrent lanes share fsyncs (group commit).
+         */
+        BATCHED,
+        /**
+         * append(amount) returns at once. Records are written and forced every ASYNC_FLUSH_INTERVAL_IN_MS,
+         * so a crash loses at most that much.
+         */
+        ASYNC
+    }
+
+    static final int COMPACTION_INTERVAL_IN_RECORDS = 10_000;
+    static final long ASYNC_FLUSH_INTERVAL_IN_MS = 10;
+    private static final String LOG_FILE_SUFFIX = ".wal";
+    private static final int MAGIC = 0x5041594C;
+    private static final int HEADER_SIZE_IN_BYTES = Integer.BYTES + Long.BYTES;
+    private static final int RECORD_SIZE_IN_BYTES = Long.BYTES + Integer.BYTES;
+
+    private final String balanceFileName;
+    private final Path snapshotFile;
+    private final Durability durability;
+    private final FileChannel log;
+    private final ScheduledExecutorService asyncFlusher;
+
+    private final int compactionIntervalInRecords;
+
+    /**
+     * Everything below is guarded by lock. Records are appended to pendingRecords; a flush swaps it with
+     * spareRecords and writes it outside the lock, so payments can be appended while the disk is forced.
+     */
+    private final Object lock = new Object();
+    private ByteBuffer pendingRecords = ByteBuffer.allocate(RECORD_SIZE_IN_BYTES * 64);
+    private ByteBuffer spareRecords = ByteBuffer.allocate(RECORD_SIZE_IN_BYTES * 64);
+    private Batch pendingBatch = new Batch();
+    private final CRC32 checksum = new CRC32();
+    private final ByteBuffer checksummedAmount = ByteBuffer.allocate(Long.BYTES);
+    private long generation;
+    private long balance;
+    private boolean flushing;
+    private boolean closed;
+    private boolean logStale;
+    private int recordsSinceCompaction;
+
+    /**
+     * The payments in pendingRecords, which are written and forced together. An appender keeps the batch of its
+     * record to learn whether the record reached the disk.
+     */
+    private static final class Batch {
+        private long amountInMinorUnit;
+        private int numberOfRecords;
+        private boolean settled;
+        private IllegalArgumentException failure;
+    }
+
+    /**
+     * Opens the channel of a log file. Tests pass one that fails on purpose.
+     */
+    interface LogOpener {
+        FileChannel open(Path logFile) throws IOException;
+    }
+
+    /**
+     * Opens the log of the balance file [balanceFileName] and recovers the balance from the file and the log.
+     *
+     * @throws IllegalArgumentException if the balance file cannot be read, or holds a negative or non-numeric balance.
+     */
+    public PaymentLog(String balanceFileName, Durability durability) {
+        this(balanceFileName, durability, logFile -> FileChannel.open(logFile,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE),
+                COMPACTION_INTERVAL_IN_RECORDS);
+    }
+
+    /**
+     * Opens the log like PaymentLog(balanceFileName, durability), with the channel of the log opened by [logOpener]
+     * and compacted every [compactionIntervalInRecords] records.
+     */
+    PaymentLog(String balanceFileName, Durability durability, LogOpener logOpener, int compactionIntervalInRecords) {
+        this.balanceFileName = balanceFileName;
+        this.snapshotFile = Path.of(balanceFileName);
+        this.durability = durability;
+        this.compactionIntervalInRecords = compactionIntervalInRecords;
+        RegisterStateFile.State snapshot = RegisterStateFile.read(snapshotFile);
+        balance = snapshot.getBalanceInMinorUnit();
+        generation = snapshot.getGeneration();
+        try {
+            log = logOpener.open(Path.of(balanceFileName + LOG_FILE_SUFFIX));
+            if (!replay()) {
+                compact();
+            }
+        } catch (IOException exception) {
+            throw new IllegalArgumentException(exception);
+        }
+        if (durability == Durability.ASYNC) {
+            asyncFlusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "payment-log-flusher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            asyncFlusher.scheduleWithFixedDelay(this::flushInBackground,
+                    ASYNC_FLUSH_INTERVAL_IN_MS, ASYNC_FLUSH_INTERVAL_IN_MS, TimeUnit.MILLISECONDS);
+        } else {
+            asyncFlusher = null;
+        }
+    }
+
+    /**
+     * Logs a payment of [amountInMinorUnit] and waits as long as the durability of the log says.
+     *
+     * @return the balance after the payment.
+     * @throws IllegalArgumentException if the amount is negative, the log is closed or, with PER_PAYMENT and
+     * BATCHED, cannot be written. The payment is then neither logged nor part of the balance.
+     */
+    public long append(long amountInMinorUnit) {
+        if (amountInMinorUnit < 0) {
+            throw new IllegalArgumentException("You cannot have negative money");
+        }
+        Batch batch = null;
+        long balanceAfterPayment;
+        synchronized (lock) {
+            if (closed) {
+                throw new IllegalArgumentException("Payment log is closed.");
+            }
+            if (pendingRecords.remaining() < RECORD_SIZE_IN_BYTES) {
+                pendingRecords = ByteBuffer.allocate(pendingRecords.capacity() * 2).put(pendingRecords.flip());
+            }
+            if (durability == Durability.PER_PAYMENT) {
+                while (flushing) {
+                    awaitFlush();
+                }
+                pendingRecords.putLong(amountInMinorUnit).putInt(checksumOf(amountInMinorUnit));
+                try {
+                    writeAndForce(pendingRecords);
+                } catch (IllegalArgumentException exception) {
+                    pendingRecords.position(pendingRecords.position() - RECORD_SIZE_IN_BYTES);
+                    throw exception;
+                }
+            } else {
+                pendingRecords.putLong(amountInMinorUnit).putInt(checksumOf(amountInMinorUnit));
+                batch = pendingBatch;
+                batch.amountInMinorUnit += amountInMinorUnit;
+                batch.numberOfRecords++;
+            }
+            balance += amountInMinorUnit;
+            balanceAfterPayment = balance;
+            recordsSinceCompaction++;
+        }
+        if (durability == Durability.BATCHED) {
+            flush(batch);
+        }
+        compactIfDue();
+        return balanceAfterPayment;
+    }
+
+    /**
+     * Same as append(amountInMinorUnit).
+     */
+    @Override
+    public long recordPayment(long amountInMinorUnit) {
+        return append(amountInMinorUnit);
+    }
+
+    /**
+     * @return the balance of the snapshot plus every appended payment, durable or not.
+     */
+    @Override
+    public long getBalance() {
+        synchronized (lock) {
+            return balance;
+        }
+    }
+
+    /**
+     * @return the balance file the log belongs to.
+     */
+    @Override
+    public String getDatabaseFileName() {
+        return balanceFileName;
+    }
+
+    /**
+     * Writes and forces every payment appended so far.
+     */
+    public void flush() {
+        Batch batch;
+        synchronized (lock) {
+            while (flushing) {
+                awaitFlush();
+            }
+            batch = pendingBatch;
+        }
+        flush(batch);
+    }
+
+    /**
+     * Folds the log into a new snapshot and starts the log over.
+     */
+    public void compact() {
+        synchronized (lock) {
+            compactWhenIdle();
+        }
+    }
+
+    /**
+     * Flushes the payments appended so far and closes the log. Closing a closed log does nothing.
+     */
+    @Override
+    public void close() {
+        if (asyncFlusher != null) {
+            asyncFlusher.shutdown();
+        }
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        try {
+            flush();
+        } finally {
+            try {
+                log.close();
+            } catch (IOException exception) {
+                throw new IllegalArgumentException(exception);
+            }
+        }
+    }
+
+    /**
+     * Returns once the records of [batch] are forced. The first thread to find no flush running takes every pending
+     * record and forces them; the others wait for it, and if their record was appended too late for that flush, one
+     * of them starts the next.
+     *
+     * @throws IllegalArgumentException if the batch could not be written. Its payments are then taken out of the
+     * balance, except with ASYNC, where nobody waits for them and they are written again by the next flush.
+     */
+    private void flush(Batch batch) {
+        ByteBuffer records;
+        synchronized (lock) {
+            while (flushing && !batch.settled) {
+                awaitFlush();
+            }
+            if (batch.settled) {
+                if (batch.failure != null) {
+                    throw batch.failure;
+                }
+                return;
+            }
+            if (batch.numberOfRecords == 0) {
+                return;
+            }
+            flushing = true;
+            records = pendingRecords;
+            pendingRecords = spareRecords;
+            pendingBatch = new Batch();
+        }
+        IllegalArgumentException failure = null;
+        try {
+            writeAndForce(records);
+        } catch (IllegalArgumentException exception) {
+            failure = exception;
+        }
+        synchronized (lock) {
+            flushing = false;
+            batch.settled = true;
+            batch.failure = failure;
+            if (failure != null && durability == Durability.ASYNC) {
+                // Put the records back in front of those appended since, so the next flush tries them again.
+                pendingRecords = ByteBuffer.allocate(records.capacity() + pendingRecords.capacity())
+                        .put(records.flip()).put(pendingRecords.flip());
+                pendingBatch.amountInMinorUnit += batch.amountInMinorUnit;
+                pendingBatch.numberOfRecords += batch.numberOfRecords;
+            } else if (failure != null) {
+                balance -= batch.amountInMinorUnit;
+                recordsSinceCompaction -= batch.numberOfRecords;
+            }
+            records.clear();
+            spareRecords = records;
+            lock.notifyAll();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void flushInBackground() {
+        try {
+            flush();
+        } catch (RuntimeException exception) {
+            exception.printStackTrace();
+        }
+    }
+
+    /**
+     * Writes the records of [records], from the start to its position, at the end of the log, forces them to disk
+     * and clears [records]. If writing or forcing fails, the log is cut back to where it ended before, so records
+     * that were written but not forced are never replayed, and [records] is left as it was to be written again.
+     */
+    private void writeAndForce(ByteBuffer records) {
+        if (logStale) {
+            startLog();
+        }
+        int end = records.position();
+        long start = -1;
+        try {
+            start = log.position();
+            records.flip();
+            while (records.hasRemaining()) {
+                log.write(records);
+            }
+            log.force(false);
+            records.clear();
+        } catch (IOException exception) {
+            records.limit(records.capacity()).position(end);
+            if (start >= 0) {
+                try {
+                    log.truncate(start);
+                    log.position(start);
+                } catch (IOException truncateException) {
+                    exception.addSuppressed(truncateException);
+                }
+            }
+            throw new IllegalArgumentException(exception);
+        }
+    }
+
+    private int checksumOf(long amountInMinorUnit) {
+        checksum.reset();
+        checksum.update(checksummedAmount.clear().putLong(amountInMinorUnit).flip());
+        return (int) checksum.getValue();
+    }
+
+    /**
+     * Compacts the log if the interval has passed. A compaction that fails leaves the log as it was, so it is
+     * left to the next payment.
+     */
+    private void compactIfDue() {
+        synchronized (lock) {
+            if (closed || recordsSinceCompaction < compactionIntervalInRecords) {
+                return;
+            }
+            try {
+                compactWhenIdle();
+            } catch (IllegalArgumentException exception) {
+                // Every payment is still in the snapshot or the log.
+            }
+        }
+    }
+
+    /**
+     * Must be called holding lock. Waits for a running flush, then writes the balance to a new snapshot. Pending
+     * records are then part of the snapshot, so they are dropped instead of written.
+     */
+    private void compactWhenIdle() {
+        while (flushing) {
+            awaitFlush();
+        }
+        RegisterStateFile.write(snapshotFile, balance, generation + 1);
+        generation++;
+        pendingRecords.clear();
+        pendingBatch.settled = true;
+        pendingBatch = new Batch();
+        recordsSinceCompaction = 0;
+        startLog();
+    }
+
+    /**
+     * Must be called holding lock with no flush running, or by the running flush. Starts the log over with the
+     * header of the current generation. Until that succeeds the log still has the header of an older generation,
+     * whose records are ignored on opening, so writeAndForce starts it over before writing records to it.
+     */
+    private void startLog() {
+        logStale = true;
+        try {
+            log.truncate(0);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE_IN_BYTES).putInt(MAGIC).putLong(generation).flip();
+            log.write(header, 0);
+            log.position(HEADER_SIZE_IN_BYTES);
+            log.force(false);
+        } catch (IOException exception) {
+            throw new IllegalArgumentException(exception);
+        }
+        logStale = false;
+    }
+
+    /**
+     * Adds the records of the log to the balance read from the snapshot, and cuts off a torn last record.
+     *
+     * @return false if the log does not belong to the snapshot and has to be started over.
+     */
+    private boolean replay() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE_IN_BYTES);
+        log.read(header, 0);
+        if (header.hasRemaining() || header.getInt(0) != MAGIC || header.getLong(Integer.BYTES) != generation) {
+            return false;
+        }
+        ByteBuffer records = ByteBuffer.allocate((int) Math.min(Integer.MAX_VALUE, log.size() - HEADER_SIZE_IN_BYTES));
+        while (records.hasRemaining() && log.read(records, HEADER_SIZE_IN_BYTES + records.position()) > 0) {
+            // Read until the buffer is full or the end of the log.
+        }
+        records.flip();
+        long end = HEADER_SIZE_IN_BYTES;
+        while (records.remaining() >= RECORD_SIZE_IN_BYTES) {
+            long amount = records.getLong();
+            if (records.getInt() != checksumOf(amount) || amount < 0) {
+                break;
+            }
+            balance += amount;
+            recordsSinceCompaction++;
+            end += RECORD_SIZE_IN_BYTES;
+        }
+        log.truncate(end);
+        log.position(end);
+        return true;
+    }
+
+    private void awaitFlush() {
+        try {
+            lock.wait();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new IllegalArgumentException(exception);
+        }
+    }
+}
@@ -1,32 +1,95 @@
 import java.time.LocalDate;
-import java.util.Objects;
 
 /**
  * Product is treated as immutable as possible.
  * After a product has been created, you should only be able to change the amount and the discount.
  * Expiration date is added, if appropriate, after product has been created.
  * Creation of Product objects is managed with builder pattern - see bottom of class.
+ * <p>
+ * A Product in an InventoryBalance is a view over the inventory's ProductStore: only the names are held by the
+ * object itself, every other value is stored in the primitive arrays of the store, at the product's SKU id.
+ * A newly built Product is in no store and holds its values in a small Detached object of its own. When it is added
+ * to an InventoryBalance its values are moved into the inventory's store, and back into a Detached object if it is
+ * removed again.
  */
 public class Product {
 
     private final String brandName;
     private final String productName;
-    private final int priceInMinorUnits;
-    private final VAT vatRate;
-    private LocalDate expirationDate;
 
-    private int amountInInventory;
-    private int discount;
-    private boolean hasDiscount;
+    /**
+     * Either store is set and the values are in it at skuId, or store is null and the values are in detached.
+     */
+    private ProductStore store;
+    private int skuId;
+    private Detached detached;
 
     private Product(ProductBuilder builder) {
         this.brandName = builder.brandName;
         this.productName = builder.productName;
-        this.priceInMinorUnits = builder.priceInMinorUnits;
-        this.vatRate = builder.vatRate;
-        this.amountInInventory = builder.amount;
-        this.discount = builder.discount;
-        this.hasDiscount = builder.hasDiscount;
+        this.detached = new Detached(builder.priceInMinorUnits, builder.vatRate, builder.amount, builder.discount,
+                builder.barcode, ProductStore.NO_EXPIRATION_DATE, InventoryBalance.PRODUCT_LOW_IN_STOCK);
+    }
+
+    /**
+     * Creates a view of a product that is added directly to [store], without going through ProductBuilder.
+     */
+    Product(ProductStore store, String brandName, String productName, int priceInMinorUnits, VAT vatRate, int amount,
+            int discount, long barcode, long expirationEpochDay) {
+        this.brandName = brandName;
+        this.productName = productName;
+        this.store = store;
+        this.skuId = store.add(this, priceInMinorUnits, vatRate, amount, discount, barcode, expirationEpochDay);
+    }
+
+    /**
+     * Moves the values of this detached product into [newStore]. Used by InventoryBalance when a product is added
+     * to the inventory.
+     *
+     * @throws IllegalArgumentException if the product is already in a store.
+     */
+    void attach(ProductStore newStore) {
+        if (store != null) {
+            throw new IllegalArgumentException("Product already present in another inventory.");
+        }
+        int newSkuId = newStore.add(this, getPriceInMinorUnits(), getVat(), getAmount(), getDiscount(), getBarcode(),
+                expirationEpochDay());
+        int lowStockThreshold = getLowStockThreshold();
+        if (lowStockThreshold != newStore.lowStockThreshold(newSkuId)) {
+            newStore.setLowStockThreshold(newSkuId, lowStockThreshold);
+        }
+        store = newStore;
+        skuId = newSkuId;
+        detached = null;
+    }
+
+    /**
+     * Moves the values of this product out of its store into a Detached object of its own, and removes it from the
+     * store. Used by InventoryBalance when a product is removed from the inventory.
+     */
+    void detach() {
+        if (store == null) {
+            return;
+        }
+        detached = new Detached(getPriceInMinorUnits(), getVat(), getAmount(), getDiscount(), getBarcode(),
+                expirationEpochDay(), getLowStockThreshold());
+        store.remove(skuId);
+        store = null;
+        skuId = -1;
+    }
+
+    /**
+     * @return the store the product is in, or null if it is in none.
+     */
+    ProductStore getStore() {
+        return store;
+    }
+
+    /**
+     * @return the dense id of the product within its current store, or -1 if it is in none.
+     */
+    int getSkuId() {
+        return store != null ? skuId : -1;
     }
 
     /**
@@ -34,7 +97,7 @@ public class Product {
      * If a banana costs 2000 without VAT (20 SEK), this would return 2240.
      **/
     public int getPriceWithVat() {
-        return (getPriceInMinorUnits() * (getVat().value + 100) / 100);
+        return store != null ? store.priceWithVat(skuId) : detached.priceWithVat;
     }
 
     /**
@@ -50,18 +113,17 @@ public class Product {
      * If a banana costs 20 SEK, the price entered would be 2000. (2000 öre.)
      **/
     public int getPriceInMinorUnits() {
-        return priceInMinorUnits;
+        return store != null ? store.price(skuId) : detached.price;
     }
 
     /**
      * Returns the price with VAT and discount applied.
      * If a banana costs 2240 with VAT, this would return 2016.
      * (2240 * 0.9 = 2016).
+     * The price is computed when the discount is set, not when it is read.
      */
     public int getPriceWithVatAndDiscount() {
-        int fraction = 100 - getDiscount();
-        int priceWithDiscount = getPriceWithVat() * fraction;
-        return priceWithDiscount / 100;
+        return store != null ? store.priceWithVatAndDiscount(skuId) : detached.priceWithVatAndDiscount();
     }
 
     /**
@@ -70,31 +132,34 @@ public class Product {
      * (2240 * 0.9 = 2016. 2240 - 2016 = 224.)
      */
     public int getDiscountAmount() {
-        return getPriceWithVat() - getPriceWithVatAndDiscount();
+        return store != null ? store.discountAmount(skuId) : detached.priceWithVat - detached.priceWithVatAndDiscount();
     }
 
     public int getDiscount() {
-        return discount;
+        return store != null ? store.discount(skuId) : detached.discount();
     }
 
     public void setDiscount(int discount) {
         if (discount < 0) {
             throw new IllegalArgumentException(String.format("%d is not a valid discount", discount));
         }
-        this.discount = discount;
-        this.hasDiscount = discount > 0;
+        if (store != null) {
+            store.setDiscount(skuId, discount);
+        } else {
+            detached.setDiscount(discount);
+        }
     }
 
     public boolean hasDiscount() {
-        return hasDiscount;
+        return getDiscount() > 0;
     }
 
     public VAT getVat() {
-        return vatRate;
+        return store != null ? store.vat(skuId) : detached.vatRate;
     }
 
     public int getAmount() {
-        return amountInInventory;
+        return store != null ? store.amount(skuId) : detached.amount;
     }
 
     /**
@@ -104,15 +169,67 @@ public class Product {
         if (amount < 0) {
             throw new IllegalArgumentException(String.format("%d is not a valid amount.", amount));
         }
-        this.amountInInventory = amount;
+        if (store != null) {
+            store.setAmount(skuId, amount);
+        } else {
+            detached.setAmount(amount);
+        }
     }
 
     public void increment() {
-        setAmount(amountInInventory + 1);
+        release(1);
     }
 
     public void decrement() {
-        setAmount(amountInInventory - 1);
+        if (!tryReserve(1)) {
+            throw new IllegalArgumentException(String.format("%d is not a valid amount.", getAmount() - 1));
+        }
+    }
+
+    /**
+     * Atomically takes [units] from the amount, for example when the product is scanned at a checkout.
+     * Safe to call from several checkout lanes at once: a unit can never be sold twice.
+     *
+     * @return true if the units were reserved, false if there are fewer than [units] left.
+     */
+    public boolean tryReserve(int units) {
+        if (units <= 0) {
+            throw new IllegalArgumentException(String.format("%d is not a valid amount.", units));
+        }
+        return store != null ? store.tryReserve(skuId, units) : detached.tryReserve(units);
+    }
+
+    /**
+     * Atomically gives [units] back to the amount, for example when a scanned product is removed from a purchase.
+     */
+    public void release(int units) {
+        if (units <= 0) {
+            throw new IllegalArgumentException(String.format("%d is not a valid amount.", units));
+        }
+        if (store != null) {
+            store.release(skuId, units);
+        } else {
+            detached.release(units);
+        }
+    }
+
+    public int getLowStockThreshold() {
+        return store != null ? store.lowStockThreshold(skuId) : detached.lowStockThreshold;
+    }
+
+    /**
+     * Sets the amount below which this product is reported as low in stock by InventoryBalance.
+     * Defaults to InventoryBalance.PRODUCT_LOW_IN_STOCK.
+     */
+    public void setLowStockThreshold(int threshold) {
+        if (threshold < 0) {
+            throw new IllegalArgumentException(String.format("%d is not a valid threshold.", threshold));
+        }
+        if (store != null) {
+            store.setLowStockThreshold(skuId, threshold);
+        } else {
+            detached.lowStockThreshold = threshold;
+        }
     }
 
     public String getProductName() {
@@ -123,24 +240,46 @@ public class Product {
         return brandName;
     }
 
+    public boolean hasABarcode() {
+        return getBarcode() != ProductStore.NO_BARCODE;
+    }
+
+    /**
+     * Returns the EAN/UPC barcode of the product, as a number. Products without a barcode return 0.
+     */
+    public long getBarcode() {
+        return store != null ? store.barcode(skuId) : detached.barcode;
+    }
+
     public boolean hasAnExpirationDate() {
-        return expirationDate != null;
+        return expirationEpochDay() != ProductStore.NO_EXPIRATION_DATE;
     }
 
     public LocalDate getExpirationDate() {
-        return expirationDate;
+        return hasAnExpirationDate() ? LocalDate.ofEpochDay(expirationEpochDay()) : null;
     }
 
     public void setExpirationDate(LocalDate expirationDate) {
-        if (this.expirationDate != null) {
+        if (hasAnExpirationDate()) {
             throw new IllegalArgumentException("An expiration date has already been set!");
         }
-        this.expirationDate = expirationDate;
+        if (expirationDate == null) {
+            return;
+        }
+        if (store != null) {
+            store.setExpirationEpochDay(skuId, expirationDate.toEpochDay());
+        } else {
+            detached.expirationEpochDay = expirationDate.toEpochDay();
+        }
+    }
+
+    private long expirationEpochDay() {
+        return store != null ? store.expirationEpochDay(skuId) : detached.expirationEpochDay;
     }
 
     @Override
     public String toString() {
-        return String.format("%s %s", brandName, productName);
+        return brandName + " " + productName;
     }
 
     @Override
@@ -156,14 +295,77 @@ public class Product {
 
     @Override
     public int hashCode() {
-        return Objects.hash(brandName, productName);
+        return 31 * brandName.hashCode() + productName.hashCode();
+    }
+
+    /**
+     * The values of a product that is in no store, so that building a Product does not allocate a ProductStore with
+     * all its columns and indexes. The prices are computed the same way ProductStore computes them.
+     */
+    private static final class Detached {
+
+        private final int price;
+        private final int priceWithVat;
+        private final VAT vatRate;
+        private final long barcode;
+        private volatile int amount;
+        /**
+         * The discount in the high 32 bits, the price with VAT and discount in the low 32 bits, as in ProductStore.
+         */
+        private volatile long discountedPrice;
+        private volatile long expirationEpochDay;
+        private volatile int lowStockThreshold;
+
+        private Detached(int price, VAT vatRate, int amount, int discount, long barcode, long expirationEpochDay,
+                         int lowStockThreshold) {
+            this.price = price;
+            this.priceWithVat = ProductStore.priceWithVat(price, vatRate);
+            this.vatRate = vatRate;
+            this.barcode = barcode;
+            this.amount = amount;
+            this.discountedPrice = ProductStore.packDiscountedPrice(discount, priceWithVat);
+            this.expirationEpochDay = expirationEpochDay;
+            this.lowStockThreshold = lowStockThreshold;
+        }
+
+        private int discount() {
+            return (int) (discountedPrice >>> 32);
+        }
+
+        private int priceWithVatAndDiscount() {
+            return (int) discountedPrice;
+        }
+
+        private void setDiscount(int discount) {
+            discountedPrice = ProductStore.packDiscountedPrice(discount, priceWithVat);
+        }
+
+        private synchronized void setAmount(int amount) {
+            this.amount = amount;
+        }
+
+        private synchronized boolean tryReserve(int units) {
+            if (amount < units) {
+                return false;
+            }
+            amount -= units;
+            return true;
+        }
+
+        private synchronized void release(int units) {
+            int updated = amount + units;
+            if (updated < 0) {
+                throw new IllegalArgumentException(String.format("%d is not a valid amount.", updated));
+            }
+            amount = updated;
+        }
     }
 
     /**
      * Builder pattern used to create Product objects.
-     * All fields are mandatory except discount and hasDiscount.
-     * If the discount is not explicitly set by the user, the discount defaults to 0 and hasDiscount to false.
-     * (int values declared but not initialized default to 0, boolean values to false.)
+     * All fields are mandatory except discount and barcode.
+     * If the discount is not explicitly set by the user, the discount defaults to 0 and hasDiscount() returns false.
+     * (int values declared but not initialized default to 0.)
      * <p>
      * brandName and productName are entered directly in the constructor, all remaining fields are set by methods.
      * For example:
@@ -175,6 +377,8 @@ public class Product {
      */
     public static class ProductBuilder {
 
+        private static final long MAX_BARCODE = 99_999_999_999_999L;
+
         private final String brandName;
         private final String productName;
 
@@ -182,7 +386,7 @@ public class Product {
         private VAT vatRate;
         private int amount;
         private int discount;
-        private boolean hasDiscount;
+        private long barcode;
 
         public ProductBuilder(String brandName, String productName) {
             this.brandName = brandName;
@@ -206,7 +410,14 @@ public class Product {
 
         public ProductBuilder setDiscount(int discount) {
             this.discount = discount;
-            hasDiscount = discount > 0;
+            return this;
+        }
+
+        /**
+         * Sets the EAN/UPC barcode of the product. Barcodes have at most 14 digits, so they are stored as a long.
+         */
+        public ProductBuilder setBarcode(long barcode) {
+            this.barcode = barcode;
             return this;
         }
 
@@ -215,38 +426,41 @@ public class Product {
          * Calls validateProduct() to ensure that the object is built properly, with all mandatory fields.
          */
         public Product build() {
-            Product product = new Product(this);
-            validateProduct(product);
-            return product;
+            validateProduct();
+            return new Product(this);
         }
 
-        private void validateProduct(Product product) throws IllegalArgumentException {
+        private void validateProduct() throws IllegalArgumentException {
             if (priceInMinorUnits <= 0) {
-                exceptionMessage(product, "Price");
+                exceptionMessage("Price");
             }
 
             if (amount <= 0) {
-                exceptionMessage(product, "Amount");
+                exceptionMessage("Amount");
             }
 
             if (vatRate == null) {
-                exceptionMessage(product, "VAT");
+                exceptionMessage("VAT");
             }
 
             if (discount < 0) {
-                exceptionMessage(product, "Discount");
+                exceptionMessage("Discount");
+            }
+
+            if (barcode < 0 || barcode > MAX_BARCODE) {
+                exceptionMessage("Barcode");
             }
         }
 
         /**
          * Support method used to throw exceptions when validating product.
-         * Discount cannot be "missing", therefore it has its own message.
+         * Discount and barcode cannot be "missing", therefore they have their own message.
          */
-        private void exceptionMessage(Product product, String message) {
-            if (message.equals("Discount")) {
-                throw new IllegalArgumentException(String.format(message + " invalid in %s", product.productName));
+        private void exceptionMessage(String message) {
+            if (message.equals("Discount") || message.equals("Barcode")) {
+                throw new IllegalArgumentException(String.format(message + " invalid in %s", productName));
             } else {
-                throw new IllegalArgumentException(String.format(message + " missing or invalid in %s", product.productName));
+                throw new IllegalArgumentException(String.format(message + " missing or invalid in %s", productName));
             }
         }
     }
@@ -0,0 +1,623 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Struct-of-arrays storage behind Product.
+ * Every product in a store has a dense int id (its SKU id), which is the index into a set of parallel primitive
+ * arrays holding price, VAT, amount, discount and expiration date. A Product object is only a view holding
+ * its names, its store and its SKU id.
+ * <p>
+ * The prices a checkout needs are computed when they can change instead of every time they are read:
+ * the price with VAT when a product is added, since price and VAT never change, and the price with VAT and
+ * discount whenever the discount is set. The discount and the discounted price are packed into one long that
+ * is written in a single volatile store, so a reader never sees a new discount with an old discounted price.
+ * <p>
+ * Removing a product leaves an empty slot behind (views[skuId] == null) and puts its SKU id on a free list, from
+ * which the next product added takes its id, so a store with products added and removed all day keeps as many
+ * slots as it ever held products at once. A SKU id is therefore only valid while its product is in the store.
+ * <p>
+ * Products are found by brand and product name through an open-addressing hash table of SKU ids.
+ * The names are always compared, so two products whose names hash to the same value never get mixed up.
+ * Products with a barcode are also found through a second table of the same kind, keyed by barcode.
+ * Neither lookup allocates anything.
+ * <p>
+ * Amounts may be changed from any number of threads at once: every change of an amount is an atomic operation
+ * on its array element, and reserving stock is a compare-and-set that fails instead of going below zero.
+ * Adding and removing products is not thread-safe and must not happen while other threads change amounts.
+ * <p>
+ * The store keeps a live set of the SKU ids that are low in stock, i.e. whose amount is below their low-stock
+ * threshold. The set is only touched when a change of amount crosses the threshold, so listing the products that
+ * are low in stock costs as much as the size of the list, not the size of the store.
+ * Likewise, products with an expiration date are kept in an ExpirationIndex, which is created the first time an
+ * expiration date is stored.
+ * <p>
+ * While an InventoryChangePublisher is attached, every change of an amount, discount or expiration date also sets
+ * a bit in the pending-change mask of its SKU id. Only the first change since the last delivery hands the SKU id
+ * to the publisher, which later reads the latest values back through takePendingChange(skuId).
+ */
+class ProductStore {
+
+    static final long NO_EXPIRATION_DATE = Long.MIN_VALUE;
+    static final long NO_BARCODE = 0;
+    private static final VAT[] VAT_RATES = VAT.values();
+    private static final VarHandle AMOUNT = MethodHandles.arrayElementVarHandle(int[].class);
+    private static final VarHandle PENDING_CHANGES = MethodHandles.arrayElementVarHandle(int[].class);
+    private static final VarHandle DISCOUNTED_PRICE = MethodHandles.arrayElementVarHandle(long[].class);
+
+    /**
+     * Slots in the name and barcode indexes. EMPTY has never held a SKU id, REMOVED has held one that was later removed.
+     */
+    private static final int EMPTY = -1;
+    private static final int REMOVED = -2;
+
+    private int size;
+    private int numberOfProducts;
+    /**
+     * SKU ids of removed products, to be handed out again before size grows.
+     */
+    private int[] freeSkuIds = new int[0];
+    private int numberOfFreeSkuIds;
+
+    private Product[] views;
+    private int[] prices;
+    private int[] pricesWithVat;
+    private byte[] vatOrdinals;
+    private int[] amounts;
+    /**
+     * The discount in the high 32 bits, the price with VAT and discount in the low 32 bits.
+     */
+    private long[] discountedPrices;
+    private long[] expirationEpochDays;
+    private long[] barcodes;
+    private int[] lowStockThresholds;
+    private ExpirationIndex expirationIndex;
+
+    /**
+     * The SKU ids low in stock are kept densely in lowStockSkuIds[0, numberOfProductsLowInStock).
+     * lowStockPositions[skuId] is the position of skuId in that range, or -1 if it is not low in stock.
+     * Both are guarded by lowStockLock.
+     */
+    private final Object lowStockLock = new Object();
+    private int[] lowStockSkuIds;
+    private int[] lowStockPositions;
+    private int numberOfProductsLowInStock;
+
+    private int[] nameIndex;
+    private int usedIndexSlots;
+
+    /**
+     * Created when the first product with a barcode is added.
+     */
+    private int[] barcodeIndex;
+    private int usedBarcodeIndexSlots;
+
+    /**
+     * Both are null while no InventoryChangePublisher is attached. pendingChanges is replaced, and read by the
+     * publisher, while holding pendingChangesLock.
+     */
+    private volatile InventoryChangePublisher changePublisher;
+    private final Object pendingChangesLock = new Object();
+    private int[] pendingChanges;
+
+    ProductStore(int initialCapacity) {
+        int capacity = Math.max(1, initialCapacity);
+        views = new Product[capacity];
+        prices = new int[capacity];
+        pricesWithVat = new int[capacity];
+        vatOrdinals = new byte[capacity];
+        amounts = new int[capacity];
+        discountedPrices = new long[capacity];
+        expirationEpochDays = new long[capacity];
+        barcodes = new long[capacity];
+        lowStockThresholds = new int[capacity];
+        lowStockSkuIds = new int[capacity];
+        lowStockPositions = new int[capacity];
+        nameIndex = new int[indexCapacityFor(capacity)];
+        Arrays.fill(nameIndex, EMPTY);
+    }
+
+    /**
+     * Adds a new product to the store. The names of the product are read from [view].
+     *
+     * @return the SKU id of the new product.
+     */
+    int add(Product view, int priceInMinorUnits, VAT vatRate, int amount, int discount, long barcode,
+            long expirationEpochDay) {
+        if ((usedIndexSlots + 1) * 2 > nameIndex.length) {
+            rebuildNameIndex(indexCapacityFor(numberOfProducts + 1));
+        }
+        if (barcode != NO_BARCODE && (barcodeIndex == null || (usedBarcodeIndexSlots + 1) * 2 > barcodeIndex.length)) {
+            rebuildBarcodeIndex(indexCapacityFor(numberOfProducts + 1));
+        }
+        int skuId;
+        if (numberOfFreeSkuIds > 0) {
+            skuId = freeSkuIds[--numberOfFreeSkuIds];
+        } else {
+            ensureCapacity(size + 1);
+            skuId = size++;
+        }
+        views[skuId] = view;
+        prices[skuId] = priceInMinorUnits;
+        pricesWithVat[skuId] = priceWithVat(priceInMinorUnits, vatRate);
+        vatOrdinals[skuId] = (byte) vatRate.ordinal();
+        amounts[skuId] = amount;
+        discountedPrices[skuId] = packDiscountedPrice(discount, pricesWithVat[skuId]);
+        expirationEpochDays[skuId] = expirationEpochDay;
+        barcodes[skuId] = barcode;
+        lowStockThresholds[skuId] = InventoryBalance.PRODUCT_LOW_IN_STOCK;
+        lowStockPositions[skuId] = -1;
+        insertIntoNameIndex(skuId, hash(view.getBrandName(), view.getProductName()));
+        if (barcode != NO_BARCODE) {
+            insertIntoBarcodeIndex(skuId, barcode);
+        }
+        numberOfProducts++;
+        updateLowStock(skuId);
+        if (expirationEpochDay != NO_EXPIRATION_DATE) {
+            expirationIndex().add(expirationEpochDay, skuId);
+        }
+        return skuId;
+    }
+
+    /**
+     * Removes the product with [skuId] from the store. The slot is left empty until its SKU id is handed out again.
+     */
+    void remove(int skuId) {
+        Product view = views[skuId];
+        int slot = findIndexSlot(view.getBrandName(), view.getProductName());
+        nameIndex[slot] = REMOVED;
+        if (barcodes[skuId] != NO_BARCODE) {
+            barcodeIndex[findBarcodeIndexSlot(barcodes[skuId])] = REMOVED;
+        }
+        views[skuId] = null;
+        numberOfProducts--;
+        updateLowStock(skuId);
+        if (expirationEpochDays[skuId] != NO_EXPIRATION_DATE) {
+            expirationIndex().remove(expirationEpochDays[skuId], skuId);
+        }
+        synchronized (pendingChangesLock) {
+            if (pendingChanges != null) {
+                pendingChanges[skuId] = 0;
+            }
+        }
+        if (numberOfFreeSkuIds == freeSkuIds.length) {
+            freeSkuIds = Arrays.copyOf(freeSkuIds, Math.max(8, numberOfFreeSkuIds * 2));
+        }
+        freeSkuIds[numberOfFreeSkuIds++] = skuId;
+    }
+
+    /**
+     * Finds a product by its names without allocating anything.
+     *
+     * @return the SKU id of the product, or -1 if it is not in the store.
+     */
+    int indexOf(String brandName, String productName) {
+        int slot = findIndexSlot(brandName, productName);
+        return slot < 0 ? -1 : nameIndex[slot];
+    }
+
+    /**
+     * Finds a product by its barcode without allocating anything.
+     *
+     * @return the SKU id of the product, or -1 if no product in the store has the barcode.
+     */
+    int indexOfBarcode(long barcode) {
+        if (barcodeIndex == null || barcode == NO_BARCODE) {
+            return -1;
+        }
+        int slot = findBarcodeIndexSlot(barcode);
+        return slot < 0 ? -1 : barcodeIndex[slot];
+    }
+
+    int size() {
+        return size;
+    }
+
+    int numberOfProducts() {
+        return numberOfProducts;
+    }
+
+    Product view(int skuId) {
+        return views[skuId];
+    }
+
+    /**
+     * @return every Product in the store, in SKU id order.
+     */
+    List<Product> views() {
+        List<Product> result = new ArrayList<>(numberOfProducts);
+        for (int skuId = 0; skuId < size; skuId++) {
+            if (views[skuId] != null) {
+                result.add(views[skuId]);
+            }
+        }
+        return result;
+    }
+
+    int price(int skuId) {
+        return prices[skuId];
+    }
+
+    int priceWithVat(int skuId) {
+        return pricesWithVat[skuId];
+    }
+
+    VAT vat(int skuId) {
+        return VAT_RATES[vatOrdinals[skuId]];
+    }
+
+    int amount(int skuId) {
+        return (int) AMOUNT.getVolatile(amounts, skuId);
+    }
+
+    void setAmount(int skuId, int amount) {
+        int previous = (int) AMOUNT.getAndSet(amounts, skuId, amount);
+        amountChanged(skuId, previous, amount);
+        recordChange(skuId, InventoryChange.AMOUNT_CHANGED);
+    }
+
+    /**
+     * Atomically takes [units] from the amount of [skuId], unless fewer than [units] are left.
+     *
+     * @return true if the units were reserved, false if the amount was left unchanged.
+     */
+    boolean tryReserve(int skuId, int units) {
+        int[] amounts = this.amounts;
+        int current = (int) AMOUNT.getVolatile(amounts, skuId);
+        while (current >= units) {
+            int witness = (int) AMOUNT.compareAndExchange(amounts, skuId, current, current - units);
+            if (witness == current) {
+                amountChanged(skuId, current, current - units);
+                recordChange(skuId, InventoryChange.AMOUNT_CHANGED);
+                return true;
+            }
+            current = witness;
+        }
+        return false;
+    }
+
+    /**
+     * Atomically gives [units] back to the amount of [skuId].
+     *
+     * @throws IllegalArgumentException if the amount would overflow.
+     */
+    void release(int skuId, int units) {
+        int[] amounts = this.amounts;
+        int current = (int) AMOUNT.getVolatile(amounts, skuId);
+        while (true) {
+            int updated = current + units;
+            if (updated < 0) {
+                throw new IllegalArgumentException(String.format("%d is not a valid amount.", updated));
+            }
+            int witness = (int) AMOUNT.compareAndExchange(amounts, skuId, current, updated);
+            if (witness == current) {
+                amountChanged(skuId, current, updated);
+                recordChange(skuId, InventoryChange.AMOUNT_CHANGED);
+                return;
+            }
+            current = witness;
+        }
+    }
+
+    int discount(int skuId) {
+        return (int) ((long) DISCOUNTED_PRICE.getVolatile(discountedPrices, skuId) >>> 32);
+    }
+
+    int priceWithVatAndDiscount(int skuId) {
+        return (int) (long) DISCOUNTED_PRICE.getVolatile(discountedPrices, skuId);
+    }
+
+    /**
+     * @return the price with VAT minus the price with VAT and discount, read from a single discount.
+     */
+    int discountAmount(int skuId) {
+        return pricesWithVat[skuId] - priceWithVatAndDiscount(skuId);
+    }
+
+    /**
+     * Sets the discount and the price with VAT and discount it results in, in one atomic write.
+     */
+    void setDiscount(int skuId, int discount) {
+        DISCOUNTED_PRICE.setVolatile(discountedPrices, skuId, packDiscountedPrice(discount, pricesWithVat[skuId]));
+        recordChange(skuId, InventoryChange.DISCOUNT_CHANGED);
+    }
+
+    long barcode(int skuId) {
+        return barcodes[skuId];
+    }
+
+    long expirationEpochDay(int skuId) {
+        return expirationEpochDays[skuId];
+    }
+
+    void setExpirationEpochDay(int skuId, long expirationEpochDay) {
+        long previousEpochDay = expirationEpochDays[skuId];
+        expirationEpochDays[skuId] = expirationEpochDay;
+        if (previousEpochDay != NO_EXPIRATION_DATE) {
+            expirationIndex().remove(previousEpochDay, skuId);
+        }
+        if (expirationEpochDay != NO_EXPIRATION_DATE) {
+            expirationIndex().add(expirationEpochDay, skuId);
+        }
+        recordChange(skuId, InventoryChange.EXPIRATION_DATE_CHANGED);
+    }
+
+    int lowStockThreshold(int skuId) {
+        return lowStockThresholds[skuId];
+    }
+
+    void setLowStockThreshold(int skuId, int threshold) {
+        synchronized (lowStockLock) {
+            lowStockThresholds[skuId] = threshold;
+        }
+        updateLowStock(skuId);
+    }
+
+    /**
+     * @return every Product that is currently low in stock, read from the low-stock set.
+     */
+    ArrayList<Product> productsLowInStock() {
+        synchronized (lowStockLock) {
+            ArrayList<Product> result = new ArrayList<>(numberOfProductsLowInStock);
+            for (int i = 0; i < numberOfProductsLowInStock; i++) {
+                result.add(views[lowStockSkuIds[i]]);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Attaches [publisher] to the store, or detaches the current one if [publisher] is null.
+     * Attaching starts from an empty pending-change mask.
+     */
+    void setChangePublisher(InventoryChangePublisher publisher) {
+        synchronized (pendingChangesLock) {
+            pendingChanges = publisher == null ? null : new int[views.length];
+            changePublisher = publisher;
+        }
+    }
+
+    /**
+     * Clears the pending-change mask of [skuId] and returns its changes together with the latest values.
+     *
+     * @return the pending changes of [skuId], or null if there are none or the product has been removed.
+     */
+    InventoryChange takePendingChange(int skuId) {
+        synchronized (pendingChangesLock) {
+            if (pendingChanges == null) {
+                return null;
+            }
+            int changes = (int) PENDING_CHANGES.getAndSet(pendingChanges, skuId, 0);
+            Product view = views[skuId];
+            if (changes == 0 || view == null) {
+                return null;
+            }
+            return new InventoryChange(view, changes, amount(skuId), discount(skuId), expirationEpochDays[skuId]);
+        }
+    }
+
+    /**
+     * Marks [change] as pending for [skuId]. The SKU id is only handed to the publisher if nothing was pending for it,
+     * so the publisher sees each SKU id once per delivery no matter how often it changes.
+     */
+    private void recordChange(int skuId, int change) {
+        InventoryChangePublisher publisher = changePublisher;
+        if (publisher == null) {
+            return;
+        }
+        int[] pendingChanges = this.pendingChanges;
+        if (pendingChanges != null && (int) PENDING_CHANGES.getAndBitwiseOr(pendingChanges, skuId, change) == 0) {
+            publisher.enqueue(skuId);
+        }
+    }
+
+    /**
+     * Called after every change of an amount. The low-stock set is only updated when the change crosses the
+     * low-stock threshold of the product.
+     */
+    private void amountChanged(int skuId, int previousAmount, int newAmount) {
+        int threshold = lowStockThresholds[skuId];
+        if ((previousAmount < threshold) != (newAmount < threshold)) {
+            updateLowStock(skuId);
+        }
+    }
+
+    /**
+     * Adds [skuId] to, or removes it from, the low-stock set depending on its current amount.
+     * The amount is read again while holding the lock, so when two threads cross the threshold in opposite
+     * directions at the same time, the one updating the set last always leaves it matching the latest amount.
+     */
+    private void updateLowStock(int skuId) {
+        synchronized (lowStockLock) {
+            boolean lowInStock = views[skuId] != null && amount(skuId) < lowStockThresholds[skuId];
+            int position = lowStockPositions[skuId];
+            if (lowInStock && position < 0) {
+                lowStockSkuIds[numberOfProductsLowInStock] = skuId;
+                lowStockPositions[skuId] = numberOfProductsLowInStock++;
+            } else if (!lowInStock && position >= 0) {
+                int lastSkuId = lowStockSkuIds[--numberOfProductsLowInStock];
+                lowStockSkuIds[position] = lastSkuId;
+                lowStockPositions[lastSkuId] = position;
+                lowStockPositions[skuId] = -1;
+            }
+        }
+    }
+
+    /**
+     * @return every Product in the expiration index that expires on or before [epochDay], earliest first.
+     */
+    ArrayList<Product> productsExpiringOnOrBefore(long epochDay) {
+        if (expirationIndex == null) {
+            return new ArrayList<>();
+        }
+        int[] skuIds = expirationIndex.expiringOnOrBefore(epochDay);
+        ArrayList<Product> result = new ArrayList<>(skuIds.length);
+        for (int skuId : skuIds) {
+            result.add(views[skuId]);
+        }
+        return result;
+    }
+
+    /**
+     * Drops every product that expired before [epochDay] from the expiration index.
+     * The products stay in the store and keep their expiration dates.
+     *
+     * @return the number of products dropped from the index.
+     */
+    int dropExpirationsBefore(long epochDay) {
+        return expirationIndex == null ? 0 : expirationIndex.dropBefore(epochDay);
+    }
+
+    private ExpirationIndex expirationIndex() {
+        if (expirationIndex == null) {
+            expirationIndex = new ExpirationIndex();
+        }
+        return expirationIndex;
+    }
+
+    private int findIndexSlot(String brandName, String productName) {
+        int mask = nameIndex.length - 1;
+        int slot = hash(brandName, productName) & mask;
+        while (true) {
+            int skuId = nameIndex[slot];
+            if (skuId == EMPTY) {
+                return -1;
+            }
+            if (skuId != REMOVED) {
+                Product view = views[skuId];
+                if (view.getBrandName().equals(brandName) && view.getProductName().equals(productName)) {
+                    return slot;
+                }
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private void insertIntoNameIndex(int skuId, int hash) {
+        int mask = nameIndex.length - 1;
+        int slot = hash & mask;
+        while (nameIndex[slot] >= 0) {
+            slot = (slot + 1) & mask;
+        }
+        if (nameIndex[slot] == EMPTY) {
+            usedIndexSlots++;
+        }
+        nameIndex[slot] = skuId;
+    }
+
+    /**
+     * Rebuilds the name index from the views, which also drops every REMOVED slot.
+     */
+    private void rebuildNameIndex(int capacity) {
+        nameIndex = new int[capacity];
+        Arrays.fill(nameIndex, EMPTY);
+        usedIndexSlots = 0;
+        int mask = capacity - 1;
+        for (int skuId = 0; skuId < size; skuId++) {
+            Product view = views[skuId];
+            if (view == null) {
+                continue;
+            }
+            int slot = hash(view.getBrandName(), view.getProductName()) & mask;
+            while (nameIndex[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            nameIndex[slot] = skuId;
+            usedIndexSlots++;
+        }
+    }
+
+    private int findBarcodeIndexSlot(long barcode) {
+        int mask = barcodeIndex.length - 1;
+        int slot = hash(barcode) & mask;
+        while (true) {
+            int skuId = barcodeIndex[slot];
+            if (skuId == EMPTY) {
+                return -1;
+            }
+            if (skuId != REMOVED && barcodes[skuId] == barcode) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private void insertIntoBarcodeIndex(int skuId, long barcode) {
+        int mask = barcodeIndex.length - 1;
+        int slot = hash(barcode) & mask;
+        while (barcodeIndex[slot] >= 0) {
+            slot = (slot + 1) & mask;
+        }
+        if (barcodeIndex[slot] == EMPTY) {
+            usedBarcodeIndexSlots++;
+        }
+        barcodeIndex[slot] = skuId;
+    }
+
+    /**
+     * Rebuilds the barcode index from the barcode column, which also drops every REMOVED slot.
+     */
+    private void rebuildBarcodeIndex(int capacity) {
+        barcodeIndex = new int[capacity];
+        Arrays.fill(barcodeIndex, EMPTY);
+        usedBarcodeIndexSlots = 0;
+        for (int skuId = 0; skuId < size; skuId++) {
+            if (views[skuId] != null && barcodes[skuId] != NO_BARCODE) {
+                insertIntoBarcodeIndex(skuId, barcodes[skuId]);
+            }
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= views.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, views.length * 2);
+        views = Arrays.copyOf(views, newCapacity);
+        prices = Arrays.copyOf(prices, newCapacity);
+        pricesWithVat = Arrays.copyOf(pricesWithVat, newCapacity);
+        vatOrdinals = Arrays.copyOf(vatOrdinals, newCapacity);
+        amounts = Arrays.copyOf(amounts, newCapacity);
+        discountedPrices = Arrays.copyOf(discountedPrices, newCapacity);
+        expirationEpochDays = Arrays.copyOf(expirationEpochDays, newCapacity);
+        barcodes = Arrays.copyOf(barcodes, newCapacity);
+        lowStockThresholds = Arrays.copyOf(lowStockThresholds, newCapacity);
+        synchronized (lowStockLock) {
+            lowStockSkuIds = Arrays.copyOf(lowStockSkuIds, newCapacity);
+            lowStockPositions = Arrays.copyOf(lowStockPositions, newCapacity);
+        }
+        synchronized (pendingChangesLock) {
+            if (pendingChanges != null) {
+                pendingChanges = Arrays.copyOf(pendingChanges, newCapacity);
+            }
+        }
+    }
+
+    /**
+     * @return a power of two with room for [numberOfProducts] at a load factor of at most 0.5.
+     */
+    private static int indexCapacityFor(int numberOfProducts) {
+        return Integer.highestOneBit(Math.max(2, numberOfProducts) * 2 - 1) << 1;
+    }
+
+    static int priceWithVat(int priceInMinorUnits, VAT vatRate) {
+        return priceInMinorUnits * (vatRate.value + 100) / 100;
+    }
+
+    static long packDiscountedPrice(int discount, int priceWithVat) {
+        int priceWithVatAndDiscount = priceWithVat * (100 - discount) / 100;
+        return ((long) discount << 32) | (priceWithVatAndDiscount & 0xFFFFFFFFL);
+    }
+
+    private static int hash(String brandName, String productName) {
+        int hash = 31 * brandName.hashCode() + productName.hashCode();
+        return hash ^ (hash >>> 16);
+    }
+
+    private static int hash(long barcode) {
+        long hash = barcode * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32));
+    }
+}
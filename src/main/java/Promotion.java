@@ -0,0 +1,147 @@
+import java.util.Arrays;
+
+/**
+ * A promotion that lowers the price of a Purchase when the right products are scanned, on top of the flat
+ * discount of each Product. There are three kinds, each created with a static factory method:
+ * <ul>
+ *     <li>multi-buy: buy [buyQuantity] of a product and pay for [payQuantity], e.g. 3 for 2.</li>
+ *     <li>bundle: one of each of the products together cost [bundlePriceInMinorUnits].</li>
+ *     <li>threshold: [percentOff] percent off the products once at least [minimumQuantity] of them are scanned.</li>
+ * </ul>
+ * Prices are the products' prices with VAT and discount, in minor units. A multi-buy gives away units at the
+ * average price they were scanned at.
+ * A promotion is added to a Promotions catalog, which indexes it by each of its products.
+ */
+public class Promotion {
+
+    private enum Kind {
+        MULTI_BUY, BUNDLE, THRESHOLD
+    }
+
+    private final String name;
+    private final Kind kind;
+    private final Product[] products;
+    private final int buyQuantity;
+    private final int payQuantity;
+    private final int bundlePriceInMinorUnits;
+    private final int minimumQuantity;
+    private final int percentOff;
+    private int id = -1;
+
+    private Promotion(String name, Kind kind, Product[] products, int buyQuantity, int payQuantity,
+                      int bundlePriceInMinorUnits, int minimumQuantity, int percentOff) {
+        if (name == null || name.isBlank()) {
+            throw new IllegalArgumentException("Promotion name missing.");
+        }
+        if (products.length == 0 || Arrays.asList(products).contains(null)) {
+            throw new IllegalArgumentException(String.format("Products missing in %s", name));
+        }
+        for (int i = 0; i < products.length; i++) {
+            for (int j = i + 1; j < products.length; j++) {
+                if (products[i].equals(products[j])) {
+                    throw new IllegalArgumentException(String.format("%s appears twice in %s", products[i], name));
+                }
+            }
+        }
+        this.name = name;
+        this.kind = kind;
+        this.products = products;
+        this.buyQuantity = buyQuantity;
+        this.payQuantity = payQuantity;
+        this.bundlePriceInMinorUnits = bundlePriceInMinorUnits;
+        this.minimumQuantity = minimumQuantity;
+        this.percentOff = percentOff;
+    }
+
+    /**
+     * Buy [buyQuantity] of [product], pay for [payQuantity] of them.
+     */
+    public static Promotion multiBuy(String name, Product product, int buyQuantity, int payQuantity) {
+        if (payQuantity < 0 || buyQuantity <= payQuantity) {
+            throw new IllegalArgumentException(String.format("Quantities invalid in %s", name));
+        }
+        return new Promotion(name, Kind.MULTI_BUY, new Product[]{product}, buyQuantity, payQuantity, 0, 0, 0);
+    }
+
+    /**
+     * One of each of [products] together cost [bundlePriceInMinorUnits].
+     */
+    public static Promotion bundle(String name, int bundlePriceInMinorUnits, Product... products) {
+        if (bundlePriceInMinorUnits < 0 || products.length < 2) {
+            throw new IllegalArgumentException(String.format("Bundle price or products invalid in %s", name));
+        }
+        return new Promotion(name, Kind.BUNDLE, products.clone(), 0, 0, bundlePriceInMinorUnits, 0, 0);
+    }
+
+    /**
+     * [percentOff] percent off every unit of [products] once at least [minimumQuantity] units of them are scanned.
+     */
+    public static Promotion threshold(String name, int minimumQuantity, int percentOff, Product... products) {
+        if (minimumQuantity <= 0 || percentOff <= 0 || percentOff > 100) {
+            throw new IllegalArgumentException(String.format("Quantity or percent invalid in %s", name));
+        }
+        return new Promotion(name, Kind.THRESHOLD, products.clone(), 0, 0, 0, minimumQuantity, percentOff);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    /**
+     * @return the dense id given by the Promotions catalog the promotion was added to, or -1.
+     */
+    int getId() {
+        return id;
+    }
+
+    void setId(int id) {
+        this.id = id;
+    }
+
+    Product[] getProducts() {
+        return products;
+    }
+
+    /**
+     * @return the position of [product] among the products of the promotion.
+     */
+    int memberIndex(Product product) {
+        for (int i = 0; i < products.length; i++) {
+            if (products[i] == product || products[i].equals(product)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Computes the discount of the promotion from the state PromotionTracker keeps for it.
+     *
+     * @param quantities is the number of scanned units of each product of the promotion, none below 0.
+     * @param totalQuantity is the sum of [quantities].
+     * @param totalValue is the total price, at scan time, of the scanned units of the products of the promotion.
+     */
+    int discount(int[] quantities, int totalQuantity, long totalValue) {
+        return switch (kind) {
+            case MULTI_BUY -> totalQuantity == 0 ? 0
+                    : (int) ((long) (quantities[0] / buyQuantity * (buyQuantity - payQuantity)) * totalValue / totalQuantity);
+            case BUNDLE -> bundleDiscount(quantities);
+            case THRESHOLD -> totalQuantity >= minimumQuantity ? (int) (totalValue * percentOff / 100) : 0;
+        };
+    }
+
+    private int bundleDiscount(int[] quantities) {
+        int numberOfBundles = Integer.MAX_VALUE;
+        int bundleValue = 0;
+        for (int i = 0; i < products.length; i++) {
+            numberOfBundles = Math.min(numberOfBundles, quantities[i]);
+            bundleValue += products[i].getPriceWithVatAndDiscount();
+        }
+        return numberOfBundles * Math.max(0, bundleValue - bundlePriceInMinorUnits);
+    }
+}
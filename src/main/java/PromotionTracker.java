@@ -0,0 +1,196 @@
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Keeps the state of every promotion touched by one Purchase, and the sum of their discounts.
+ * <p>
+ * Each scan or removal of a product updates only the promotions that product is part of: the scanned quantity of
+ * the product within the promotion, the total quantity and the total value, after which the promotion's discount is
+ * computed again and the difference is added to the total. The cost of a scan therefore depends on the number of
+ * promotions of the scanned product, not on the size of the basket or the number of active promotions.
+ * <p>
+ * The state of a promotion is made on the first scan that touches it, from the lines of the purchase, so units
+ * scanned before the promotion was added to the catalog count as well.
+ */
+class PromotionTracker {
+
+    private final Promotions promotions;
+    private final PurchaseLines lines;
+    private State[] states;
+    private int totalDiscount;
+
+    /**
+     * @param lines the lines of the purchase, which already hold a scan or removal when scanned(product, quantity)
+     * is called for it.
+     */
+    PromotionTracker(Promotions promotions, PurchaseLines lines) {
+        this.promotions = promotions;
+        this.lines = lines;
+        this.states = new State[promotions.size()];
+    }
+
+    /**
+     * Updates the promotions of [product] after [quantity] units have been scanned, or removed if negative.
+     * Quantities and values never drop below 0.
+     */
+    void scanned(Product product, int quantity) {
+        for (Promotion promotion : promotions.forProduct(product)) {
+            int id = promotion.getId();
+            State state;
+            if (id < states.length && states[id] != null) {
+                state = states[id];
+                int member = promotion.memberIndex(product);
+                int change = Math.max(quantity, -state.quantities[member]);
+                state.quantities[member] += change;
+                state.totalQuantity += change;
+                state.totalValue = Math.max(0, state.totalValue + (long) change * product.getPriceWithVatAndDiscount());
+            } else {
+                state = seededState(promotion);
+            }
+            int discount = promotion.discount(state.quantities, state.totalQuantity, state.totalValue);
+            totalDiscount += discount - state.discount;
+            state.discount = discount;
+        }
+    }
+
+    int getTotalDiscount() {
+        return totalDiscount;
+    }
+
+    /**
+     * @return the number of promotions whose discount is currently above 0.
+     */
+    int numberOfAppliedPromotions() {
+        int applied = 0;
+        for (State state : states) {
+            if (state != null && state.discount > 0) {
+                applied++;
+            }
+        }
+        return applied;
+    }
+
+    /**
+     * Copies the promotions whose discount is above 0, in the order they were added to the catalog,
+     * and their discounts into [appliedPromotions] and [discounts].
+     */
+    void copyAppliedPromotions(Promotion[] appliedPromotions, int[] discounts) {
+        int applied = 0;
+        for (State state : states) {
+            if (state != null && state.discount > 0) {
+                appliedPromotions[applied] = state.promotion;
+                discounts[applied++] = state.discount;
+            }
+        }
+    }
+
+    /**
+     * @return the number of bytes writeTo(buffer) writes.
+     */
+    int serializedSize() {
+        int size = Integer.BYTES;
+        for (State state : states) {
+            if (state != null) {
+                size += 4 * Integer.BYTES + Long.BYTES + state.quantities.length * Integer.BYTES;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Writes the number of promotion states, then per state: promotion id, total quantity, total value, discount,
+     * number of products and the quantity of each product.
+     */
+    void writeTo(ByteBuffer buffer) {
+        int numberOfStates = 0;
+        for (State state : states) {
+            if (state != null) {
+                numberOfStates++;
+            }
+        }
+        buffer.putInt(numberOfStates);
+        for (State state : states) {
+            if (state != null) {
+                buffer.putInt(state.promotion.getId()).putInt(state.totalQuantity).putLong(state.totalValue)
+                        .putInt(state.discount).putInt(state.quantities.length);
+                for (int quantity : state.quantities) {
+                    buffer.putInt(quantity);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads back states written by writeTo(buffer), replacing the current ones.
+     *
+     * @throws IllegalArgumentException if a promotion is not in the catalog of the tracker.
+     */
+    void readFrom(ByteBuffer buffer) {
+        clear();
+        int numberOfStates = buffer.getInt();
+        for (int i = 0; i < numberOfStates; i++) {
+            int id = buffer.getInt();
+            Promotion promotion = promotions.get(id);
+            if (promotion == null) {
+                throw new IllegalArgumentException(String.format("Promotion %d is not in the catalog.", id));
+            }
+            State state = state(promotion);
+            state.totalQuantity = buffer.getInt();
+            state.totalValue = buffer.getLong();
+            state.discount = buffer.getInt();
+            int numberOfProducts = buffer.getInt();
+            if (numberOfProducts != state.quantities.length) {
+                throw new IllegalArgumentException(String.format("Promotion %d does not match the catalog.", id));
+            }
+            for (int product = 0; product < numberOfProducts; product++) {
+                state.quantities[product] = buffer.getInt();
+            }
+            totalDiscount += state.discount;
+        }
+    }
+
+    void clear() {
+        Arrays.fill(states, null);
+        totalDiscount = 0;
+    }
+
+    /**
+     * @return a new state of [promotion] with the quantities of its products in the lines, valued at their prices now.
+     */
+    private State seededState(Promotion promotion) {
+        State state = state(promotion);
+        Product[] products = promotion.getProducts();
+        for (int member = 0; member < products.length; member++) {
+            int quantity = lines.quantityOf(products[member]);
+            state.quantities[member] = quantity;
+            state.totalQuantity += quantity;
+            state.totalValue += (long) quantity * products[member].getPriceWithVatAndDiscount();
+        }
+        return state;
+    }
+
+    private State state(Promotion promotion) {
+        int id = promotion.getId();
+        if (id >= states.length) {
+            states = Arrays.copyOf(states, Math.max(id + 1, promotions.size()));
+        }
+        if (states[id] == null) {
+            states[id] = new State(promotion);
+        }
+        return states[id];
+    }
+
+    private static class State {
+
+        private final Promotion promotion;
+        private final int[] quantities;
+        private int totalQuantity;
+        private long totalValue;
+        private int discount;
+
+        private State(Promotion promotion) {
+            this.promotion = promotion;
+            this.quantities = new int[promotion.getProducts().length];
+        }
+    }
+}
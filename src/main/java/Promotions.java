@@ -0,0 +1,63 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Catalog of the active Promotions, shared by every Purchase created with it.
+ * Each promotion gets a dense id and is indexed by each of its products, so a scan only looks at the promotions
+ * of the scanned product, no matter how many promotions are active.
+ * The index is replaced, not changed, when a promotion is added, so looking promotions up during a scan takes no lock.
+ */
+public class Promotions {
+
+    private static final Promotion[] NO_PROMOTIONS = new Promotion[0];
+
+    private final List<Promotion> promotions = new ArrayList<>();
+    private volatile Map<Product, Promotion[]> promotionsByProduct = new HashMap<>();
+
+    /**
+     * Adds [promotion] to the catalog. Purchases already in progress take it into account from their next scan.
+     *
+     * @throws IllegalArgumentException if the promotion has already been added to a catalog.
+     */
+    public synchronized void add(Promotion promotion) throws IllegalArgumentException {
+        if (promotion.getId() >= 0) {
+            throw new IllegalArgumentException("Promotion already added to a catalog.");
+        }
+        promotion.setId(promotions.size());
+        promotions.add(promotion);
+        Map<Product, Promotion[]> updatedIndex = new HashMap<>(promotionsByProduct);
+        for (Product product : promotion.getProducts()) {
+            Promotion[] existing = updatedIndex.getOrDefault(product, NO_PROMOTIONS);
+            Promotion[] updated = Arrays.copyOf(existing, existing.length + 1);
+            updated[existing.length] = promotion;
+            updatedIndex.put(product, updated);
+        }
+        promotionsByProduct = updatedIndex;
+    }
+
+    public synchronized List<Promotion> getPromotions() {
+        return Collections.unmodifiableList(new ArrayList<>(promotions));
+    }
+
+    synchronized int size() {
+        return promotions.size();
+    }
+
+    /**
+     * @return the promotion with [id], or null if there is none.
+     */
+    synchronized Promotion get(int id) {
+        return id >= 0 && id < promotions.size() ? promotions.get(id) : null;
+    }
+
+    /**
+     * @return the promotions that [product] is part of; an empty array if there are none.
+     */
+    Promotion[] forProduct(Product product) {
+        return promotionsByProduct.getOrDefault(product, NO_PROMOTIONS);
+    }
+}
@@ -1,118 +1,175 @@
-import java.util.HashMap;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 
 public class Purchase {
 
-   private final Map<Product, Integer> items;
+    private static final byte SUSPENDED_PURCHASE_VERSION = 2;
+
+   private final PurchaseLines items;
     private int totalPriceExVAT;
     private int totalVAT;
     private int totalDiscount;
+    private final PromotionTracker promotionTracker;
 
     public Purchase(){
-        items = new HashMap<>();
+        items = new PurchaseLines();
         totalPriceExVAT = 0;
         totalVAT = 0;
         totalDiscount = 0;
+        promotionTracker = null;
+    }
+
+    /**
+     * Creates a purchase that applies the promotions in [promotions] as items are scanned and removed.
+     * The discounts of the promotions are part of the total discount.
+     * @param promotions the catalog of active promotions.
+     */
+    public Purchase(Promotions promotions){
+        items = new PurchaseLines();
+        totalPriceExVAT = 0;
+        totalVAT = 0;
+        totalDiscount = 0;
+        promotionTracker = new PromotionTracker(promotions, items);
     }
 
     /**
      * When an item is scanned it is added to the list of items. If the item already is in list of items
      * the amount is incremented by 1. decidePrice-method determines price of item
+     * The unit is reserved from the product's stock atomically, so several lanes can scan the same product at once.
      * @param item the item to be added to the list of items to be purchased.
      */
     public void scanItem(Product item){
-        if(item.getAmount() == 0){
+        scanItem(item, 1);
+    }
+
+    /**
+     * Scans [quantity] units of the same item at once, e.g. a pallet in a B2B sale.
+     * The units are reserved from the product's stock in one atomic step and the totals are updated once,
+     * so scanning 500 units costs as much as scanning one.
+     * @param item the item to be added to the list of items to be purchased.
+     * @param quantity the number of units to scan.
+     * @throws IllegalArgumentException if quantity is not positive or there are fewer than quantity units in store,
+     * in which case nothing is scanned.
+     */
+    public void scanItem(Product item, int quantity){
+        validateQuantity(quantity);
+        if(!item.tryReserve(quantity)){
             throw new IllegalArgumentException("There are no more of this product in store");
         }
-        if(items.containsKey(item)){
-            int currentAmount = items.get(item);
-            items.put(item, currentAmount + 1);
-            item.decrement();
+        addLine(item, quantity);
+    }
+
+    /**
+     * Scans every item in the map, with the map's value as the quantity of that item.
+     * Either every item is scanned or, if any of them cannot be reserved, none of them is.
+     * @param itemsToScan the items to scan mapped to the number of units of each.
+     * @throws IllegalArgumentException if a quantity is not positive or there are too few units in store of an item.
+     */
+    public void scanItems(Map<Product, Integer> itemsToScan){
+        for(int quantity : itemsToScan.values()){
+            validateQuantity(quantity);
         }
-        else{
-            items.put(item, 1);
-            item.decrement();
+        List<Product> reservedItems = new ArrayList<>(itemsToScan.size());
+        for(Map.Entry<Product, Integer> entry : itemsToScan.entrySet()){
+            if(!entry.getKey().tryReserve(entry.getValue())){
+                for(Product reservedItem : reservedItems){
+                    reservedItem.release(itemsToScan.get(reservedItem));
+                }
+                throw new IllegalArgumentException("There are no more of this product in store");
+            }
+            reservedItems.add(entry.getKey());
         }
-        if(item.hasDiscount()){
-            incrementTotalDiscount(item);
+        for(Map.Entry<Product, Integer> entry : itemsToScan.entrySet()){
+            addLine(entry.getKey(), entry.getValue());
         }
-        incrementTotalPriceExVat(item);
-        incrementTotalVat(item);
     }
 
     /**
-     * increments the total discount
-     * @param item the item that is added to the purchase
+     * Adds [quantity] units of an item whose stock has already been reserved to the list of items and the totals.
+     * The price, VAT and discount of one unit are read from the prices cached in the product's store
+     * and multiplied by the quantity. A product without discount has a discount amount of 0.
      */
-   private void incrementTotalDiscount(Product item){
-        totalDiscount += item.getDiscountAmount();
+    private void addLine(Product item, int quantity){
+        items.add(item, quantity);
+        totalDiscount += item.getDiscountAmount() * quantity;
+        totalPriceExVAT += item.getPriceInMinorUnits() * quantity;
+        totalVAT += item.getVatAmountOfPrice() * quantity;
+        if(promotionTracker != null){
+            promotionTracker.scanned(item, quantity);
+        }
     }
 
-
     /**
-     * increments the total amount of money that is added to the purchase due to the product's individual VAT
-     * @param item the item to be added to the purchase
+     * Removes one unit of an item from the list. If the item to be removed is not
+     * in the list of items, an exception is thrown. To remove several units at once, see removeScannedItem(item, quantity).
+     * @param item the item to be removed
      */
-    private void incrementTotalVat(Product item){
-        totalVAT += item.getVatAmountOfPrice();
+    public void removeScannedItem(Product item){
+        removeScannedItem(item, 1);
     }
 
     /**
-     *increments totalPrice price based on price of item to be purchased.
-     * @param item the item to decide price for.
+     * Removes [quantity] units of an item at once, giving them back to the product's stock in one step.
+     * @param item the item to be removed
+     * @param quantity the number of units to remove.
+     * @throws NoSuchElementException if the item has not been scanned.
+     * @throws IllegalArgumentException if quantity is not positive or more than the number of units scanned.
      */
-    private void incrementTotalPriceExVat(Product item){
-        totalPriceExVAT += item.getPriceInMinorUnits();
+    public void removeScannedItem(Product item, int quantity){
+        validateRemoval(item, quantity);
+        removeLine(item, quantity);
     }
 
     /**
-     * Removes an item from the list. Only one item can be removed at a time and if the item to be removed is not
-     * in the list of items, an exception is thrown.
-     * @param item the item to be removed
+     * Removes every item in the map, with the map's value as the quantity of that item.
+     * Every removal is validated first, so either all of them are removed or none of them is.
+     * @param itemsToRemove the items to remove mapped to the number of units of each.
+     * @throws NoSuchElementException if an item has not been scanned.
+     * @throws IllegalArgumentException if a quantity is not positive or more than the number of units scanned.
      */
-    public void removeScannedItem(Product item){
-        if(!items.containsKey(item)){
-            throw new NoSuchElementException("The item you are trying to remove has not been purchased");
-        }
-        if(items.get(item) > 1){
-            int currentAmount = items.get(item);
-            items.put(item, currentAmount - 1);
-            item.increment();
-        } else {
-            items.remove(item);
-            item.increment();
+    public void removeScannedItems(Map<Product, Integer> itemsToRemove){
+        for(Map.Entry<Product, Integer> entry : itemsToRemove.entrySet()){
+            validateRemoval(entry.getKey(), entry.getValue());
         }
-        if(item.hasDiscount()){
-            decrementTotalDiscount(item);
+        for(Map.Entry<Product, Integer> entry : itemsToRemove.entrySet()){
+            removeLine(entry.getKey(), entry.getValue());
         }
-        decrementPriceExVat(item);
-        decrementTotalVat(item);
-
     }
 
-    /**
-     * decrements the total discount
-     * @param item the item that is removed
-     */
-    private void decrementTotalDiscount(Product item){
-        totalDiscount -= item.getDiscountAmount();
+    private void validateRemoval(Product item, int quantity){
+        validateQuantity(quantity);
+        int scannedQuantity = items.quantityOf(item);
+        if(scannedQuantity == 0){
+            throw new NoSuchElementException("The item you are trying to remove has not been purchased");
+        }
+        if(quantity > scannedQuantity){
+            throw new IllegalArgumentException("You are trying to remove more items than have been purchased");
+        }
     }
 
     /**
-     * decrements the total amount of money that is removed to the purchase due to the product's individual VAT
-     * @param item the item to be added to the purchase
+     * Removes [quantity] units of a scanned item from the list of items and the totals,
+     * and gives them back to the product's stock.
      */
-    private void decrementTotalVat(Product item){
-        totalVAT -= item.getVatAmountOfPrice();
+    private void removeLine(Product item, int quantity){
+        items.subtract(item, quantity);
+        item.release(quantity);
+        totalDiscount -= item.getDiscountAmount() * quantity;
+        totalPriceExVAT -= item.getPriceInMinorUnits() * quantity;
+        totalVAT -= item.getVatAmountOfPrice() * quantity;
+        if(promotionTracker != null){
+            promotionTracker.scanned(item, -quantity);
+        }
     }
 
-    /**
-     *decrements totalPrice price based on price of item to be purchased.
-     * @param item the item to decide price for.
-     */
-    private void decrementPriceExVat(Product item){
-        totalPriceExVAT -= item.getPriceInMinorUnits();
+    private void validateQuantity(int quantity){
+        if(quantity <= 0){
+            throw new IllegalArgumentException(String.format("%d is not a valid quantity.", quantity));
+        }
     }
 
     public int getTotalPriceExVat(){
@@ -120,31 +177,161 @@ public class Purchase {
     }
 
     public int getTotalPrice(){
-        return (totalPriceExVAT + totalVAT) - totalDiscount;
+        return (totalPriceExVAT + totalVAT) - getTotalDiscount();
     }
 
+    /**
+     * @return a read-only view of the scanned items mapped to the number of units of each, in scan order.
+     */
     public Map<Product, Integer> getPurchasedItems(){
         return items;
     }
 
+    /**
+     * @return a copy of the scanned items that later scans and removals do not affect, used by Receipt.
+     */
+    PurchaseLines getLineSnapshot(){
+        return items.snapshot();
+    }
+
 
     public int getTotalVAT(){
         return totalVAT;
     }
 
+    /**
+     * @return the discount of the products plus the discount of every applied promotion.
+     */
     public int getTotalDiscount(){
-        return totalDiscount;
+        return promotionTracker == null ? totalDiscount : totalDiscount + promotionTracker.getTotalDiscount();
     }
 
-    public void cancelPurchase(){
-        for(Product product : items.keySet()){
-            int amountOfProductPurchased = items.get(product);
-            int currentAmount = product.getAmount();
-            product.setAmount(currentAmount + amountOfProductPurchased);
+    /**
+     * @return the discount of the applied promotions alone.
+     */
+    public int getPromotionDiscount(){
+        return promotionTracker == null ? 0 : promotionTracker.getTotalDiscount();
+    }
+
+    PromotionTracker getPromotionTracker(){
+        return promotionTracker;
+    }
+
+    /**
+     * Serializes the purchase into a blob for ParkedPurchases. The purchase itself is not changed; once the blob is
+     * stored, clearWithoutReleasing() hands the reserved stock over to it.
+     * Layout (big-endian): version (byte), totalPriceExVAT, totalVAT, totalDiscount, numberOfLines (int),
+     * then per line the brand and product name (length as int, then UTF-8) and the quantity (int), then the state of
+     * the promotions, see PromotionTracker. Lines refer to products by name rather than SKU id, since SKU ids change
+     * when an inventory is saved and loaded again.
+     * @param inventory the store every scanned product must be in.
+     * @throws IllegalArgumentException if a scanned product is not in [inventory].
+     */
+    byte[] suspend(ProductStore inventory){
+        byte[][] names = new byte[2 * items.numberOfLines()][];
+        int size = 1 + 4 * Integer.BYTES + (promotionTracker == null ? Integer.BYTES : promotionTracker.serializedSize());
+        for(int line = 0; line < items.numberOfLines(); line++){
+            Product product = items.product(line);
+            if(product.getStore() != inventory){
+                throw new IllegalArgumentException(String.format("%s is not in inventory.", product));
+            }
+            names[2 * line] = product.getBrandName().getBytes(StandardCharsets.UTF_8);
+            names[2 * line + 1] = product.getProductName().getBytes(StandardCharsets.UTF_8);
+            size += 3 * Integer.BYTES + names[2 * line].length + names[2 * line + 1].length;
+        }
+        ByteBuffer blob = ByteBuffer.allocate(size);
+        blob.put(SUSPENDED_PURCHASE_VERSION);
+        blob.putInt(totalPriceExVAT).putInt(totalVAT).putInt(totalDiscount).putInt(items.numberOfLines());
+        for(int line = 0; line < items.numberOfLines(); line++){
+            blob.putInt(names[2 * line].length).put(names[2 * line]);
+            blob.putInt(names[2 * line + 1].length).put(names[2 * line + 1]);
+            blob.putInt(items.quantity(line));
+        }
+        if(promotionTracker == null){
+            blob.putInt(0);
+        } else {
+            promotionTracker.writeTo(blob);
+        }
+        return blob.array();
+    }
+
+    /**
+     * Empties the purchase without giving its reserved stock back, which then belongs to a suspended blob.
+     */
+    void clearWithoutReleasing(){
+        items.removeAll();
+        if(promotionTracker != null){
+            promotionTracker.clear();
         }
-        items.clear();
         totalDiscount = 0;
         totalVAT = 0;
         totalPriceExVAT = 0;
     }
+
+    /**
+     * Recreates a purchase from a blob made by suspend(inventory). Lines, totals and promotion states are read back
+     * as they were, so no price is computed again and no stock is reserved again.
+     * @param promotions the catalog the purchase was created with, or null if it had none.
+     * @throws IllegalArgumentException if the blob is not a suspended purchase, or refers to a product no longer in
+     * [inventory] or a promotion not in [promotions].
+     */
+    static Purchase resume(byte[] blob, ProductStore inventory, Promotions promotions){
+        ByteBuffer buffer = ByteBuffer.wrap(blob);
+        if(blob.length < 1 + 4 * Integer.BYTES || buffer.get() != SUSPENDED_PURCHASE_VERSION){
+            throw new IllegalArgumentException("Not a suspended purchase.");
+        }
+        Purchase purchase = promotions == null ? new Purchase() : new Purchase(promotions);
+        purchase.totalPriceExVAT = buffer.getInt();
+        purchase.totalVAT = buffer.getInt();
+        purchase.totalDiscount = buffer.getInt();
+        int numberOfLines = buffer.getInt();
+        for(int line = 0; line < numberOfLines; line++){
+            String brandName = getString(buffer);
+            String productName = getString(buffer);
+            int skuId = inventory.indexOf(brandName, productName);
+            if(skuId < 0){
+                throw new IllegalArgumentException(String.format("%s %s is no longer in inventory.", brandName, productName));
+            }
+            purchase.items.add(inventory.view(skuId), buffer.getInt());
+        }
+        if(purchase.promotionTracker != null){
+            purchase.promotionTracker.readFrom(buffer);
+        } else if(buffer.getInt() != 0){
+            throw new IllegalArgumentException("Suspended purchase has promotions, but no catalog was given.");
+        }
+        return purchase;
+    }
+
+    /**
+     * Reserves the stock of every line again, for a purchase resumed from a blob whose reservations were lost,
+     * e.g. with a restart of the till. Either every line is reserved or, if any of them cannot be, none of them is.
+     * @throws IllegalArgumentException if there are too few units in store of a product.
+     */
+    void reserveAgain(){
+        for(int line = 0; line < items.numberOfLines(); line++){
+            if(!items.product(line).tryReserve(items.quantity(line))){
+                for(int reserved = 0; reserved < line; reserved++){
+                    items.product(reserved).release(items.quantity(reserved));
+                }
+                throw new IllegalArgumentException("There are no more of this product in store");
+            }
+        }
+    }
+
+    private static String getString(ByteBuffer buffer){
+        int length = buffer.getInt();
+        if(length < 0 || length > buffer.remaining()){
+            throw new IllegalArgumentException("Not a suspended purchase.");
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public void cancelPurchase(){
+        for(int line = 0; line < items.numberOfLines(); line++){
+            items.product(line).release(items.quantity(line));
+        }
+        clearWithoutReleasing();
+    }
 }
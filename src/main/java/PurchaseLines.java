@@ -0,0 +1,194 @@
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * The lines of a Purchase: which products have been scanned, and how many units of each.
+ * <p>
+ * Lines are kept densely in scan order in two parallel arrays, one of products and one of primitive quantities,
+ * and are found through an open-addressing hash table of line numbers. Scanning a product that already has a line
+ * only adds to an int, so a lane scanning the same item over and over allocates nothing.
+ * <p>
+ * To the outside the lines are a read-only Map from product to quantity, iterated in scan order.
+ * snapshot() copies the lines into a new PurchaseLines that is never changed again, which is what a Receipt holds.
+ */
+class PurchaseLines extends AbstractMap<Product, Integer> {
+
+    private static final int EMPTY = -1;
+
+    private Product[] products;
+    private int[] quantities;
+    private int numberOfLines;
+    private int[] index;
+
+    PurchaseLines() {
+        products = new Product[8];
+        quantities = new int[8];
+        index = new int[16];
+        Arrays.fill(index, EMPTY);
+    }
+
+    private PurchaseLines(Product[] products, int[] quantities, int numberOfLines, int[] index) {
+        this.products = products;
+        this.quantities = quantities;
+        this.numberOfLines = numberOfLines;
+        this.index = index;
+    }
+
+    /**
+     * Adds [quantity] units of [product], to its existing line if it has one, or to a new last line otherwise.
+     */
+    void add(Product product, int quantity) {
+        int slot = findSlot(product);
+        int line = index[slot];
+        if (line != EMPTY) {
+            quantities[line] += quantity;
+            return;
+        }
+        if (numberOfLines == products.length) {
+            products = Arrays.copyOf(products, numberOfLines * 2);
+            quantities = Arrays.copyOf(quantities, numberOfLines * 2);
+        }
+        products[numberOfLines] = product;
+        quantities[numberOfLines] = quantity;
+        index[slot] = numberOfLines++;
+        if (numberOfLines * 2 > index.length) {
+            rebuildIndex(index.length * 2);
+        }
+    }
+
+    /**
+     * Takes [quantity] units of [product] off its line. A line left with no units is removed, and the lines after it
+     * keep their order.
+     */
+    void subtract(Product product, int quantity) {
+        int line = index[findSlot(product)];
+        quantities[line] -= quantity;
+        if (quantities[line] == 0) {
+            System.arraycopy(products, line + 1, products, line, numberOfLines - line - 1);
+            System.arraycopy(quantities, line + 1, quantities, line, numberOfLines - line - 1);
+            products[--numberOfLines] = null;
+            rebuildIndex(index.length);
+        }
+    }
+
+    /**
+     * @return the number of units of [product], or 0 if it has no line.
+     */
+    int quantityOf(Product product) {
+        int line = index[findSlot(product)];
+        return line == EMPTY ? 0 : quantities[line];
+    }
+
+    int numberOfLines() {
+        return numberOfLines;
+    }
+
+    Product product(int line) {
+        return products[line];
+    }
+
+    int quantity(int line) {
+        return quantities[line];
+    }
+
+    void removeAll() {
+        Arrays.fill(products, 0, numberOfLines, null);
+        numberOfLines = 0;
+        Arrays.fill(index, EMPTY);
+    }
+
+    /**
+     * @return a copy of the lines, which is not affected by later changes to these lines.
+     */
+    PurchaseLines snapshot() {
+        return new PurchaseLines(Arrays.copyOf(products, Math.max(1, numberOfLines)),
+                Arrays.copyOf(quantities, Math.max(1, numberOfLines)), numberOfLines, index.clone());
+    }
+
+    @Override
+    public int size() {
+        return numberOfLines;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof Product product && index[findSlot(product)] != EMPTY;
+    }
+
+    @Override
+    public Integer get(Object key) {
+        if (!(key instanceof Product product)) {
+            return null;
+        }
+        int line = index[findSlot(product)];
+        return line == EMPTY ? null : quantities[line];
+    }
+
+    @Override
+    public Set<Entry<Product, Integer>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Entry<Product, Integer>> iterator() {
+                return new Iterator<>() {
+                    private int line;
+
+                    @Override
+                    public boolean hasNext() {
+                        return line < numberOfLines;
+                    }
+
+                    @Override
+                    public Entry<Product, Integer> next() {
+                        if (line >= numberOfLines) {
+                            throw new NoSuchElementException();
+                        }
+                        Entry<Product, Integer> entry = new SimpleImmutableEntry<>(products[line], quantities[line]);
+                        line++;
+                        return entry;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return numberOfLines;
+            }
+        };
+    }
+
+    /**
+     * @return the slot holding the line of [product], or the empty slot where its line would go.
+     */
+    private int findSlot(Product product) {
+        int mask = index.length - 1;
+        int slot = spread(product.hashCode()) & mask;
+        while (true) {
+            int line = index[slot];
+            if (line == EMPTY || products[line] == product || products[line].equals(product)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private void rebuildIndex(int capacity) {
+        index = new int[capacity];
+        Arrays.fill(index, EMPTY);
+        int mask = capacity - 1;
+        for (int line = 0; line < numberOfLines; line++) {
+            int slot = spread(products[line].hashCode()) & mask;
+            while (index[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            index[slot] = line;
+        }
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
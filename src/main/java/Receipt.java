@@ -1,43 +1,125 @@
+import java.io.IOException;
 import java.time.LocalDate;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 public class Receipt {
 
-    private final Map<Product, Integer> items;
+    /**
+     * The id of a receipt that has not been appended to a ReceiptJournal.
+     */
+    public static final long NO_ID = 0;
+
+    private long id = NO_ID;
+    private final PurchaseLines items;
     private final int totalPriceExVat;
     public final LocalDate date;
     private final int totalVat;
     private final int totalDiscount;
     private final int totalPrice;
+    private final Promotion[] appliedPromotions;
+    private final int[] promotionDiscounts;
 
     Receipt(Purchase purchase){
-        items = purchase.getPurchasedItems();
+        items = purchase.getLineSnapshot();
         totalPriceExVat = purchase.getTotalPriceExVat();
         totalVat = purchase.getTotalVAT();
         totalDiscount = purchase.getTotalDiscount();
         totalPrice = purchase.getTotalPrice();
         date = LocalDate.now();
+        PromotionTracker promotionTracker = purchase.getPromotionTracker();
+        int numberOfAppliedPromotions = promotionTracker == null ? 0 : promotionTracker.numberOfAppliedPromotions();
+        appliedPromotions = new Promotion[numberOfAppliedPromotions];
+        promotionDiscounts = new int[numberOfAppliedPromotions];
+        if(numberOfAppliedPromotions > 0){
+            promotionTracker.copyAppliedPromotions(appliedPromotions, promotionDiscounts);
+        }
+    }
+
+    /**
+     * Recreates a receipt read back from a ReceiptJournal. The journal keeps the totals, which include the
+     * discounts of promotions, but not the promotions themselves.
+     */
+    Receipt(long id, PurchaseLines items, int totalPriceExVat, int totalVat, int totalDiscount, int totalPrice, LocalDate date){
+        this.id = id;
+        this.items = items;
+        this.totalPriceExVat = totalPriceExVat;
+        this.totalVat = totalVat;
+        this.totalDiscount = totalDiscount;
+        this.totalPrice = totalPrice;
+        this.date = date;
+        this.appliedPromotions = new Promotion[0];
+        this.promotionDiscounts = new int[0];
+    }
+
+    /**
+     * @return the id given to the receipt by ReceiptJournal.append(receipt), or NO_ID if it has not been appended.
+     */
+    public long getId(){
+        return id;
+    }
+
+    void setId(long id){
+        this.id = id;
+    }
+
+    PurchaseLines getItems(){
+        return items;
+    }
+
+    public int getTotalPriceExVat(){
+        return totalPriceExVat;
     }
 
+    public int getTotalVat(){
+        return totalVat;
+    }
 
+    public int getTotalDiscount(){
+        return totalDiscount;
+    }
+
+    public int getTotalPrice(){
+        return totalPrice;
+    }
+
+    /**
+     * @return the promotions applied to the purchase mapped to their discount, in the order they were added
+     * to their catalog.
+     */
+    public Map<Promotion, Integer> getAppliedPromotions(){
+        Map<Promotion, Integer> promotions = new LinkedHashMap<>();
+        for(int i = 0; i < appliedPromotions.length; i++){
+            promotions.put(appliedPromotions[i], promotionDiscounts[i]);
+        }
+        return promotions;
+    }
+
+    int numberOfAppliedPromotions(){
+        return appliedPromotions.length;
+    }
+
+    Promotion appliedPromotion(int index){
+        return appliedPromotions[index];
+    }
+
+    int promotionDiscount(int index){
+        return promotionDiscounts[index];
+    }
 
     /**
      * Method prints the receipt.
+     * To write the receipt somewhere without creating a String, or as JSON, see ReceiptRenderer.
      * @return the receipt as a String
      */
     @Override
     public String toString(){
-        StringBuilder stringBuilder = new StringBuilder();
-        stringBuilder.append("Du har köpt varorna:");
-        for(Product item : items.keySet()){
-            stringBuilder.append("\n").append(item.toString()).append(", antal: ").append(items.get(item));
+        StringBuilder stringBuilder = new StringBuilder(64 + 32 * items.numberOfLines());
+        try {
+            ReceiptRenderer.renderText(this, stringBuilder);
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e);
         }
-        stringBuilder.append("\n").append("Pris ex moms: ").append(totalPriceExVat/100).append("kr");
-        stringBuilder.append("\n").append("Moms: ").append(totalVat/100).append("kr");
-        stringBuilder.append("\n").append("Rabatt: ").append(totalDiscount/100).append("kr");
-        stringBuilder.append("\n").append("Totalpris: ").append(totalPrice/100).append("kr");
-        stringBuilder.append("\n").append("Datum: ").append(date);
-
         return stringBuilder.toString();
     }
 }
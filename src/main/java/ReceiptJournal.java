@@ -0,0 +1,365 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of every completed Receipt, kept in memory-mapped segment files in one directory.
+ * <p>
+ * Every segment starts with the magic number 0x524A3032 ("RJ02"), followed by one record per appended receipt.
+ * Every appended receipt gets the next id, starting from 1, and is written as one record:
+ * <pre>
+ * length      size of the body in bytes (int)
+ * checksum    CRC32 of the body (int)
+ * id          varint
+ * epochDay    varint, the date of the receipt
+ * lines       varint number of lines, then per line: the product, then varint quantity. The product is its varint
+ *             barcode if it has one, otherwise 0 followed by its brand and product name (varint length + UTF-8)
+ * totals      zigzag varints: price ex VAT, VAT, discount, total price (minor units)
+ * </pre>
+ * Products are referred to by barcode or by name rather than by SKU id, since SKU ids change when the inventory is
+ * saved and loaded again as a snapshot or reloaded from CSV; a line with a barcode takes about eight bytes.
+ * The length is written after the rest of the record, but the mapped pages may still reach the disk in any order,
+ * so a record whose length is 0 or whose body does not match its checksum is treated as the end of the journal.
+ * <p>
+ * When a record does not fit in the current segment a new segment is started. On opening, the journal reads only the
+ * length, id and date of each record to rebuild two in-memory indexes: record position by id, for returns, and
+ * record ids by date, for reading every receipt of a day. Only the receipts asked for are decoded.
+ * <p>
+ * Receipts holding a product that is no longer in the inventory the journal is opened with can no longer be read.
+ */
+public class ReceiptJournal implements AutoCloseable {
+
+    static final int DEFAULT_SEGMENT_SIZE_IN_BYTES = 16 * 1024 * 1024;
+    private static final String SEGMENT_FILE_FORMAT = "receipts-%08d.journal";
+    private static final int MAGIC = 0x524A3032;
+    private static final int SEGMENT_HEADER_SIZE_IN_BYTES = Integer.BYTES;
+    private static final int RECORD_HEADER_SIZE_IN_BYTES = Integer.BYTES + Integer.BYTES;
+
+    private final Path directory;
+    private final InventoryBalance inventoryBalance;
+    private final int segmentSizeInBytes;
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+
+    /**
+     * Position of every record, indexed by id - 1, since ids are handed out without gaps.
+     */
+    private int[] recordSegments = new int[1024];
+    private int[] recordOffsets = new int[1024];
+    private int numberOfReceipts;
+    private final Map<Long, RecordIds> idsByEpochDay = new HashMap<>();
+
+    private ByteBuffer recordBuffer = ByteBuffer.allocate(4096);
+    private final CRC32 checksum = new CRC32();
+
+    public ReceiptJournal(String directoryPath, InventoryBalance inventoryBalance) {
+        this(directoryPath, inventoryBalance, DEFAULT_SEGMENT_SIZE_IN_BYTES);
+    }
+
+    /**
+     * Opens the journal in [directoryPath], creating the directory if needed, and indexes the receipts already in it.
+     *
+     * @param segmentSizeInBytes is the size of each segment file; a single receipt must fit in one segment.
+     * @throws IllegalArgumentException if the journal cannot be opened, or a segment is not in this format.
+     */
+    public ReceiptJournal(String directoryPath, InventoryBalance inventoryBalance, int segmentSizeInBytes) {
+        if (segmentSizeInBytes < 64) {
+            throw new IllegalArgumentException(String.format("%d is not a valid segment size.", segmentSizeInBytes));
+        }
+        this.directory = Path.of(directoryPath);
+        this.inventoryBalance = inventoryBalance;
+        this.segmentSizeInBytes = segmentSizeInBytes;
+        try {
+            Files.createDirectories(directory);
+            for (int segment = 0; Files.exists(segmentPath(segment)); segment++) {
+                segments.add(map(segmentPath(segment), Math.max(segmentSizeInBytes, Files.size(segmentPath(segment)))));
+                indexSegment(segment);
+            }
+        } catch (IOException exception) {
+            throw new IllegalArgumentException(exception);
+        }
+        if (segments.isEmpty()) {
+            startSegment();
+        }
+    }
+
+    /**
+     * Appends [receipt] to the journal and gives it the next id.
+     *
+     * @return the id of the receipt.
+     * @throws IllegalArgumentException if the receipt has already been appended, or does not fit in one segment.
+     */
+    public synchronized long append(Receipt receipt) {
+        if (receipt.getId() != Receipt.NO_ID) {
+            throw new IllegalArgumentException(String.format("Receipt %d has already been appended.", receipt.getId()));
+        }
+        long id = numberOfReceipts + 1;
+        long epochDay = receipt.date.toEpochDay();
+        encode(id, epochDay, receipt);
+
+        int length = recordBuffer.position();
+        if (SEGMENT_HEADER_SIZE_IN_BYTES + RECORD_HEADER_SIZE_IN_BYTES + length > segmentSizeInBytes) {
+            throw new IllegalArgumentException("Receipt too large for a journal segment.");
+        }
+        MappedByteBuffer segment = segments.get(segments.size() - 1);
+        if (segment.remaining() < RECORD_HEADER_SIZE_IN_BYTES + length) {
+            segment = startSegment();
+        }
+        int offset = segment.position();
+        segment.put(offset + RECORD_HEADER_SIZE_IN_BYTES, recordBuffer.array(), 0, length);
+        segment.putInt(offset + Integer.BYTES, checksumOf(recordBuffer.array(), length));
+        segment.putInt(offset, length);
+        segment.position(offset + RECORD_HEADER_SIZE_IN_BYTES + length);
+
+        index(segments.size() - 1, offset, epochDay);
+        receipt.setId(id);
+        return id;
+    }
+
+    /**
+     * Reads the receipt with [id] back from the journal, for example when a customer returns a product.
+     *
+     * @throws NoSuchElementException if there is no receipt with [id], or it holds a product no longer in the inventory.
+     */
+    public synchronized Receipt get(long id) throws NoSuchElementException {
+        if (id < 1 || id > numberOfReceipts) {
+            throw new NoSuchElementException(String.format("No receipt with id %d.", id));
+        }
+        int recordNumber = (int) (id - 1);
+        return decode(segments.get(recordSegments[recordNumber]), recordOffsets[recordNumber]);
+    }
+
+    /**
+     * Reads back every receipt dated [date], in the order they were appended.
+     * Only the receipts of that day are decoded.
+     */
+    public synchronized List<Receipt> getReceiptsFrom(LocalDate date) {
+        RecordIds ids = idsByEpochDay.get(date.toEpochDay());
+        if (ids == null) {
+            return new ArrayList<>();
+        }
+        List<Receipt> receipts = new ArrayList<>(ids.size);
+        for (int i = 0; i < ids.size; i++) {
+            receipts.add(get(ids.values[i]));
+        }
+        return receipts;
+    }
+
+    public synchronized int getNumberOfReceipts() {
+        return numberOfReceipts;
+    }
+
+    /**
+     * Forces every appended receipt to disk.
+     */
+    public synchronized void flush() {
+        for (MappedByteBuffer segment : segments) {
+            segment.force();
+        }
+    }
+
+    @Override
+    public void close() {
+        flush();
+    }
+
+    private void encode(long id, long epochDay, Receipt receipt) {
+        PurchaseLines items = receipt.getItems();
+        recordBuffer.clear();
+        putVarint(id);
+        putVarint(zigZag(epochDay));
+        putVarint(items.numberOfLines());
+        for (int line = 0; line < items.numberOfLines(); line++) {
+            Product product = items.product(line);
+            if (product.hasABarcode()) {
+                putVarint(product.getBarcode());
+            } else {
+                putVarint(0);
+                putString(product.getBrandName());
+                putString(product.getProductName());
+            }
+            putVarint(items.quantity(line));
+        }
+        putVarint(zigZag(receipt.getTotalPriceExVat()));
+        putVarint(zigZag(receipt.getTotalVat()));
+        putVarint(zigZag(receipt.getTotalDiscount()));
+        putVarint(zigZag(receipt.getTotalPrice()));
+    }
+
+    private Receipt decode(MappedByteBuffer segment, int offset) {
+        ByteBuffer record = segment.duplicate();
+        record.position(offset + RECORD_HEADER_SIZE_IN_BYTES);
+        long id = getVarint(record);
+        long epochDay = unZigZag(getVarint(record));
+        int numberOfLines = (int) getVarint(record);
+        PurchaseLines items = new PurchaseLines();
+        for (int line = 0; line < numberOfLines; line++) {
+            long barcode = getVarint(record);
+            Product product;
+            try {
+                product = barcode != ProductStore.NO_BARCODE ? inventoryBalance.getByBarcode(barcode)
+                        : inventoryBalance.get(getString(record), getString(record));
+            } catch (NoSuchElementException exception) {
+                throw new NoSuchElementException(String.format("Receipt %d holds a product no longer in inventory.", id));
+            }
+            items.add(product, (int) getVarint(record));
+        }
+        int totalPriceExVat = (int) unZigZag(getVarint(record));
+        int totalVat = (int) unZigZag(getVarint(record));
+        int totalDiscount = (int) unZigZag(getVarint(record));
+        int totalPrice = (int) unZigZag(getVarint(record));
+        return new Receipt(id, items, totalPriceExVat, totalVat, totalDiscount, totalPrice, LocalDate.ofEpochDay(epochDay));
+    }
+
+    /**
+     * Adds every complete record in [segment] to the indexes, reading only the id and date of each after checking
+     * its checksum, and leaves the segment positioned after the last one.
+     */
+    private void indexSegment(int segmentNumber) {
+        MappedByteBuffer segment = segments.get(segmentNumber);
+        int magic = segment.getInt(0);
+        if (magic == 0) {
+            segment.putInt(0, MAGIC);
+        } else if (magic != MAGIC) {
+            throw new IllegalArgumentException(String.format("%s is not a receipt journal segment of this version.",
+                    segmentPath(segmentNumber)));
+        }
+        int offset = SEGMENT_HEADER_SIZE_IN_BYTES;
+        while (offset + RECORD_HEADER_SIZE_IN_BYTES <= segment.limit()) {
+            int length = segment.getInt(offset);
+            if (length <= 0 || offset + RECORD_HEADER_SIZE_IN_BYTES + length > segment.limit()
+                    || segment.getInt(offset + Integer.BYTES) != checksumOf(segment, offset + RECORD_HEADER_SIZE_IN_BYTES, length)) {
+                break;
+            }
+            ByteBuffer header = segment.duplicate();
+            header.position(offset + RECORD_HEADER_SIZE_IN_BYTES);
+            long id = getVarint(header);
+            if (id != numberOfReceipts + 1) {
+                throw new IllegalArgumentException(String.format("Receipt journal in %s is corrupt at receipt %d.",
+                        directory, numberOfReceipts + 1));
+            }
+            index(segmentNumber, offset, unZigZag(getVarint(header)));
+            offset += RECORD_HEADER_SIZE_IN_BYTES + length;
+        }
+        segment.position(offset);
+    }
+
+    private void index(int segmentNumber, int offset, long epochDay) {
+        if (numberOfReceipts == recordSegments.length) {
+            recordSegments = Arrays.copyOf(recordSegments, numberOfReceipts * 2);
+            recordOffsets = Arrays.copyOf(recordOffsets, numberOfReceipts * 2);
+        }
+        recordSegments[numberOfReceipts] = segmentNumber;
+        recordOffsets[numberOfReceipts] = offset;
+        numberOfReceipts++;
+        idsByEpochDay.computeIfAbsent(epochDay, day -> new RecordIds()).add(numberOfReceipts);
+    }
+
+    private MappedByteBuffer startSegment() {
+        try {
+            MappedByteBuffer segment = map(segmentPath(segments.size()), segmentSizeInBytes);
+            segment.putInt(0, MAGIC);
+            segment.position(SEGMENT_HEADER_SIZE_IN_BYTES);
+            segments.add(segment);
+            return segment;
+        } catch (IOException exception) {
+            throw new IllegalArgumentException(exception);
+        }
+    }
+
+    private Path segmentPath(int segmentNumber) {
+        return directory.resolve(String.format(SEGMENT_FILE_FORMAT, segmentNumber));
+    }
+
+    private static MappedByteBuffer map(Path path, long sizeInBytes) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, sizeInBytes);
+        }
+    }
+
+    private int checksumOf(byte[] body, int length) {
+        checksum.reset();
+        checksum.update(body, 0, length);
+        return (int) checksum.getValue();
+    }
+
+    private int checksumOf(MappedByteBuffer segment, int offset, int length) {
+        checksum.reset();
+        checksum.update(segment.slice(offset, length));
+        return (int) checksum.getValue();
+    }
+
+    private void putVarint(long value) {
+        if (recordBuffer.remaining() < 10) {
+            recordBuffer = ByteBuffer.allocate(recordBuffer.capacity() * 2).put(recordBuffer.flip());
+        }
+        while ((value & ~0x7FL) != 0) {
+            recordBuffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        recordBuffer.put((byte) value);
+    }
+
+    private void putString(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        putVarint(bytes.length);
+        if (recordBuffer.remaining() < bytes.length) {
+            recordBuffer = ByteBuffer.allocate(2 * (recordBuffer.capacity() + bytes.length)).put(recordBuffer.flip());
+        }
+        recordBuffer.put(bytes);
+    }
+
+    private static long getVarint(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        byte[] bytes = new byte[(int) getVarint(buffer)];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Maps signed values to unsigned ones so that small negative values also take few bytes as a varint.
+     */
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static class RecordIds {
+
+        private long[] values = new long[8];
+        private int size;
+
+        private void add(long id) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = id;
+        }
+    }
+}
@@ -0,0 +1,342 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+
+/**
+ * Support class used to render a Receipt, either as the printed text returned by Receipt.toString()
+ * or as JSON for e-receipts.
+ * <p>
+ * A receipt is written straight to an Appendable (a StringBuilder, a Writer, ...) or to a ByteBuffer as UTF-8,
+ * without building the whole receipt as a String first. The fixed labels are kept as Strings and, for ByteBuffers,
+ * as UTF-8 bytes encoded once; amounts and dates are written digit by digit, so no intermediate Strings are created.
+ * <p>
+ * Applied promotions are listed after the items, with their discount.
+ * In the text format amounts are whole kronor, as on the printed receipt. In the JSON format they are minor units.
+ */
+public class ReceiptRenderer {
+
+    private static final Label HEADER = new Label("Du har köpt varorna:");
+    private static final Label QUANTITY = new Label(", antal: ");
+    private static final Label PROMOTION_DISCOUNT = new Label(", rabatt: ");
+    private static final Label PRICE_EX_VAT = new Label("\nPris ex moms: ");
+    private static final Label VAT_LABEL = new Label("\nMoms: ");
+    private static final Label DISCOUNT = new Label("\nRabatt: ");
+    private static final Label TOTAL_PRICE = new Label("\nTotalpris: ");
+    private static final Label DATE = new Label("\nDatum: ");
+    private static final Label KRONOR = new Label("kr");
+
+    private static final Label JSON_ITEMS = new Label("{\"items\":[");
+    private static final Label JSON_BRAND_NAME = new Label("{\"brandName\":\"");
+    private static final Label JSON_PRODUCT_NAME = new Label("\",\"productName\":\"");
+    private static final Label JSON_QUANTITY = new Label("\",\"quantity\":");
+    private static final Label JSON_PROMOTIONS = new Label("],\"promotions\":[");
+    private static final Label JSON_PROMOTION_NAME = new Label("{\"name\":\"");
+    private static final Label JSON_PROMOTION_DISCOUNT = new Label("\",\"discount\":");
+    private static final Label JSON_PRICE_EX_VAT = new Label("],\"totalPriceExVat\":");
+    private static final Label JSON_VAT = new Label(",\"totalVat\":");
+    private static final Label JSON_DISCOUNT = new Label(",\"totalDiscount\":");
+    private static final Label JSON_TOTAL_PRICE = new Label(",\"totalPrice\":");
+    private static final Label JSON_DATE = new Label(",\"date\":\"");
+    private static final Label JSON_END = new Label("\"}");
+
+    private ReceiptRenderer() {
+    }
+
+    /**
+     * Writes [receipt] as printed text to [out]. The text is the same as Receipt.toString().
+     *
+     * @throws IOException if [out] throws.
+     */
+    public static void renderText(Receipt receipt, Appendable out) throws IOException {
+        renderText(receipt, new AppendableSink(out));
+    }
+
+    /**
+     * Writes [receipt] as printed text, encoded as UTF-8, to [out] from its current position.
+     *
+     * @return the number of bytes written.
+     * @throws java.nio.BufferOverflowException if [out] has too little room left, in which case its content is undefined.
+     */
+    public static int renderText(Receipt receipt, ByteBuffer out) {
+        int start = out.position();
+        try {
+            renderText(receipt, new ByteBufferSink(out));
+        } catch (IOException exception) {
+            throw new IllegalArgumentException(exception);
+        }
+        return out.position() - start;
+    }
+
+    /**
+     * Writes [receipt] as a JSON object to [out]. Amounts are in minor units.
+     *
+     * @throws IOException if [out] throws.
+     */
+    public static void renderJson(Receipt receipt, Appendable out) throws IOException {
+        renderJson(receipt, new AppendableSink(out));
+    }
+
+    /**
+     * Writes [receipt] as a JSON object, encoded as UTF-8, to [out] from its current position.
+     *
+     * @return the number of bytes written.
+     * @throws java.nio.BufferOverflowException if [out] has too little room left, in which case its content is undefined.
+     */
+    public static int renderJson(Receipt receipt, ByteBuffer out) {
+        int start = out.position();
+        try {
+            renderJson(receipt, new ByteBufferSink(out));
+        } catch (IOException exception) {
+            throw new IllegalArgumentException(exception);
+        }
+        return out.position() - start;
+    }
+
+    private static void renderText(Receipt receipt, Sink out) throws IOException {
+        PurchaseLines items = receipt.getItems();
+        out.label(HEADER);
+        for (int line = 0; line < items.numberOfLines(); line++) {
+            Product product = items.product(line);
+            out.character('\n');
+            out.text(product.getBrandName());
+            out.character(' ');
+            out.text(product.getProductName());
+            out.label(QUANTITY);
+            out.number(items.quantity(line));
+        }
+        for (int i = 0; i < receipt.numberOfAppliedPromotions(); i++) {
+            out.character('\n');
+            out.text(receipt.appliedPromotion(i).getName());
+            out.label(PROMOTION_DISCOUNT);
+            out.number(receipt.promotionDiscount(i) / 100);
+            out.label(KRONOR);
+        }
+        out.label(PRICE_EX_VAT);
+        out.number(receipt.getTotalPriceExVat() / 100);
+        out.label(KRONOR);
+        out.label(VAT_LABEL);
+        out.number(receipt.getTotalVat() / 100);
+        out.label(KRONOR);
+        out.label(DISCOUNT);
+        out.number(receipt.getTotalDiscount() / 100);
+        out.label(KRONOR);
+        out.label(TOTAL_PRICE);
+        out.number(receipt.getTotalPrice() / 100);
+        out.label(KRONOR);
+        out.label(DATE);
+        date(receipt.date, out);
+    }
+
+    private static void renderJson(Receipt receipt, Sink out) throws IOException {
+        PurchaseLines items = receipt.getItems();
+        out.label(JSON_ITEMS);
+        for (int line = 0; line < items.numberOfLines(); line++) {
+            Product product = items.product(line);
+            if (line > 0) {
+                out.character(',');
+            }
+            out.label(JSON_BRAND_NAME);
+            jsonString(product.getBrandName(), out);
+            out.label(JSON_PRODUCT_NAME);
+            jsonString(product.getProductName(), out);
+            out.label(JSON_QUANTITY);
+            out.number(items.quantity(line));
+            out.character('}');
+        }
+        out.label(JSON_PROMOTIONS);
+        for (int i = 0; i < receipt.numberOfAppliedPromotions(); i++) {
+            if (i > 0) {
+                out.character(',');
+            }
+            out.label(JSON_PROMOTION_NAME);
+            jsonString(receipt.appliedPromotion(i).getName(), out);
+            out.label(JSON_PROMOTION_DISCOUNT);
+            out.number(receipt.promotionDiscount(i));
+            out.character('}');
+        }
+        out.label(JSON_PRICE_EX_VAT);
+        out.number(receipt.getTotalPriceExVat());
+        out.label(JSON_VAT);
+        out.number(receipt.getTotalVat());
+        out.label(JSON_DISCOUNT);
+        out.number(receipt.getTotalDiscount());
+        out.label(JSON_TOTAL_PRICE);
+        out.number(receipt.getTotalPrice());
+        out.label(JSON_DATE);
+        date(receipt.date, out);
+        out.label(JSON_END);
+    }
+
+    /**
+     * Writes [date] in the ISO format of LocalDate.toString(), e.g. 2023-01-01.
+     */
+    private static void date(LocalDate date, Sink out) throws IOException {
+        int year = date.getYear();
+        if (year < 0 || year > 9999) {
+            out.text(date.toString());
+            return;
+        }
+        digits(year, 4, out);
+        out.character('-');
+        digits(date.getMonthValue(), 2, out);
+        out.character('-');
+        digits(date.getDayOfMonth(), 2, out);
+    }
+
+    private static void digits(int value, int numberOfDigits, Sink out) throws IOException {
+        int divisor = 1;
+        for (int i = 1; i < numberOfDigits; i++) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            out.character((char) ('0' + value / divisor % 10));
+        }
+    }
+
+    private static void jsonString(String value, Sink out) throws IOException {
+        int start = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\' || c < 0x20) {
+                out.text(value, start, i);
+                out.character('\\');
+                switch (c) {
+                    case '"', '\\' -> out.character(c);
+                    case '\n' -> out.character('n');
+                    case '\r' -> out.character('r');
+                    case '\t' -> out.character('t');
+                    default -> {
+                        out.character('u');
+                        digits(0, 2, out);
+                        out.character(Character.forDigit(c >> 4, 16));
+                        out.character(Character.forDigit(c & 0xF, 16));
+                    }
+                }
+                start = i + 1;
+            }
+        }
+        out.text(value, start, value.length());
+    }
+
+    /**
+     * A fixed piece of text, with its UTF-8 bytes encoded once.
+     */
+    private static class Label {
+
+        private final String text;
+        private final byte[] utf8;
+
+        private Label(String text) {
+            this.text = text;
+            this.utf8 = text.getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    private interface Sink {
+
+        void label(Label label) throws IOException;
+
+        void text(String text, int start, int end) throws IOException;
+
+        void character(char c) throws IOException;
+
+        default void text(String text) throws IOException {
+            text(text, 0, text.length());
+        }
+
+        /**
+         * Writes [value] in decimal, one digit at a time.
+         */
+        default void number(long value) throws IOException {
+            if (value < 0) {
+                character('-');
+            } else {
+                value = -value;
+            }
+            // Works on the negative value, so Long.MIN_VALUE is written correctly as well.
+            long divisor = 1;
+            while (value / divisor <= -10) {
+                divisor *= 10;
+            }
+            while (divisor > 0) {
+                character((char) ('0' - value / divisor % 10));
+                divisor /= 10;
+            }
+        }
+    }
+
+    private static class AppendableSink implements Sink {
+
+        private final Appendable out;
+
+        private AppendableSink(Appendable out) {
+            this.out = out;
+        }
+
+        @Override
+        public void label(Label label) throws IOException {
+            out.append(label.text);
+        }
+
+        @Override
+        public void text(String text, int start, int end) throws IOException {
+            out.append(text, start, end);
+        }
+
+        @Override
+        public void character(char c) throws IOException {
+            out.append(c);
+        }
+    }
+
+    private static class ByteBufferSink implements Sink {
+
+        private final ByteBuffer out;
+
+        private ByteBufferSink(ByteBuffer out) {
+            this.out = out;
+        }
+
+        @Override
+        public void label(Label label) {
+            out.put(label.utf8);
+        }
+
+        /**
+         * Encodes the characters as UTF-8 directly into the buffer.
+         */
+        @Override
+        public void text(String text, int start, int end) {
+            for (int i = start; i < end; i++) {
+                char c = text.charAt(i);
+                if (c < 0x80) {
+                    out.put((byte) c);
+                } else if (c < 0x800) {
+                    out.put((byte) (0xC0 | c >> 6));
+                    out.put((byte) (0x80 | c & 0x3F));
+                } else if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(text.charAt(i + 1))) {
+                    int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                    out.put((byte) (0xF0 | codePoint >> 18));
+                    out.put((byte) (0x80 | codePoint >> 12 & 0x3F));
+                    out.put((byte) (0x80 | codePoint >> 6 & 0x3F));
+                    out.put((byte) (0x80 | codePoint & 0x3F));
+                } else if (Character.isSurrogate(c)) {
+                    out.put((byte) '?');
+                } else {
+                    out.put((byte) (0xE0 | c >> 12));
+                    out.put((byte) (0x80 | c >> 6 & 0x3F));
+                    out.put((byte) (0x80 | c & 0x3F));
+                }
+            }
+        }
+
+        /**
+         * Only ever called with ASCII characters, which are one byte each in UTF-8.
+         */
+        @Override
+        public void character(char c) {
+            out.put((byte) c);
+        }
+    }
+}
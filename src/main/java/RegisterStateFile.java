@@ -0,0 +1,281 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * The database file of a CashRegister, written so that a crash in the middle of a write never loses the state.
+ * <p>
+ * A file named *.state holds two copies of the state, each in a sector of its own:
+ * <pre>
+ * slot        magic (int), sequence (long), balance in minor units (long), log generation (long),
+ *             CRC32C of the above (int)
+ * </pre>
+ * A write overwrites the slot holding the older copy with the next sequence and forces it, so the newest copy is
+ * never touched: a write torn by a crash fails its checksum and the other slot is still whole. Reading checks both
+ * slots and takes the valid one with the highest sequence, two fixed-size reads however often the file was written.
+ * <p>
+ * Any other file, such as the cashRegisterMoney.txt the register has always used, stays in the text format: the
+ * balance on the first line and, once a payment log has been folded into it, the log generation on the second.
+ * A text file is written whole to a temporary file, forced and renamed over the database file, since a write in
+ * place could tear the text. That takes a write, an fsync and a rename per payment, against one write and an fsync
+ * for a .state file, so a text file is turned into a .state file only when asked to, with migrate(file).
+ * <p>
+ * Both formats are read from either kind of file, so a text file that an earlier version had already turned into
+ * slots is still read, and written as text again.
+ */
+final class RegisterStateFile {
+
+    static final int SLOT_SIZE_IN_BYTES = 512;
+    static final int FILE_SIZE_IN_BYTES = 2 * SLOT_SIZE_IN_BYTES;
+    private static final int MAGIC = 0x52454753;
+    private static final int SEQUENCE_OFFSET = Integer.BYTES;
+    private static final int BALANCE_OFFSET = SEQUENCE_OFFSET + Long.BYTES;
+    private static final int GENERATION_OFFSET = BALANCE_OFFSET + Long.BYTES;
+    private static final int CHECKSUM_OFFSET = GENERATION_OFFSET + Long.BYTES;
+    private static final int RECORD_SIZE_IN_BYTES = CHECKSUM_OFFSET + Integer.BYTES;
+    static final int NO_VALID_SLOT = -1;
+    static final String STATE_FILE_EXTENSION = ".state";
+
+    /**
+     * One copy of the state: the balance and the generation of the payment log folded into it.
+     */
+    static final class State {
+
+        private final long balanceInMinorUnit;
+        private final long generation;
+
+        State(long balanceInMinorUnit, long generation) {
+            this.balanceInMinorUnit = balanceInMinorUnit;
+            this.generation = generation;
+        }
+
+        long getBalanceInMinorUnit() {
+            return balanceInMinorUnit;
+        }
+
+        long getGeneration() {
+            return generation;
+        }
+    }
+
+    private RegisterStateFile() {
+    }
+
+    /**
+     * @return the newest valid copy of the state in [file], or the state of a text file.
+     * @throws IllegalArgumentException if the file does not exist or cannot be read, neither copy is valid,
+     * or it holds a negative or non-numeric balance.
+     */
+    static State read(Path file) {
+        try {
+            State state;
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                ByteBuffer slots = readSlots(channel);
+                if (slots == null) {
+                    state = null;
+                } else {
+                    int newest = newestValidSlot(slots);
+                    if (newest == NO_VALID_SLOT) {
+                        throw new IllegalArgumentException(String.format("Neither copy of the state in %s is valid.", file));
+                    }
+                    state = new State(balanceOf(slots, newest), generationOf(slots, newest));
+                }
+            }
+            if (state == null) {
+                state = readText(file);
+            }
+            if (state.getBalanceInMinorUnit() < 0) {
+                throw new IllegalArgumentException("Money cannot be negative");
+            }
+            return state;
+        } catch (NoSuchFileException exception) {
+            throw new IllegalArgumentException(String.format("%s does not exist.", file), exception);
+        } catch (IOException exception) {
+            throw new IllegalArgumentException(String.format("%s cannot be read.", file), exception);
+        }
+    }
+
+    /**
+     * Writes [balanceInMinorUnit] and [generation] to [file] and forces it to disk: over its older copy if it is a
+     * .state file, as a whole if it does not exist yet or is not in the slotted format, and as text otherwise.
+     *
+     * @throws IllegalArgumentException if the file cannot be written.
+     */
+    static void write(Path file, long balanceInMinorUnit, long generation) {
+        try {
+            if (!isStateFile(file)) {
+                replaceText(file, balanceInMinorUnit, generation);
+                return;
+            }
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE)) {
+                ByteBuffer slots = readSlots(channel);
+                if (slots != null) {
+                    int newest = newestValidSlot(slots);
+                    long sequence = newest == NO_VALID_SLOT ? 1 : sequenceOf(slots, newest) + 1;
+                    int target = newest == 0 ? 1 : 0;
+                    putCopy(slots, target, sequence, balanceInMinorUnit, generation);
+                    ByteBuffer copy = slots.slice(target * SLOT_SIZE_IN_BYTES, RECORD_SIZE_IN_BYTES);
+                    while (copy.hasRemaining()) {
+                        channel.write(copy, (long) target * SLOT_SIZE_IN_BYTES + copy.position());
+                    }
+                    channel.force(false);
+                    return;
+                }
+            }
+            replace(file, balanceInMinorUnit, generation);
+        } catch (IOException exception) {
+            throw new IllegalArgumentException(String.format("%s cannot be written.", file), exception);
+        }
+    }
+
+    /**
+     * Writes the state of the text file [textFile] to a .state file of the same name next to it.
+     * The text file is left as it is, so a register still given its name keeps using it.
+     *
+     * @return the .state file.
+     * @throws IllegalArgumentException if the text file cannot be read, is already a .state file, or the .state file
+     * already exists or cannot be written.
+     */
+    static Path migrate(Path textFile) {
+        if (isStateFile(textFile)) {
+            throw new IllegalArgumentException(String.format("%s is already a %s file.", textFile, STATE_FILE_EXTENSION));
+        }
+        String name = textFile.getFileName().toString();
+        int extension = name.lastIndexOf('.');
+        Path stateFile = textFile.resolveSibling((extension > 0 ? name.substring(0, extension) : name) + STATE_FILE_EXTENSION);
+        if (Files.exists(stateFile)) {
+            throw new IllegalArgumentException(String.format("%s already exists.", stateFile));
+        }
+        State state = read(textFile);
+        write(stateFile, state.getBalanceInMinorUnit(), state.getGeneration());
+        return stateFile;
+    }
+
+    /**
+     * @return true if [file] is kept in the slotted format.
+     */
+    static boolean isStateFile(Path file) {
+        return file.getFileName().toString().endsWith(STATE_FILE_EXTENSION);
+    }
+
+    /**
+     * Puts a copy of the state with [sequence] in [slot] of [slots], a buffer over a whole slotted file such as a
+     * mapping of it.
+     */
+    static void putCopy(ByteBuffer slots, int slot, long sequence, long balanceInMinorUnit, long generation) {
+        int start = slot * SLOT_SIZE_IN_BYTES;
+        slots.putInt(start, MAGIC)
+                .putLong(start + SEQUENCE_OFFSET, sequence)
+                .putLong(start + BALANCE_OFFSET, balanceInMinorUnit)
+                .putLong(start + GENERATION_OFFSET, generation)
+                .putInt(start + CHECKSUM_OFFSET, checksumOf(slots, slot));
+    }
+
+    /**
+     * @return the slot of [slots] with the highest sequence among those with a good checksum, or NO_VALID_SLOT.
+     */
+    static int newestValidSlot(ByteBuffer slots) {
+        int newest = NO_VALID_SLOT;
+        for (int slot = 0; slot < 2; slot++) {
+            if (isValid(slots, slot) && (newest == NO_VALID_SLOT || sequenceOf(slots, slot) > sequenceOf(slots, newest))) {
+                newest = slot;
+            }
+        }
+        return newest;
+    }
+
+    static long sequenceOf(ByteBuffer slots, int slot) {
+        return slots.getLong(slot * SLOT_SIZE_IN_BYTES + SEQUENCE_OFFSET);
+    }
+
+    static long balanceOf(ByteBuffer slots, int slot) {
+        return slots.getLong(slot * SLOT_SIZE_IN_BYTES + BALANCE_OFFSET);
+    }
+
+    static long generationOf(ByteBuffer slots, int slot) {
+        return slots.getLong(slot * SLOT_SIZE_IN_BYTES + GENERATION_OFFSET);
+    }
+
+    /**
+     * Writes a slotted file holding one copy of the state next to [file], and renames it over [file].
+     */
+    private static void replace(Path file, long balanceInMinorUnit, long generation) throws IOException {
+        ByteBuffer content = ByteBuffer.allocate(FILE_SIZE_IN_BYTES);
+        putCopy(content, 0, 1, balanceInMinorUnit, generation);
+        replaceWith(file, content);
+    }
+
+    /**
+     * Writes [file] in the text format next to it, and renames it over [file]. The generation is only written once
+     * a payment log has been folded into the balance, so a file only ever written by FileRegisterStorage keeps the
+     * one line it has always had.
+     */
+    private static void replaceText(Path file, long balanceInMinorUnit, long generation) throws IOException {
+        String text = generation == 0 ? balanceInMinorUnit + "\n" : balanceInMinorUnit + "\n" + generation + "\n";
+        replaceWith(file, StandardCharsets.UTF_8.encode(text));
+    }
+
+    /**
+     * Writes [content] to a temporary file next to [file], forces it and renames it over [file].
+     */
+    private static void replaceWith(Path file, ByteBuffer content) throws IOException {
+        Path temporaryFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporaryFile, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (content.hasRemaining()) {
+                channel.write(content);
+            }
+            channel.force(true);
+        }
+        Files.move(temporaryFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * @return the whole of [channel], or null if it is not a slotted file.
+     */
+    private static ByteBuffer readSlots(FileChannel channel) throws IOException {
+        if (channel.size() != FILE_SIZE_IN_BYTES) {
+            return null;
+        }
+        ByteBuffer slots = ByteBuffer.allocate(FILE_SIZE_IN_BYTES);
+        while (slots.hasRemaining() && channel.read(slots, slots.position()) > 0) {
+            // Read until the buffer is full.
+        }
+        if (slots.getInt(0) != MAGIC && slots.getInt(SLOT_SIZE_IN_BYTES) != MAGIC) {
+            return null;
+        }
+        return slots;
+    }
+
+    private static boolean isValid(ByteBuffer slots, int slot) {
+        int start = slot * SLOT_SIZE_IN_BYTES;
+        return slots.getInt(start) == MAGIC && slots.getInt(start + CHECKSUM_OFFSET) == checksumOf(slots, slot);
+    }
+
+    private static int checksumOf(ByteBuffer slots, int slot) {
+        CRC32C checksum = new CRC32C();
+        checksum.update(slots.slice(slot * SLOT_SIZE_IN_BYTES, CHECKSUM_OFFSET));
+        return (int) checksum.getValue();
+    }
+
+    private static State readText(Path file) throws IOException {
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        String balance = lines.isEmpty() ? "" : lines.get(0).trim();
+        String generation = lines.size() < 2 ? "" : lines.get(1).trim();
+        try {
+            return new State(balance.isEmpty() ? 0 : Long.parseLong(balance),
+                    generation.isEmpty() ? 0 : Long.parseLong(generation));
+        } catch (NumberFormatException exception) {
+            throw new IllegalArgumentException(String.format("%s does not hold an amount of money.", file), exception);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+/**
+ * Where a CashRegister keeps the store's amount of money, chosen once when the register is created:
+ * <ul>
+ *     <li>FileRegisterStorage rewrites the database file with every payment, see RegisterStateFile.</li>
+ *     <li>MappedRegisterStorage keeps the database file mapped, so a payment is a store into memory, forced to disk
+ *     only if asked for.</li>
+ *     <li>PaymentLog appends every payment to a write-ahead log next to the database file.</li>
+ *     <li>InMemoryRegisterStorage keeps the amount in memory only, for tests and load tests without disk I/O.</li>
+ * </ul>
+ * A storage belongs to one register, which may call it from several threads at once.
+ */
+public interface RegisterStorage extends AutoCloseable {
+
+    /**
+     * @return the amount of money stored, in minor units.
+     */
+    long getBalance();
+
+    /**
+     * Adds a payment of [amountInMinorUnit] to the amount of money stored.
+     *
+     * @return the amount of money stored after the payment.
+     * @throws IllegalArgumentException if the amount is negative, or the storage is closed or cannot be written.
+     */
+    long recordPayment(long amountInMinorUnit);
+
+    /**
+     * @return the database file the amount of money is kept in, or null if it is kept in no file.
+     */
+    String getDatabaseFileName();
+
+    /**
+     * Releases the storage, after making every payment recorded so far as durable as the storage makes them.
+     * Closing a closed storage does nothing.
+     */
+    @Override
+    void close();
+}
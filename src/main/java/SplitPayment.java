@@ -0,0 +1,123 @@
+/**
+ * One payment made with several tenders: part by gift card, part by card and the rest in cash.
+ * <p>
+ * CashRegister.pay(splitPayment, change) takes the whole payment as one transaction: every tender is validated
+ * first, change is made once for the cash part, and the register is updated with the total cost in one write to
+ * its database file or payment log, so a crash never leaves half of a payment applied.
+ * <p>
+ * To create a split payment, see the SplitPaymentBuilder class.
+ */
+public class SplitPayment {
+
+    private final long costInMinorUnit;
+    private final long giftCardAmountInMinorUnit;
+    private final long cardAmountInMinorUnit;
+    private final int[] cashTender;
+
+    private SplitPayment(SplitPaymentBuilder builder) {
+        this.costInMinorUnit = builder.costInMinorUnit;
+        this.giftCardAmountInMinorUnit = builder.giftCardAmountInMinorUnit;
+        this.cardAmountInMinorUnit = builder.cardAmountInMinorUnit;
+        this.cashTender = builder.cashTender.clone();
+    }
+
+    public long getCostInMinorUnit() {
+        return costInMinorUnit;
+    }
+
+    public long getGiftCardAmountInMinorUnit() {
+        return giftCardAmountInMinorUnit;
+    }
+
+    public long getCardAmountInMinorUnit() {
+        return cardAmountInMinorUnit;
+    }
+
+    /**
+     * @return the part of the cost that is paid in cash.
+     */
+    public long getCashPartInMinorUnit() {
+        return costInMinorUnit - giftCardAmountInMinorUnit - cardAmountInMinorUnit;
+    }
+
+    /**
+     * @return the cash the customer hands over, which may be more than the cash part.
+     */
+    public long getCashTenderedInMinorUnit() {
+        return CashDrawer.valueOf(cashTender);
+    }
+
+    /**
+     * The number of pieces of each denomination handed over, indexed by CashDrawer.indexOf(denomination).
+     */
+    int[] getCashTender() {
+        return cashTender;
+    }
+
+    public static class SplitPaymentBuilder {
+
+        private final long costInMinorUnit;
+        private long giftCardAmountInMinorUnit;
+        private long cardAmountInMinorUnit;
+        private final int[] cashTender = new int[CashDrawer.NUMBER_OF_DENOMINATIONS];
+
+        /**
+         * @param costInMinorUnit the cost of the purchase, to be covered by the tenders added.
+         */
+        public SplitPaymentBuilder(long costInMinorUnit) {
+            this.costInMinorUnit = costInMinorUnit;
+        }
+
+        /**
+         * Adds [amountInMinorUnit] paid by gift card. Several gift cards add up.
+         */
+        public SplitPaymentBuilder addGiftCard(long amountInMinorUnit) {
+            validateAmount(amountInMinorUnit);
+            giftCardAmountInMinorUnit += amountInMinorUnit;
+            return this;
+        }
+
+        /**
+         * Adds [amountInMinorUnit] paid by card.
+         */
+        public SplitPaymentBuilder addCard(long amountInMinorUnit) {
+            validateAmount(amountInMinorUnit);
+            cardAmountInMinorUnit += amountInMinorUnit;
+            return this;
+        }
+
+        /**
+         * Adds [count] pieces of [cash] handed over.
+         */
+        public SplitPaymentBuilder addCash(CashMoney cash, int count) {
+            if (count < 0) {
+                throw new IllegalArgumentException("You cannot pay with a negative number of bills");
+            }
+            cashTender[CashDrawer.indexOf(cash.getCashMoneyDenomination())] += count;
+            return this;
+        }
+
+        /**
+         * @throws IllegalArgumentException if the cost is negative, the gift cards and card together pay more than
+         * the cost, since there is no change on cards, or the cash does not cover the rest.
+         */
+        public SplitPayment build() {
+            if (costInMinorUnit < 0) {
+                throw new IllegalArgumentException("You cannot have negative money");
+            }
+            if (giftCardAmountInMinorUnit + cardAmountInMinorUnit > costInMinorUnit) {
+                throw new IllegalArgumentException("Gift cards and card pay more than the cost");
+            }
+            if (CashDrawer.valueOf(cashTender) < costInMinorUnit - giftCardAmountInMinorUnit - cardAmountInMinorUnit) {
+                throw new IllegalArgumentException("You have not paid enough money");
+            }
+            return new SplitPayment(this);
+        }
+
+        private static void validateAmount(long amountInMinorUnit) {
+            if (amountInMinorUnit < 0) {
+                throw new IllegalArgumentException("You cannot pay a negative amount");
+            }
+        }
+    }
+}
@@ -0,0 +1,104 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The amounts of money taken by a number of lanes, one counter per lane, for CashRegisterGroup.
+ * <p>
+ * Like a LongAdder, the counters are spread out so that each lane adds to its own cache line, and a payment never
+ * waits for a payment on another lane. Unlike a LongAdder, sum() is consistent: it collects every counter twice,
+ * and since counters only grow, two equal collects mean that the counters all had those values at once, between
+ * the collects. It collects again while payments keep changing the counters, at most MAX_COLLECT_ATTEMPTS times;
+ * then it holds new payments back until two collects agree, which only the payments already under way can delay,
+ * so sum() always finishes.
+ */
+class StripedTotals {
+
+    private static final VarHandle TOTAL = MethodHandles.arrayElementVarHandle(long[].class);
+
+    /**
+     * 128 bytes between two counters, which keeps them on different cache lines, including adjacent-line prefetch.
+     */
+    private static final int STRIDE = 16;
+
+    private static final int MAX_COLLECT_ATTEMPTS = 8;
+
+    private final long[] totals;
+    private final int numberOfLanes;
+
+    /**
+     * The number of sum() calls holding new payments back. Payments only read it, so it stays in their caches.
+     */
+    private final AtomicInteger holdingSums = new AtomicInteger();
+
+    StripedTotals(int numberOfLanes) {
+        if (numberOfLanes <= 0) {
+            throw new IllegalArgumentException(String.format("%d is not a valid number of lanes.", numberOfLanes));
+        }
+        this.numberOfLanes = numberOfLanes;
+        this.totals = new long[(numberOfLanes + 1) * STRIDE];
+    }
+
+    int numberOfLanes() {
+        return numberOfLanes;
+    }
+
+    /**
+     * Adds [amountInMinorUnit], which must not be negative, to the total of [lane].
+     */
+    void add(int lane, long amountInMinorUnit) {
+        while (holdingSums.get() > 0) {
+            Thread.onSpinWait();
+        }
+        TOTAL.getAndAdd(totals, slot(lane), amountInMinorUnit);
+    }
+
+    long get(int lane) {
+        return (long) TOTAL.getVolatile(totals, slot(lane));
+    }
+
+    /**
+     * @return the sum of the totals of every lane at one moment during the call.
+     */
+    long sum() {
+        long[] previous = new long[numberOfLanes];
+        long[] current = new long[numberOfLanes];
+        collect(previous);
+        boolean holding = false;
+        try {
+            for (int attempt = 1; ; attempt++) {
+                collect(current);
+                if (Arrays.equals(previous, current)) {
+                    long sum = 0;
+                    for (long total : current) {
+                        sum += total;
+                    }
+                    return sum;
+                }
+                if (attempt == MAX_COLLECT_ATTEMPTS) {
+                    holdingSums.incrementAndGet();
+                    holding = true;
+                }
+                long[] swap = previous;
+                previous = current;
+                current = swap;
+            }
+        } finally {
+            if (holding) {
+                holdingSums.decrementAndGet();
+            }
+        }
+    }
+
+    private void collect(long[] into) {
+        for (int lane = 0; lane < numberOfLanes; lane++) {
+            into[lane] = get(lane);
+        }
+    }
+
+    private int slot(int lane) {
+        // The first stride is left empty, so the first counter is not next to the array header.
+        return (lane + 1) * STRIDE;
+    }
+}
@@ -0,0 +1,107 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestCardAuthorizer {
+
+    @Test
+    void approvesPayment_when_gatewayFailsBeforeLastAttempt() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        CardGateway gateway = new RecordingGateway((requestId, amount) -> attempts.incrementAndGet() < 3
+                ? CompletableFuture.failedFuture(new IllegalStateException("Gateway unavailable."))
+                : CompletableFuture.completedFuture(true));
+        try (CardAuthorizer authorizer = new CardAuthorizer(gateway, 4, 1000, 3)) {
+            assertTrue(authorizer.authorize(250_00).get(5, TimeUnit.SECONDS));
+            assertEquals(3, attempts.get());
+        }
+    }
+
+    @Test
+    void failsPayment_when_gatewayNeverAnswers() {
+        try (LocalCardGateway gateway = new LocalCardGateway.LocalCardGatewayBuilder().setNoAnswerRate(1).build();
+             CardAuthorizer authorizer = new CardAuthorizer(gateway, 4, 20, 2)) {
+            ExecutionException exception = assertThrows(ExecutionException.class,
+                    () -> authorizer.authorize(250_00).get(5, TimeUnit.SECONDS));
+            assertTrue(exception.getCause() instanceof TimeoutException);
+            assertEquals(2, gateway.getNumberOfRequests());
+        }
+    }
+
+    @Test
+    void reversesPayment_when_givingUpOnRequestThatMayStillBeApproved() {
+        RecordingGateway gateway = new RecordingGateway((requestId, amount) -> new CompletableFuture<>());
+        try (CardAuthorizer authorizer = new CardAuthorizer(gateway, 4, 20, 2)) {
+            assertThrows(ExecutionException.class, () -> authorizer.authorize(250_00).get(5, TimeUnit.SECONDS));
+            assertEquals(List.of(1L), gateway.reversedRequestIds);
+        }
+    }
+
+    @Test
+    void reversesApprovedPayment_when_saleCannotBeRecorded() {
+        RecordingGateway gateway = new RecordingGateway((requestId, amount) -> CompletableFuture.completedFuture(true));
+        try (CardAuthorizer authorizer = new CardAuthorizer(gateway, 4, 1000, 3)) {
+            ExecutionException exception = assertThrows(ExecutionException.class, () -> authorizer.authorize(250_00, () -> {
+                throw new IllegalArgumentException("Storage is closed.");
+            }).get(5, TimeUnit.SECONDS));
+            assertTrue(exception.getCause() instanceof IllegalArgumentException);
+            assertEquals(List.of(1L), gateway.reversedRequestIds);
+        }
+    }
+
+    @Test
+    void sendsNoMoreThanMaxRequestsInFlight_when_manyPaymentsAreAuthorizedAtOnce() throws Exception {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger mostInFlight = new AtomicInteger();
+        try (LocalCardGateway localGateway = new LocalCardGateway.LocalCardGatewayBuilder().setLatencyInMs(5).build()) {
+            CardGateway gateway = new RecordingGateway((requestId, amount) -> {
+                mostInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                return localGateway.authorize(requestId, amount).whenComplete((approved, failure) -> inFlight.decrementAndGet());
+            });
+            try (CardAuthorizer authorizer = new CardAuthorizer(gateway, 3, 1000, 1)) {
+                CompletableFuture<?>[] payments = new CompletableFuture<?>[20];
+                for (int i = 0; i < payments.length; i++) {
+                    payments[i] = authorizer.authorize(100_00);
+                }
+                CompletableFuture.allOf(payments).get(5, TimeUnit.SECONDS);
+            }
+        }
+        assertTrue(mostInFlight.get() <= 3);
+    }
+
+    /**
+     * A gateway answering with [answers], and recording the requests it is asked to reverse.
+     */
+    private static class RecordingGateway implements CardGateway {
+
+        private final Answers answers;
+        private final List<Long> reversedRequestIds = new CopyOnWriteArrayList<>();
+
+        private RecordingGateway(Answers answers) {
+            this.answers = answers;
+        }
+
+        @Override
+        public CompletableFuture<Boolean> authorize(long requestId, long amountInMinorUnit) {
+            return answers.authorize(requestId, amountInMinorUnit);
+        }
+
+        @Override
+        public CompletableFuture<Void> reverse(long requestId) {
+            reversedRequestIds.add(requestId);
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+
+    private interface Answers {
+
+        CompletableFuture<Boolean> authorize(long requestId, long amountInMinorUnit);
+    }
+}
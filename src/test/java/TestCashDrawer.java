@@ -0,0 +1,61 @@
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestCashDrawer {
+
+    private final int[] noTender = new int[CashDrawer.NUMBER_OF_DENOMINATIONS];
+    private final int[] change = new int[CashDrawer.NUMBER_OF_DENOMINATIONS];
+
+    @Test
+    void givesChangeInSmallerPieces_when_drawerHasNoPieceOfTheLargestDenominationWanted() {
+        CashDrawer drawer = new CashDrawer(0, 0, 0, 0, 0, 3, 0, 0, 0, 0, 0);
+
+        assertTrue(drawer.exchange(noTender, 60_00, change));
+        assertEquals(3, change[CashDrawer.indexOf(20_00)]);
+        assertEquals(60_00, CashDrawer.valueOf(change));
+        assertEquals(0, drawer.getTotal());
+    }
+
+    @Test
+    void givesChangeWithoutLargestDenomination_when_greedyChangeWouldRunOutAfterTakingIt() {
+        CashDrawer drawer = new CashDrawer(0, 0, 0, 0, 1, 3, 0, 0, 0, 0, 0);
+
+        assertTrue(drawer.exchange(noTender, 60_00, change));
+        assertEquals(0, change[CashDrawer.indexOf(50_00)]);
+        assertEquals(3, change[CashDrawer.indexOf(20_00)]);
+        assertEquals(1, drawer.getCount(50_00));
+        assertEquals(0, drawer.getCount(20_00));
+    }
+
+    @Test
+    void givesOreCoinsForWholeKronor_when_drawerHasNoKronaCoins() {
+        CashDrawer drawer = new CashDrawer(0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 300);
+
+        assertTrue(drawer.exchange(noTender, 3_00, change));
+        assertEquals(300, change[CashDrawer.indexOf(1)]);
+        assertEquals(0, drawer.getTotal());
+    }
+
+    @Test
+    void givesFewestOreCoins_when_onlyPartOfTheKronorCanBeMadeWithKronaCoins() {
+        CashDrawer drawer = new CashDrawer(0, 0, 0, 0, 0, 0, 0, 0, 1, 0, 350);
+
+        assertTrue(drawer.exchange(noTender, 3_25, change));
+        assertEquals(1, change[CashDrawer.indexOf(2_00)]);
+        assertEquals(125, change[CashDrawer.indexOf(1)]);
+        assertEquals(225, drawer.getCount(1));
+    }
+
+    @Test
+    void leavesDrawerAsItWas_when_noCombinationOfPiecesMakesTheChange() {
+        CashDrawer drawer = new CashDrawer(0, 0, 0, 0, 0, 3, 0, 0, 0, 0, 0);
+        int[] tender = new int[CashDrawer.NUMBER_OF_DENOMINATIONS];
+        tender[CashDrawer.indexOf(100_00)] = 1;
+
+        assertFalse(drawer.exchange(tender, 50_00, change));
+        assertEquals(60_00, drawer.getTotal());
+        assertEquals(0, drawer.getCount(100_00));
+        assertEquals(0, CashDrawer.valueOf(change));
+    }
+}
@@ -17,6 +17,14 @@ public class TestCashMoney {
         assertEquals(VALID_DENOMINATION, cashMoney.getCashMoneyDenomination());
     }
 
+    @Test
+    public void valueOfReturnsSameInstanceForSameDenomination(){
+        CashMoney cashMoney = CashMoney.valueOf(VALID_DENOMINATION);
+        assertSame(cashMoney, CashMoney.valueOf(VALID_DENOMINATION));
+        assertEquals(new CashMoney(VALID_DENOMINATION), cashMoney);
+        assertThrows(IllegalArgumentException.class, () -> CashMoney.valueOf(INVALID_DENOMINATION));
+    }
+
     @Test
     public void toStringReturnsCorrectlyFormattedString(){
         CashMoney cashMoney = new CashMoney(VALID_DENOMINATION);
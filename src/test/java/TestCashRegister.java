@@ -3,7 +3,13 @@ import org.junit.jupiter.api.Test;
 import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.HashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -76,7 +82,7 @@ public class TestCashRegister {
     public void payByCardShouldIncrementValueInAmountOfMoneyInStoreByCorrectAmount(){
         CashRegister cashRegister = new CashRegister(VALID_DATABASE_FILE);
         long amount = calculateExpectedAmountOfMoneyAfterPurchase(cashRegister);
-        cashRegister.payByCard(VALID_PAYMENT_AMOUNT, VALID_DATABASE_FILE);
+        cashRegister.payByCard(VALID_PAYMENT_AMOUNT);
         long amountOfMoneyInStore = cashRegister.getAmountOfMoneyInStore();
         assertEquals(amount, amountOfMoneyInStore);
         rollBackTestDatabaseUpdate("200000", VALID_DATABASE_FILE);
@@ -88,7 +94,7 @@ public class TestCashRegister {
         long prePurchaseAmountOfMoneyInStore = cashRegister.getAmountOfMoneyInStore();
         long expectedAmount = prePurchaseAmountOfMoneyInStore + (VALID_PAYMENT_AMOUNT * 4);
         for(int i = 0; i < 4; i++){
-            cashRegister.payByCard(VALID_PAYMENT_AMOUNT,VALID_DATABASE_FILE);
+            cashRegister.payByCard(VALID_PAYMENT_AMOUNT);
         }
         long amountOfMoneyInStore = cashRegister.getAmountOfMoneyInStore();
         assertEquals(expectedAmount, amountOfMoneyInStore);
@@ -107,7 +113,15 @@ public class TestCashRegister {
     @Test
     public void payByCardShouldThrowExceptionIfTryingToPayWithNegativeAmount(){
         CashRegister cashRegister = new CashRegister(VALID_DATABASE_FILE);
-        assertThrows(IllegalArgumentException.class, () -> cashRegister.payByCard(INVALID_PAYMENT_AMOUNT,VALID_DATABASE_FILE));
+        assertThrows(IllegalArgumentException.class, () -> cashRegister.payByCard(INVALID_PAYMENT_AMOUNT));
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void payByCardShouldThrowExceptionAndRecordNothingIfFileIsNotTheRegistersDatabaseFile(){
+        CashRegister cashRegister = new CashRegister(VALID_DATABASE_FILE);
+        assertThrows(IllegalArgumentException.class, () -> cashRegister.payByCard(VALID_PAYMENT_AMOUNT, VALID_DATABASE_FILE_AMOUNT_ZERO));
+        assertEquals(VALID_AMOUNT_READ_FROM_DATABASE_FILE, cashRegister.getAmountOfMoneyInStore());
     }
 
     @Test
@@ -125,7 +139,7 @@ public class TestCashRegister {
         long amount = calculateExpectedAmountOfMoneyAfterPurchase(cashRegister);
         HashMap<CashMoney, Integer> cashMoneyPayment = new HashMap<>();
         addExactPaymentAmountToWallet(cashMoneyPayment);
-        cashRegister.payByCash(cashMoneyPayment, VALID_PAYMENT_AMOUNT, VALID_DATABASE_FILE);
+        cashRegister.payByCash(cashMoneyPayment, VALID_PAYMENT_AMOUNT);
         assertEquals(amount, cashRegister.getAmountOfMoneyInStore());
         rollBackTestDatabaseUpdate("200000", VALID_DATABASE_FILE);
     }
@@ -136,7 +150,7 @@ public class TestCashRegister {
         long amount = calculateExpectedAmountOfMoneyAfterPurchase(cashRegister);
         HashMap<CashMoney, Integer> cashMoneyPayment = new HashMap<>();
         addMoreThanPaymentAmountToWallet(cashMoneyPayment);
-        cashRegister.payByCash(cashMoneyPayment, VALID_PAYMENT_AMOUNT, VALID_DATABASE_FILE);
+        cashRegister.payByCash(cashMoneyPayment, VALID_PAYMENT_AMOUNT);
         assertEquals(amount, cashRegister.getAmountOfMoneyInStore());
         rollBackTestDatabaseUpdate("200000", VALID_DATABASE_FILE);
     }
@@ -146,7 +160,7 @@ public class TestCashRegister {
         CashRegister cashRegister = new CashRegister(VALID_DATABASE_FILE);
         HashMap<CashMoney, Integer> cashMoneyPayment = new HashMap<>();
         addLessThanPaymentAmountToWallet(cashMoneyPayment);
-        assertThrows(IllegalArgumentException.class, () -> cashRegister.payByCash(cashMoneyPayment, VALID_PAYMENT_AMOUNT, VALID_DATABASE_FILE));
+        assertThrows(IllegalArgumentException.class, () -> cashRegister.payByCash(cashMoneyPayment, VALID_PAYMENT_AMOUNT));
     }
 
     @Test
@@ -155,7 +169,7 @@ public class TestCashRegister {
         long expectedChange = 2000;
         HashMap<CashMoney, Integer> cashMoneyPayment = new HashMap<>();
         addMoreThanPaymentAmountToWallet(cashMoneyPayment);
-        HashMap<CashMoney, Integer> returnedChange = cashRegister.payByCash(cashMoneyPayment, VALID_PAYMENT_AMOUNT, VALID_DATABASE_FILE);
+        HashMap<CashMoney, Integer> returnedChange = cashRegister.payByCash(cashMoneyPayment, VALID_PAYMENT_AMOUNT);
         long actualChange = getAmountOfMoneyInCash(returnedChange);
         assertEquals(expectedChange, actualChange);
         rollBackTestDatabaseUpdate("200000", VALID_DATABASE_FILE);
@@ -168,7 +182,7 @@ public class TestCashRegister {
         expectedReturnWallet.put(new CashMoney(2000), 1);
         HashMap<CashMoney, Integer> cashMoneyPayment = new HashMap<>();
         addMoreThanPaymentAmountToWallet(cashMoneyPayment);
-        HashMap<CashMoney, Integer> returnedChange = cashRegister.payByCash(cashMoneyPayment, VALID_PAYMENT_AMOUNT, VALID_DATABASE_FILE);
+        HashMap<CashMoney, Integer> returnedChange = cashRegister.payByCash(cashMoneyPayment, VALID_PAYMENT_AMOUNT);
         assertEquals(expectedReturnWallet, returnedChange);
         rollBackTestDatabaseUpdate("200000", VALID_DATABASE_FILE);
     }
@@ -177,12 +191,214 @@ public class TestCashRegister {
     public void payByCashShouldReturnAmountOfMoneyInLeastAmountOfCashWhenPaymentIsLarge(){
         CashRegister cashRegister = new CashRegister(VALID_DATABASE_FILE);
         HashMap<CashMoney, Integer> paymentWallet = createPaymentWalletForLargeAmountOfMoney();
-        HashMap<CashMoney, Integer> returnedChange = cashRegister.payByCash(paymentWallet, VALID_PAYMENT_AMOUNT, VALID_DATABASE_FILE);
+        HashMap<CashMoney, Integer> returnedChange = cashRegister.payByCash(paymentWallet, VALID_PAYMENT_AMOUNT);
         HashMap<CashMoney, Integer> expectedReturnWallet = createExpectedReturnWalletForLargeAmountOfMoney();
         assertEquals(expectedReturnWallet, returnedChange);
         rollBackTestDatabaseUpdate("200000", VALID_DATABASE_FILE);
     }
 
+    @Test
+    public void paymentsInPaymentLogAreRecoveredWhenRegisterIsReopened() throws IOException {
+        Path databaseFile = Files.createTempFile("cashRegisterMoney", ".txt");
+        Path logFile = Path.of(databaseFile + ".wal");
+        try {
+            Files.writeString(databaseFile, "200000");
+            try (CashRegister cashRegister = new CashRegister(databaseFile.toString(), PaymentLog.Durability.BATCHED)) {
+                cashRegister.payByCard(VALID_PAYMENT_AMOUNT);
+                HashMap<CashMoney, Integer> cashMoneyPayment = new HashMap<>();
+                addExactPaymentAmountToWallet(cashMoneyPayment);
+                cashRegister.payByCash(cashMoneyPayment, VALID_PAYMENT_AMOUNT);
+            }
+            assertEquals(VALID_AMOUNT_READ_FROM_DATABASE_FILE, new CashRegister(databaseFile.toString()).getAmountOfMoneyInStore());
+            try (CashRegister cashRegister = new CashRegister(databaseFile.toString(), PaymentLog.Durability.PER_PAYMENT)) {
+                assertEquals(VALID_AMOUNT_READ_FROM_DATABASE_FILE + 2 * VALID_PAYMENT_AMOUNT, cashRegister.getAmountOfMoneyInStore());
+            }
+        } finally {
+            Files.deleteIfExists(logFile);
+            Files.deleteIfExists(databaseFile);
+        }
+    }
+
+    @Test
+    public void paymentCutShortInPaymentLogIsIgnoredWhenRegisterIsReopened() throws IOException {
+        Path databaseFile = Files.createTempFile("cashRegisterMoney", ".txt");
+        Path logFile = Path.of(databaseFile + ".wal");
+        try {
+            Files.writeString(databaseFile, "200000");
+            try (CashRegister cashRegister = new CashRegister(databaseFile.toString(), PaymentLog.Durability.PER_PAYMENT)) {
+                cashRegister.payByCard(VALID_PAYMENT_AMOUNT);
+                cashRegister.payByCard(VALID_PAYMENT_AMOUNT);
+            }
+            try (FileChannel log = FileChannel.open(logFile, StandardOpenOption.WRITE)) {
+                log.truncate(log.size() - 1);
+            }
+            try (CashRegister cashRegister = new CashRegister(databaseFile.toString(), PaymentLog.Durability.PER_PAYMENT)) {
+                assertEquals(VALID_AMOUNT_READ_FROM_DATABASE_FILE + VALID_PAYMENT_AMOUNT, cashRegister.getAmountOfMoneyInStore());
+                cashRegister.payByCard(VALID_PAYMENT_AMOUNT);
+            }
+            try (CashRegister cashRegister = new CashRegister(databaseFile.toString(), PaymentLog.Durability.ASYNC)) {
+                assertEquals(VALID_AMOUNT_READ_FROM_DATABASE_FILE + 2 * VALID_PAYMENT_AMOUNT, cashRegister.getAmountOfMoneyInStore());
+            }
+        } finally {
+            Files.deleteIfExists(logFile);
+            Files.deleteIfExists(databaseFile);
+        }
+    }
+
+    @Test
+    public void payByCashGivesChangeFromWhatIsInTheDrawer() throws IOException {
+        Path databaseFile = Files.createTempFile("cashRegisterMoney", ".txt");
+        Files.writeString(databaseFile, "0");
+        CashDrawer drawer = new CashDrawer(0, 0, 0, 0, 1, 0, 3, 0, 0, 0, 0);
+        try (CashRegister cashRegister = new CashRegister(databaseFile.toString(), PaymentLog.Durability.PER_PAYMENT, drawer)) {
+            HashMap<CashMoney, Integer> cashMoneyPayment = new HashMap<>();
+            addMoreThanPaymentAmountToWallet(cashMoneyPayment);
+            Change change = cashRegister.payByCashForChange(cashMoneyPayment, VALID_PAYMENT_AMOUNT - 4000);
+
+            assertEquals(6000, change.getAmountInMinorUnit());
+            assertEquals(1, change.getCount(5000));
+            assertEquals(1, change.getCount(1000));
+            assertEquals(2, drawer.getCount(1000));
+            assertEquals(1, drawer.getCount(2000));
+            assertEquals(2, drawer.getCount(10_000));
+        } finally {
+            Files.deleteIfExists(Path.of(databaseFile + ".wal"));
+            Files.deleteIfExists(databaseFile);
+        }
+    }
+
+    @Test
+    public void payByCashThrowsExceptionAndLeavesDrawerAsItWasWhenDrawerCannotMakeChange() throws IOException {
+        Path databaseFile = Files.createTempFile("cashRegisterMoney", ".txt");
+        Files.writeString(databaseFile, "0");
+        CashDrawer drawer = new CashDrawer(0, 0, 0, 0, 0, 0, 0, 5, 0, 0, 0);
+        try (CashRegister cashRegister = new CashRegister(databaseFile.toString(), PaymentLog.Durability.PER_PAYMENT, drawer)) {
+            HashMap<CashMoney, Integer> cashMoneyPayment = new HashMap<>();
+            addMoreThanPaymentAmountToWallet(cashMoneyPayment);
+
+            assertThrows(IllegalArgumentException.class, () -> cashRegister.payByCash(cashMoneyPayment, VALID_PAYMENT_AMOUNT - 300));
+            assertEquals(2500, drawer.getTotal());
+            assertEquals(0, drawer.getCount(10_000));
+            assertEquals(0, cashRegister.getAmountOfMoneyInStore());
+        } finally {
+            Files.deleteIfExists(Path.of(databaseFile + ".wal"));
+            Files.deleteIfExists(databaseFile);
+        }
+    }
+
+    @Test
+    public void payByCashWithTenderVectorWritesChangeIntoChangeVector(){
+        CashRegister cashRegister = new CashRegister(VALID_DATABASE_FILE);
+        long amount = calculateExpectedAmountOfMoneyAfterPurchase(cashRegister);
+        int[] tender = new int[CashDrawer.NUMBER_OF_DENOMINATIONS];
+        tender[CashDrawer.indexOf(10_000)] = 2;
+        tender[CashDrawer.indexOf(5_000)] = 1;
+        tender[CashDrawer.indexOf(2_000)] = 1;
+        int[] change = new int[CashDrawer.NUMBER_OF_DENOMINATIONS];
+        cashRegister.payByCash(tender, VALID_PAYMENT_AMOUNT, change);
+        assertEquals(1, change[CashDrawer.indexOf(2_000)]);
+        assertEquals(2000, CashDrawer.valueOf(change));
+        assertEquals(amount, cashRegister.getAmountOfMoneyInStore());
+        rollBackTestDatabaseUpdate("200000", VALID_DATABASE_FILE);
+    }
+
+    @Test
+    public void splitPaymentIsWrittenToPaymentLogOnceWithChangeForCashPart() throws IOException {
+        Path databaseFile = Files.createTempFile("cashRegisterMoney", ".txt");
+        Path logFile = Path.of(databaseFile + ".wal");
+        Files.writeString(databaseFile, "0");
+        try (CashRegister cashRegister = new CashRegister(databaseFile.toString(), PaymentLog.Durability.PER_PAYMENT)) {
+            long logSizeBeforePayment = Files.size(logFile);
+            SplitPayment payment = new SplitPayment.SplitPaymentBuilder(VALID_PAYMENT_AMOUNT)
+                    .addGiftCard(100_00)
+                    .addCard(100_00)
+                    .addCash(CashMoney.valueOf(100_00), 1)
+                    .build();
+            int[] change = new int[CashDrawer.NUMBER_OF_DENOMINATIONS];
+            cashRegister.pay(payment, change);
+
+            assertEquals(50_00, CashDrawer.valueOf(change));
+            assertEquals(VALID_PAYMENT_AMOUNT, cashRegister.getAmountOfMoneyInStore());
+            assertEquals(Long.BYTES + Integer.BYTES, Files.size(logFile) - logSizeBeforePayment);
+        } finally {
+            Files.deleteIfExists(logFile);
+            Files.deleteIfExists(databaseFile);
+        }
+    }
+
+    @Test
+    public void payByCardAsyncOnlyIncrementsAmountOfMoneyInStoreWhenPaymentIsApproved() throws Exception {
+        Path databaseFile = Files.createTempFile("cashRegisterMoney", ".txt");
+        Files.writeString(databaseFile, "0");
+        try (CashRegister cashRegister = new CashRegister(databaseFile.toString(), PaymentLog.Durability.BATCHED);
+             LocalCardGateway approvingGateway = new LocalCardGateway.LocalCardGatewayBuilder().setLatencyInMs(1).build();
+             LocalCardGateway decliningGateway = new LocalCardGateway.LocalCardGatewayBuilder().setDeclineRate(1).build();
+             CardAuthorizer approvingAuthorizer = new CardAuthorizer(approvingGateway, 2, 1000, 1);
+             CardAuthorizer decliningAuthorizer = new CardAuthorizer(decliningGateway, 2, 1000, 1)) {
+            assertTrue(cashRegister.payByCardAsync(VALID_PAYMENT_AMOUNT, approvingAuthorizer).get(5, TimeUnit.SECONDS));
+            assertFalse(cashRegister.payByCardAsync(VALID_PAYMENT_AMOUNT, decliningAuthorizer).get(5, TimeUnit.SECONDS));
+            assertEquals(VALID_PAYMENT_AMOUNT, cashRegister.getAmountOfMoneyInStore());
+        } finally {
+            Files.deleteIfExists(Path.of(databaseFile + ".wal"));
+            Files.deleteIfExists(databaseFile);
+        }
+    }
+
+    @Test
+    public void payByCardAsyncReversesApprovedPaymentWhenItCannotBeRecorded() throws Exception {
+        Path databaseFile = Files.createTempFile("cashRegisterMoney", ".txt");
+        Files.writeString(databaseFile, "0");
+        CashRegister cashRegister = new CashRegister(databaseFile.toString(), PaymentLog.Durability.PER_PAYMENT);
+        cashRegister.close();
+        try (LocalCardGateway gateway = new LocalCardGateway.LocalCardGatewayBuilder().setLatencyInMs(1).build();
+             CardAuthorizer authorizer = new CardAuthorizer(gateway, 2, 1000, 1)) {
+            assertThrows(ExecutionException.class, () -> cashRegister.payByCardAsync(VALID_PAYMENT_AMOUNT, authorizer).get(5, TimeUnit.SECONDS));
+            assertEquals(1, gateway.getNumberOfReversals());
+            assertEquals(0, cashRegister.getAmountOfMoneyInStore());
+        } finally {
+            Files.deleteIfExists(Path.of(databaseFile + ".wal"));
+            Files.deleteIfExists(databaseFile);
+        }
+    }
+
+    @Test
+    public void registerWithInMemoryStorageTakesPaymentsWithoutDatabaseFile(){
+        try (CashRegister cashRegister = new CashRegister(new InMemoryRegisterStorage(VALID_AMOUNT_READ_FROM_DATABASE_FILE))) {
+            cashRegister.payByCard(VALID_PAYMENT_AMOUNT);
+            HashMap<CashMoney, Integer> cashMoneyPayment = new HashMap<>();
+            addExactPaymentAmountToWallet(cashMoneyPayment);
+            cashRegister.payByCash(cashMoneyPayment, VALID_PAYMENT_AMOUNT);
+
+            assertEquals(VALID_AMOUNT_READ_FROM_DATABASE_FILE + 2 * VALID_PAYMENT_AMOUNT, cashRegister.getAmountOfMoneyInStore());
+            assertThrows(IllegalArgumentException.class, () -> cashRegister.payByCard(INVALID_PAYMENT_AMOUNT));
+        }
+    }
+
+    @Test
+    public void paymentsInMappedStorageAreReadWhenRegisterIsReopened() throws IOException {
+        Path textFile = Files.createTempFile("cashRegisterMoney", ".txt");
+        Path databaseFile = null;
+        try {
+            Files.writeString(textFile, "200000");
+            assertThrows(IllegalArgumentException.class, () -> new MappedRegisterStorage(textFile.toString(), false));
+            databaseFile = Path.of(FileRegisterStorage.migrateToStateFile(textFile.toString()));
+            try (CashRegister cashRegister = new CashRegister(new MappedRegisterStorage(databaseFile.toString(), false))) {
+                cashRegister.payByCard(VALID_PAYMENT_AMOUNT);
+                cashRegister.payByCard(VALID_PAYMENT_AMOUNT);
+            }
+            assertEquals(VALID_AMOUNT_READ_FROM_DATABASE_FILE + 2 * VALID_PAYMENT_AMOUNT, new CashRegister(databaseFile.toString()).getAmountOfMoneyInStore());
+            try (CashRegister cashRegister = new CashRegister(new MappedRegisterStorage(databaseFile.toString(), true))) {
+                cashRegister.payByCard(VALID_PAYMENT_AMOUNT);
+                assertEquals(VALID_AMOUNT_READ_FROM_DATABASE_FILE + 3 * VALID_PAYMENT_AMOUNT, cashRegister.getAmountOfMoneyInStore());
+            }
+            assertEquals("200000", Files.readString(textFile));
+        } finally {
+            if (databaseFile != null) {
+                Files.deleteIfExists(databaseFile);
+            }
+            Files.deleteIfExists(textFile);
+        }
+    }
 
     private void rollBackTestDatabaseUpdate(String amountInFile, String fileName){
         try{
@@ -199,7 +415,7 @@ public class TestCashRegister {
         CashRegister cashRegister = new CashRegister(filename);
         long prePurchaseAmountOfMoneyInStore = cashRegister.getAmountOfMoneyInStore();
         long expectedAmount = prePurchaseAmountOfMoneyInStore + VALID_PAYMENT_AMOUNT;
-        cashRegister.payByCard(VALID_PAYMENT_AMOUNT,filename);
+        cashRegister.payByCard(VALID_PAYMENT_AMOUNT);
         CashRegister cashRegisterAfterPurchase = new CashRegister(filename);
         long amountOfMoneyInStore = cashRegisterAfterPurchase.getAmountOfMoneyInStore();
         return new long[]{expectedAmount, amountOfMoneyInStore};
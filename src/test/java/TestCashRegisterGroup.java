@@ -0,0 +1,65 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestCashRegisterGroup {
+
+    private static final long PAYMENT_AMOUNT = 250_00;
+
+    private Path registerDirectory;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        registerDirectory = Files.createTempDirectory("registers");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        try (Stream<Path> files = Files.list(registerDirectory)) {
+            for (Path file : files.toList()) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(registerDirectory);
+    }
+
+    @Test
+    void losesNoPayment_when_lanesPayAtOnce() throws InterruptedException {
+        int paymentsPerLane = 1000;
+        try (CashRegisterGroup group = new CashRegisterGroup(registerDirectory.toString(), 4, PaymentLog.Durability.ASYNC)) {
+            Thread[] lanes = new Thread[8];
+            for (int i = 0; i < lanes.length; i++) {
+                CashRegister register = group.getRegister(i % group.getNumberOfLanes());
+                lanes[i] = new Thread(() -> {
+                    for (int payment = 0; payment < paymentsPerLane; payment++) {
+                        register.payByCard(PAYMENT_AMOUNT);
+                    }
+                });
+                lanes[i].start();
+            }
+            for (Thread lane : lanes) {
+                lane.join();
+            }
+
+            assertEquals(lanes.length * paymentsPerLane * PAYMENT_AMOUNT, group.getAmountOfMoneyInStore());
+            assertEquals(2 * paymentsPerLane * PAYMENT_AMOUNT, group.getRegister(3).getAmountOfMoneyInStore());
+        }
+        try (CashRegisterGroup group = new CashRegisterGroup(registerDirectory.toString(), 4, PaymentLog.Durability.ASYNC)) {
+            assertEquals(8 * paymentsPerLane * PAYMENT_AMOUNT, group.getAmountOfMoneyInStore());
+        }
+    }
+
+    @Test
+    void throwsException_when_gettingRegisterOfLaneNotInGroup() {
+        try (CashRegisterGroup group = new CashRegisterGroup(registerDirectory.toString(), 2, PaymentLog.Durability.PER_PAYMENT)) {
+            assertThrows(IllegalArgumentException.class, () -> group.getRegister(2));
+        }
+    }
+}
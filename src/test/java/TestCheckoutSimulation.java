@@ -0,0 +1,73 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestCheckoutSimulation {
+
+    @Test
+    void sellsEveryScannedUnitExactlyOnce_when_manyLanesRunAtOnce() throws IOException {
+        InventoryBalance inventoryBalance = new InventoryBalance();
+        for (int i = 0; i < 20; i++) {
+            inventoryBalance.addProduct(new Product.ProductBuilder("Brand", "Product " + i)
+                    .setPrice(10_00 + i)
+                    .setAmount(50)
+                    .setVatRate(VAT.FOOD)
+                    .build());
+        }
+        Path balanceFile = Files.createTempFile("cashRegisterMoney", ".txt");
+        try {
+            Files.writeString(balanceFile, "0");
+            CashRegister cashRegister = new CashRegister(balanceFile.toString());
+            CheckoutSimulation.Report report = new CheckoutSimulation.SimulationBuilder(inventoryBalance, cashRegister)
+                    .setNumberOfLanes(8)
+                    .setCustomersPerLane(25)
+                    .setBasketSize(1, 10)
+                    .setCardPaymentShare(0.5)
+                    .build()
+                    .run();
+
+            int unitsLeft = 0;
+            for (int i = 0; i < 20; i++) {
+                unitsLeft += inventoryBalance.get("Brand", "Product " + i).getAmount();
+            }
+            assertEquals(200, report.getNumberOfCustomers());
+            assertEquals(20 * 50 - unitsLeft, report.getNumberOfScans());
+            assertEquals(report.getRevenueInMinorUnits(), cashRegister.getAmountOfMoneyInStore());
+            assertTrue(report.getLatencyNanos(CheckoutSimulation.Stage.CHECKOUT, 99.9)
+                    >= report.getLatencyNanos(CheckoutSimulation.Stage.CHECKOUT, 50));
+        } finally {
+            Files.deleteIfExists(balanceFile);
+        }
+    }
+
+    @Test
+    void countsFailedCashPayments_when_drawerCannotGiveChange() {
+        InventoryBalance inventoryBalance = new InventoryBalance();
+        inventoryBalance.addProduct(new Product.ProductBuilder("Brand", "Product").setPrice(10_00).setAmount(1000).setVatRate(VAT.FOOD).build());
+        CashRegister cashRegister = new CashRegister(new InMemoryRegisterStorage(), new CashDrawer(0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0));
+
+        CheckoutSimulation.Report report = new CheckoutSimulation.SimulationBuilder(inventoryBalance, cashRegister)
+                .setNumberOfLanes(2)
+                .setCustomersPerLane(10)
+                .setCardPaymentShare(0)
+                .build()
+                .run();
+
+        assertEquals(20, report.getNumberOfCustomers());
+        assertEquals(20, report.getNumberOfFailedCashPayments());
+        assertEquals(0, report.getRevenueInMinorUnits());
+        assertEquals(0, cashRegister.getAmountOfMoneyInStore());
+    }
+
+    @Test
+    void throwsException_when_buildingSimulationWithEmptyInventory() {
+        CashRegister cashRegister = new CashRegister(new InMemoryRegisterStorage());
+        CheckoutSimulation.SimulationBuilder builder = new CheckoutSimulation.SimulationBuilder(new InventoryBalance(), cashRegister);
+
+        assertThrows(IllegalArgumentException.class, builder::build);
+    }
+}
@@ -2,9 +2,17 @@ import org.junit.jupiter.api.Test;
 import org.mockito.MockedStatic;
 import org.mockito.Mockito;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -12,6 +20,7 @@ public class TestInventoryBalance {
 
     static final String DEFAULT_PRODUCT_NAME = "Product Name";
     static final String TEST_DATA_FILE_PATH = "src/test/resources/product_test_data.csv";
+    static final String TEST_DATA_WITH_BARCODES_FILE_PATH = "src/test/resources/product_test_data_with_barcodes.csv";
 
     @Test
     void removesProduct_when_removingProductInInventory() {
@@ -26,6 +35,33 @@ public class TestInventoryBalance {
         assertFalse(inventoryBalance.contains(product));
     }
 
+    @Test
+    void reusesSlotAndKeepsValuesOfRemovedProduct_when_productsAreRemovedAndAdded() {
+        InventoryBalance inventoryBalance = new InventoryBalance();
+        Product removedProduct = createDefaultProduct("Removed");
+        inventoryBalance.addProduct(removedProduct);
+        inventoryBalance.addProduct(createDefaultProduct(DEFAULT_PRODUCT_NAME));
+        removedProduct.setDiscount(10);
+        removedProduct.setLowStockThreshold(3);
+        inventoryBalance.deleteProduct(removedProduct);
+
+        for (int i = 0; i < 100; i++) {
+            Product product = createDefaultProduct("Product " + i);
+            inventoryBalance.addProduct(product);
+            inventoryBalance.deleteProduct(product);
+        }
+        inventoryBalance.addProduct(createDefaultProduct("Last"));
+
+        assertEquals(2, inventoryBalance.getStore().size());
+        assertEquals(DEFAULT_PRODUCT_NAME, inventoryBalance.get("Brand Name", DEFAULT_PRODUCT_NAME).getProductName());
+        assertEquals("Last", inventoryBalance.get("Brand Name", "Last").getProductName());
+        assertEquals(10, removedProduct.getDiscount());
+        assertEquals(3, removedProduct.getLowStockThreshold());
+        assertEquals(10, removedProduct.getAmount());
+        assertTrue(removedProduct.tryReserve(10));
+        assertFalse(removedProduct.tryReserve(1));
+    }
+
     @Test
     void throwsException_when_tryingToRemove_ProductNotInInventory() {
         InventoryBalance inventoryBalance = new InventoryBalance();
@@ -46,6 +82,18 @@ public class TestInventoryBalance {
         assertThrows(IllegalArgumentException.class, () -> inventoryBalance.addProduct(product));
     }
 
+    @Test
+    void throwsExceptionAndKeepsProduct_when_tryingToAddProductOfAnotherInventory() {
+        InventoryBalance firstInventory = new InventoryBalance();
+        InventoryBalance secondInventory = new InventoryBalance();
+        Product product = createDefaultProduct(DEFAULT_PRODUCT_NAME);
+        firstInventory.addProduct(product);
+
+        assertThrows(IllegalArgumentException.class, () -> secondInventory.addProduct(product));
+        assertTrue(firstInventory.contains(product));
+        assertFalse(secondInventory.contains(product));
+    }
+
     @Test
     void displaysEveryProduct_when_inventoryIsPrinted() {
         InventoryBalance inventoryBalance = new InventoryBalance();
@@ -93,6 +141,34 @@ public class TestInventoryBalance {
         assertTrue(containsFirstItem && containsSecondItem);
     }
 
+    @Test
+    void updatesProductsLowInStock_when_amountCrossesThreshold() {
+        InventoryBalance inventoryBalance = new InventoryBalance();
+        Product product = createDefaultProduct(DEFAULT_PRODUCT_NAME);
+        inventoryBalance.addProduct(product);
+        assertFalse(inventoryBalance.getProductsLowInStock().contains(product));
+
+        product.setAmount(5);
+        product.decrement();
+        assertTrue(inventoryBalance.getProductsLowInStock().contains(product));
+
+        product.increment();
+        assertFalse(inventoryBalance.getProductsLowInStock().contains(product));
+    }
+
+    @Test
+    void usesProductThreshold_when_productHasOwnLowStockThreshold() {
+        InventoryBalance inventoryBalance = new InventoryBalance();
+        Product product = createDefaultProduct(DEFAULT_PRODUCT_NAME);
+        inventoryBalance.addProduct(product);
+
+        product.setLowStockThreshold(20);
+        assertTrue(inventoryBalance.getProductsLowInStock().contains(product));
+
+        inventoryBalance.deleteProduct(product);
+        assertTrue(inventoryBalance.getProductsLowInStock().isEmpty());
+    }
+
     @Test
     void showsEveryProductAboutToExpire_when_findingEveryProductWithShortExpirationDate() {
         InventoryBalance inventoryBalance = InventoryLoader.createInventoryBalanceFromTextFile(TEST_DATA_FILE_PATH);
@@ -124,6 +200,39 @@ public class TestInventoryBalance {
         }
     }
 
+    @Test
+    void findsOnlyProductsExpiringWithinDays_when_searchingByNumberOfDays() {
+        InventoryBalance inventoryBalance = new InventoryBalance();
+        Product expiresSoon = createDefaultProduct("Expires soon");
+        Product expiresLater = createDefaultProduct("Expires later");
+        inventoryBalance.addProduct(expiresSoon);
+        inventoryBalance.addProduct(expiresLater);
+
+        // Expiration dates set after the products were added are indexed as well.
+        expiresSoon.setExpirationDate(LocalDate.now().plusDays(2));
+        expiresLater.setExpirationDate(LocalDate.now().plusDays(400));
+
+        List<Product> expiringProducts = inventoryBalance.getProductsExpiringWithin(3);
+        assertEquals(List.of(expiresSoon), expiringProducts);
+        assertEquals(List.of(expiresSoon, expiresLater), inventoryBalance.getProductsExpiringWithin(400));
+    }
+
+    @Test
+    void dropsExpiredProducts_when_rollingExpirationIndexForward() {
+        InventoryBalance inventoryBalance = new InventoryBalance();
+        Product expiredProduct = createDefaultProduct("Expired");
+        Product freshProduct = createDefaultProduct("Fresh");
+        expiredProduct.setExpirationDate(LocalDate.now().minusDays(1));
+        freshProduct.setExpirationDate(LocalDate.now());
+        inventoryBalance.addProduct(expiredProduct);
+        inventoryBalance.addProduct(freshProduct);
+        assertEquals(2, inventoryBalance.getProductsAboutToExpire().size());
+
+        assertEquals(1, inventoryBalance.rollExpirationIndexForward(LocalDate.now()));
+        assertEquals(List.of(freshProduct), inventoryBalance.getProductsAboutToExpire());
+        assertTrue(inventoryBalance.contains(expiredProduct));
+    }
+
     @Test
     void findsProductInInventory_when_searchingByName() {
         InventoryBalance inventoryBalance = new InventoryBalance();
@@ -133,6 +242,24 @@ public class TestInventoryBalance {
         assertEquals(addedProduct, foundProduct);
     }
 
+    @Test
+    void findsProductInInventory_when_searchingByBarcode() {
+        InventoryBalance inventoryBalance = InventoryLoader.createInventoryBalanceFromTextFile(TEST_DATA_WITH_BARCODES_FILE_PATH);
+        InventoryBalance mappedInventoryBalance = InventoryLoader.createInventoryBalanceFromMappedFile(TEST_DATA_WITH_BARCODES_FILE_PATH);
+
+        assertEquals(inventoryBalance.get("Arla", "Mellanmjölk"), inventoryBalance.getByBarcode(7310865004703L));
+        assertEquals(mappedInventoryBalance.get("Marabou", "Mjölkchoklad"), mappedInventoryBalance.getByBarcode(7622300336738L));
+        assertFalse(mappedInventoryBalance.get("Garant", "Lättmjölk").hasABarcode());
+    }
+
+    @Test
+    void throwsException_when_tryingToFindABarcodeNotInInventory() {
+        InventoryBalance inventoryBalance = InventoryLoader.createInventoryBalanceFromTextFile(TEST_DATA_WITH_BARCODES_FILE_PATH);
+        inventoryBalance.deleteProduct("Arla", "Mellanmjölk");
+
+        assertThrows(NoSuchElementException.class, () -> inventoryBalance.getByBarcode(7310865004703L));
+    }
+
     @Test
     void throwsException_when_tryingToFindAProductNotInInventory() {
         InventoryBalance inventoryBalance = new InventoryBalance();
@@ -143,11 +270,176 @@ public class TestInventoryBalance {
         assertThrows(NoSuchElementException.class, () -> inventoryBalance.get(productNotAdded));
     }
 
+    @Test
+    void keepsBothProducts_when_productNamesHaveSameHashCode() {
+        InventoryBalance inventoryBalance = new InventoryBalance();
+        // "Aa" and "BB" have the same String hashCode, so these two products have the same hashCode as well.
+        Product firstProduct = new Product.ProductBuilder("Aa", DEFAULT_PRODUCT_NAME)
+                .setPrice(10_00).setAmount(1).setVatRate(VAT.FOOD).build();
+        Product secondProduct = new Product.ProductBuilder("BB", DEFAULT_PRODUCT_NAME)
+                .setPrice(20_00).setAmount(2).setVatRate(VAT.FOOD).build();
+        assertEquals(firstProduct.hashCode(), secondProduct.hashCode());
+
+        inventoryBalance.addProduct(firstProduct);
+        inventoryBalance.addProduct(secondProduct);
+        inventoryBalance.deleteProduct(firstProduct);
+
+        assertFalse(inventoryBalance.contains(firstProduct));
+        assertSame(secondProduct, inventoryBalance.get("BB", DEFAULT_PRODUCT_NAME));
+        assertEquals(10_00, firstProduct.getPriceInMinorUnits());
+        assertEquals(2, secondProduct.getAmount());
+    }
+
+    @Test
+    void loadsSameProducts_when_loadingFromMappedFile() {
+        assertSameProducts(InventoryLoader.createInventoryBalanceFromTextFile(TEST_DATA_FILE_PATH),
+                InventoryLoader.createInventoryBalanceFromMappedFile(TEST_DATA_FILE_PATH));
+        assertSameProducts(InventoryLoader.createInventoryBalanceFromTextFile(TEST_DATA_WITH_BARCODES_FILE_PATH),
+                InventoryLoader.createInventoryBalanceFromMappedFile(TEST_DATA_WITH_BARCODES_FILE_PATH));
+    }
+
+    @Test
+    void loadsSameProducts_when_mappedFileIsSplitIntoChunksEndingInsideLines() {
+        // Every line is longer than a chunk, so each chunk is rounded up to the end of the line it ends in.
+        assertSameProducts(InventoryLoader.createInventoryBalanceFromTextFile(TEST_DATA_FILE_PATH),
+                InventoryLoader.createInventoryBalanceFromMappedFile(TEST_DATA_FILE_PATH, 16));
+        assertSameProducts(InventoryLoader.createInventoryBalanceFromTextFile(TEST_DATA_WITH_BARCODES_FILE_PATH),
+                InventoryLoader.createInventoryBalanceFromMappedFile(TEST_DATA_WITH_BARCODES_FILE_PATH, 16));
+    }
+
+    @Test
+    void loadsSameBarcodes_when_barcodesHaveSurroundingSpaces() throws IOException {
+        Path file = Files.createTempFile("products", ".csv");
+        try {
+            Files.writeString(file, "brandName,productName,priceInMinorUnits,vatRate,amount,discount,barcode,\n"
+                    + "Arla,Mellanmjölk,149500,VAT.FOOD,10,0, 7310865004703 ,\n"
+                    + "Garant,Lättmjölk,169000,VAT.FOOD,10,0,  ,\n");
+
+            InventoryBalance mappedInventory = InventoryLoader.createInventoryBalanceFromMappedFile(file.toString());
+            assertSameProducts(InventoryLoader.createInventoryBalanceFromTextFile(file.toString()), mappedInventory);
+            assertEquals(7310865004703L, mappedInventory.get("Arla", "Mellanmjölk").getBarcode());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    void loadsSameProducts_when_loadingSavedSnapshot() throws IOException {
+        InventoryBalance savedInventory = InventoryLoader.createInventoryBalanceFromTextFile(TEST_DATA_FILE_PATH);
+        Product productWithExpirationDate = new Product.ProductBuilder("Brand Name", DEFAULT_PRODUCT_NAME)
+                .setPrice(2000_00)
+                .setAmount(10)
+                .setVatRate(VAT.STANDARD)
+                .setBarcode(7310865004703L)
+                .build();
+        productWithExpirationDate.setExpirationDate(LocalDate.of(2023, 12, 24));
+        productWithExpirationDate.setAmount(0);
+        savedInventory.addProduct(productWithExpirationDate);
+
+        Path snapshotFile = Files.createTempFile("inventory", ".snapshot");
+        try {
+            savedInventory.saveSnapshot(snapshotFile.toString());
+            InventoryBalance loadedInventory = InventoryBalance.loadSnapshot(snapshotFile.toString());
+
+            assertEquals(savedInventory.toString().length(), loadedInventory.toString().length());
+            Product loadedProduct = loadedInventory.get(productWithExpirationDate);
+            assertEquals(LocalDate.of(2023, 12, 24), loadedProduct.getExpirationDate());
+            assertEquals(0, loadedProduct.getAmount());
+            assertSame(loadedProduct, loadedInventory.getByBarcode(7310865004703L));
+            assertEquals(VAT.REDUCED, loadedInventory.get("Tidsam", "Hänt Extra").getVat());
+        } finally {
+            Files.deleteIfExists(snapshotFile);
+        }
+    }
+
+    @Test
+    void throwsException_when_loadingSnapshotWithNameOrVatOutOfRange() throws IOException {
+        InventoryBalance savedInventory = new InventoryBalance();
+        savedInventory.addProduct(createDefaultProduct(DEFAULT_PRODUCT_NAME));
+        Path snapshotFile = Files.createTempFile("inventory", ".snapshot");
+        try {
+            savedInventory.saveSnapshot(snapshotFile.toString());
+            byte[] snapshot = Files.readAllBytes(snapshotFile);
+            ByteBuffer buffer = ByteBuffer.wrap(snapshot);
+            int dictionaryEnd = 5 * Integer.BYTES + (buffer.getInt(12) + 1) * Integer.BYTES + buffer.getInt(16);
+            int brandColumn = (dictionaryEnd + 7) / 8 * 8 + 2 * Long.BYTES;
+
+            buffer.putInt(brandColumn, 2);
+            Files.write(snapshotFile, snapshot);
+            assertThrows(IllegalArgumentException.class, () -> InventoryBalance.loadSnapshot(snapshotFile.toString()));
+
+            buffer.putInt(brandColumn, 0);
+            snapshot[snapshot.length - 1] = (byte) VAT.values().length;
+            Files.write(snapshotFile, snapshot);
+            assertThrows(IllegalArgumentException.class, () -> InventoryBalance.loadSnapshot(snapshotFile.toString()));
+        } finally {
+            Files.deleteIfExists(snapshotFile);
+        }
+    }
+
+    @Test
+    void throwsException_when_loadingSnapshotFromCsvFile() {
+        assertThrows(IllegalArgumentException.class, () -> InventoryBalance.loadSnapshot(TEST_DATA_FILE_PATH));
+    }
+
+    @Test
+    void deliversOneChangePerProduct_when_productChangesManyTimesBetweenBatches() throws InterruptedException {
+        InventoryBalance inventoryBalance = new InventoryBalance();
+        Product product = createDefaultProduct(DEFAULT_PRODUCT_NAME);
+        inventoryBalance.addProduct(product);
+        BlockingQueue<InventoryChange> deliveredChanges = new LinkedBlockingQueue<>();
+        BlockingQueue<Thread> deliveringThreads = new LinkedBlockingQueue<>();
+        InventoryChangeListener listener = changes -> {
+            deliveredChanges.addAll(changes);
+            deliveringThreads.add(Thread.currentThread());
+        };
+        inventoryBalance.subscribe(listener);
+
+        for (int i = 0; i < 8; i++) {
+            product.decrement();
+        }
+        product.setDiscount(10);
+
+        int numberOfDeliveredChanges = 0;
+        InventoryChange change;
+        do {
+            change = deliveredChanges.poll(5, TimeUnit.SECONDS);
+            assertNotNull(change);
+            numberOfDeliveredChanges++;
+        } while (change.getAmount() != 2 || change.getDiscount() != 10);
+        inventoryBalance.unsubscribe(listener);
+
+        assertSame(product, change.getProduct());
+        assertTrue(change.hasDiscountChanged());
+        assertTrue(numberOfDeliveredChanges < 9);
+        assertNotSame(Thread.currentThread(), deliveringThreads.take());
+    }
+
+    @Test
+    void throwsException_when_unsubscribingListenerNotSubscribed() {
+        InventoryBalance inventoryBalance = new InventoryBalance();
+
+        assertThrows(NoSuchElementException.class, () -> inventoryBalance.unsubscribe(changes -> {
+        }));
+    }
+
     /**
      * Support method used to create a Product with typical values.
      *
      * @return a "junk" Product not present in inventory.
      */
+    private static void assertSameProducts(InventoryBalance expectedInventory, InventoryBalance actualInventory) {
+        assertEquals(expectedInventory.getProducts().size(), actualInventory.getProducts().size());
+        for (Product expected : expectedInventory.getProducts()) {
+            Product actual = actualInventory.get(expected.getBrandName(), expected.getProductName());
+            assertEquals(expected.getPriceInMinorUnits(), actual.getPriceInMinorUnits());
+            assertEquals(expected.getVat(), actual.getVat());
+            assertEquals(expected.getAmount(), actual.getAmount());
+            assertEquals(expected.getDiscount(), actual.getDiscount());
+            assertEquals(expected.getBarcode(), actual.getBarcode());
+        }
+    }
+
     private Product createDefaultProduct(String productName) {
         return new Product.ProductBuilder("Brand Name", productName)
                 .setPrice(2000_00)
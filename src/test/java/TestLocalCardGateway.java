@@ -0,0 +1,33 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestLocalCardGateway {
+
+    @Test
+    void givesSameDecision_when_sameRequestIsSentAgain() throws Exception {
+        try (LocalCardGateway gateway = new LocalCardGateway.LocalCardGatewayBuilder().setDeclineRate(0.5).build()) {
+            for (long requestId = 1; requestId <= 20; requestId++) {
+                boolean approved = gateway.authorize(requestId, 100_00).get(5, TimeUnit.SECONDS);
+                for (int retry = 0; retry < 5; retry++) {
+                    assertEquals(approved, gateway.authorize(requestId, 100_00).get(5, TimeUnit.SECONDS));
+                }
+            }
+        }
+    }
+
+    @Test
+    void declinesRequest_when_itIsSentAgainAfterBeingReversed() throws Exception {
+        try (LocalCardGateway gateway = new LocalCardGateway.LocalCardGatewayBuilder().build()) {
+            assertTrue(gateway.authorize(1, 100_00).get(5, TimeUnit.SECONDS));
+            gateway.reverse(1).get(5, TimeUnit.SECONDS);
+            gateway.reverse(2).get(5, TimeUnit.SECONDS);
+
+            assertFalse(gateway.authorize(1, 100_00).get(5, TimeUnit.SECONDS));
+            assertFalse(gateway.authorize(2, 100_00).get(5, TimeUnit.SECONDS));
+            assertEquals(1, gateway.getNumberOfReversals());
+        }
+    }
+}
@@ -0,0 +1,116 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.NoSuchElementException;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestParkedPurchases {
+
+    private Path parkingDirectory;
+    private InventoryBalance inventoryBalance;
+    private Product milk;
+    private Product toiletPaper;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        parkingDirectory = Files.createTempDirectory("parked");
+        inventoryBalance = new InventoryBalance();
+        milk = new Product.ProductBuilder("Arla", "Mellanmjölk").setAmount(10).setPrice(2000).setVatRate(VAT.FOOD).build();
+        toiletPaper = new Product.ProductBuilder("Lambi", "8P toalettpapper").setAmount(10).setDiscount(10).setPrice(6500).setVatRate(VAT.STANDARD).build();
+        inventoryBalance.addProduct(milk);
+        inventoryBalance.addProduct(toiletPaper);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        try (Stream<Path> files = Files.list(parkingDirectory)) {
+            for (Path file : files.toList()) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(parkingDirectory);
+    }
+
+    @Test
+    void resumesSameLinesAndTotals_when_purchaseIsParkedInFile() {
+        Promotions promotions = new Promotions();
+        promotions.add(Promotion.multiBuy("3 för 2", milk, 3, 2));
+        Purchase purchase = new Purchase(promotions);
+        purchase.scanItem(toiletPaper);
+        purchase.scanItem(milk, 3);
+        String itemsBeforeParking = purchase.getPurchasedItems().toString();
+        int totalPriceBeforeParking = purchase.getTotalPrice();
+        int totalDiscountBeforeParking = purchase.getTotalDiscount();
+
+        long ticket = new ParkedPurchases(inventoryBalance, promotions, parkingDirectory.toString()).park(purchase);
+        assertTrue(purchase.getPurchasedItems().isEmpty());
+        assertEquals(0, purchase.getTotalPrice());
+        ParkedPurchases reopened = new ParkedPurchases(inventoryBalance, promotions, parkingDirectory.toString());
+        Purchase resumed = reopened.resume(ticket);
+
+        assertEquals(itemsBeforeParking, resumed.getPurchasedItems().toString());
+        assertEquals(totalPriceBeforeParking, resumed.getTotalPrice());
+        assertEquals(totalDiscountBeforeParking, resumed.getTotalDiscount());
+        resumed.removeScannedItem(milk);
+        assertEquals(0, resumed.getPromotionDiscount());
+        assertEquals(0, reopened.getNumberOfParkedPurchases());
+    }
+
+    @Test
+    void keepsStockReserved_when_purchaseIsParked() {
+        ParkedPurchases parkedPurchases = new ParkedPurchases(inventoryBalance);
+        Purchase purchase = new Purchase();
+        purchase.scanItem(milk, 4);
+
+        long ticket = parkedPurchases.park(purchase);
+        assertEquals(6, milk.getAmount());
+        parkedPurchases.cancel(ticket);
+
+        assertEquals(10, milk.getAmount());
+        assertThrows(NoSuchElementException.class, () -> parkedPurchases.resume(ticket));
+    }
+
+    @Test
+    void reservesStockAgainForSameProducts_when_parkedBeforeRestart() {
+        Purchase purchase = new Purchase();
+        purchase.scanItem(milk, 3);
+        long resumedTicket = new ParkedPurchases(inventoryBalance, null, parkingDirectory.toString()).park(purchase);
+        purchase.scanItem(toiletPaper, 2);
+        long cancelledTicket = new ParkedPurchases(inventoryBalance, null, parkingDirectory.toString()).park(purchase);
+
+        // After a restart the products are loaded in another order, with other SKU ids, and nothing is reserved.
+        InventoryBalance restartedInventory = new InventoryBalance();
+        Product restartedToiletPaper = new Product.ProductBuilder("Lambi", "8P toalettpapper").setAmount(10).setPrice(6500).setVatRate(VAT.STANDARD).build();
+        Product restartedMilk = new Product.ProductBuilder("Arla", "Mellanmjölk").setAmount(10).setPrice(2000).setVatRate(VAT.FOOD).build();
+        restartedInventory.addProduct(restartedToiletPaper);
+        restartedInventory.addProduct(restartedMilk);
+        ParkedPurchases reopened = new ParkedPurchases(restartedInventory, null, parkingDirectory.toString());
+
+        Purchase resumed = reopened.resume(resumedTicket);
+        assertEquals(3, (int) resumed.getPurchasedItems().get(restartedInventory.get("Arla", "Mellanmjölk")));
+        assertEquals(7, restartedInventory.get("Arla", "Mellanmjölk").getAmount());
+        reopened.cancel(cancelledTicket);
+        assertEquals(10, restartedInventory.get("Lambi", "8P toalettpapper").getAmount());
+        assertEquals(0, reopened.getNumberOfParkedPurchases());
+    }
+
+    @Test
+    void keepsPurchaseParked_when_itCannotBeResumed() {
+        ParkedPurchases parkedPurchases = new ParkedPurchases(inventoryBalance, null, parkingDirectory.toString());
+        Purchase purchase = new Purchase();
+        purchase.scanItem(milk, 2);
+        long ticket = parkedPurchases.park(purchase);
+        inventoryBalance.deleteProduct(milk);
+
+        assertThrows(IllegalArgumentException.class, () -> parkedPurchases.resume(ticket));
+        assertEquals(1, parkedPurchases.getNumberOfParkedPurchases());
+        inventoryBalance.addProduct(new Product.ProductBuilder("Arla", "Mellanmjölk").setAmount(10).setPrice(2000).setVatRate(VAT.FOOD).build());
+        assertEquals(2, (int) parkedPurchases.resume(ticket).getPurchasedItems().get(inventoryBalance.get("Arla", "Mellanmjölk")));
+    }
+}
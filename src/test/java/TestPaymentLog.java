@@ -0,0 +1,255 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestPaymentLog {
+
+    private static final long PAYMENT_AMOUNT = 250_00;
+    private static final int COMPACTION_INTERVAL = 4;
+
+    private Path databaseFile;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        databaseFile = Files.createTempFile("cashRegisterMoney", ".txt");
+        Files.writeString(databaseFile, "0");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        Files.deleteIfExists(Path.of(databaseFile + ".wal"));
+        Files.deleteIfExists(databaseFile);
+    }
+
+    @Test
+    void paymentIsNotRecovered_when_forcingItFailedWithPerPayment() {
+        FailingForceChannel[] channel = new FailingForceChannel[1];
+        try (PaymentLog log = new PaymentLog(databaseFile.toString(), PaymentLog.Durability.PER_PAYMENT,
+                logFile -> channel[0] = new FailingForceChannel(openLog(logFile)), COMPACTION_INTERVAL)) {
+            log.append(PAYMENT_AMOUNT);
+            channel[0].failNextForce = true;
+            assertThrows(IllegalArgumentException.class, () -> log.append(2 * PAYMENT_AMOUNT));
+            log.append(3 * PAYMENT_AMOUNT);
+        }
+
+        try (PaymentLog log = new PaymentLog(databaseFile.toString(), PaymentLog.Durability.PER_PAYMENT)) {
+            assertEquals(4 * PAYMENT_AMOUNT, log.getBalance());
+        }
+    }
+
+    @Test
+    void paymentIsNotRecovered_when_forcingItFailedWithBatched() {
+        FailingForceChannel[] channel = new FailingForceChannel[1];
+        try (PaymentLog log = new PaymentLog(databaseFile.toString(), PaymentLog.Durability.BATCHED,
+                logFile -> channel[0] = new FailingForceChannel(openLog(logFile)), COMPACTION_INTERVAL)) {
+            log.append(PAYMENT_AMOUNT);
+            channel[0].failNextForce = true;
+            assertThrows(IllegalArgumentException.class, () -> log.append(2 * PAYMENT_AMOUNT));
+            log.append(3 * PAYMENT_AMOUNT);
+        }
+
+        try (PaymentLog log = new PaymentLog(databaseFile.toString(), PaymentLog.Durability.BATCHED)) {
+            assertEquals(4 * PAYMENT_AMOUNT, log.getBalance());
+        }
+    }
+
+    @Test
+    void everyPaymentIsRecovered_when_logWasCompactedWhileAppending() throws IOException {
+        try (PaymentLog log = new PaymentLog(databaseFile.toString(), PaymentLog.Durability.PER_PAYMENT,
+                TestPaymentLog::openLog, COMPACTION_INTERVAL)) {
+            for (int i = 0; i < 2 * COMPACTION_INTERVAL + 2; i++) {
+                log.append(PAYMENT_AMOUNT);
+            }
+        }
+
+        assertEquals(Integer.BYTES + Long.BYTES + 2 * (Long.BYTES + Integer.BYTES),
+                Files.size(Path.of(databaseFile + ".wal")));
+        try (PaymentLog log = new PaymentLog(databaseFile.toString(), PaymentLog.Durability.PER_PAYMENT)) {
+            assertEquals((2 * COMPACTION_INTERVAL + 2) * PAYMENT_AMOUNT, log.getBalance());
+        }
+    }
+
+    @Test
+    void paymentIsRecoveredOnce_when_startingTheLogOverFailedWhileCompacting() {
+        FailingForceChannel[] channel = new FailingForceChannel[1];
+        try (PaymentLog log = new PaymentLog(databaseFile.toString(), PaymentLog.Durability.PER_PAYMENT,
+                logFile -> channel[0] = new FailingForceChannel(openLog(logFile)), COMPACTION_INTERVAL)) {
+            for (int i = 0; i < COMPACTION_INTERVAL - 1; i++) {
+                log.append(PAYMENT_AMOUNT);
+            }
+            channel[0].failNextTruncate = true;
+            assertEquals(COMPACTION_INTERVAL * PAYMENT_AMOUNT, log.append(PAYMENT_AMOUNT));
+            log.append(PAYMENT_AMOUNT);
+        }
+
+        try (PaymentLog log = new PaymentLog(databaseFile.toString(), PaymentLog.Durability.PER_PAYMENT)) {
+            assertEquals((COMPACTION_INTERVAL + 1) * PAYMENT_AMOUNT, log.getBalance());
+        }
+    }
+
+    @Test
+    void concurrentPaymentsShareForces_when_durabilityIsBatched() throws InterruptedException {
+        int numberOfThreads = 8;
+        int paymentsPerThread = 25;
+        FailingForceChannel[] channel = new FailingForceChannel[1];
+        try (PaymentLog log = new PaymentLog(databaseFile.toString(), PaymentLog.Durability.BATCHED,
+                logFile -> channel[0] = new FailingForceChannel(openLog(logFile)), Integer.MAX_VALUE)) {
+            channel[0].forceDelayInMs = 2;
+            int forcesBefore = channel[0].numberOfForces.get();
+            Thread[] threads = new Thread[numberOfThreads];
+            for (int i = 0; i < numberOfThreads; i++) {
+                threads[i] = new Thread(() -> {
+                    for (int j = 0; j < paymentsPerThread; j++) {
+                        log.append(PAYMENT_AMOUNT);
+                    }
+                });
+                threads[i].start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+
+            int forces = channel[0].numberOfForces.get() - forcesBefore;
+            assertTrue(forces < numberOfThreads * paymentsPerThread, forces + " forces");
+            assertEquals(numberOfThreads * paymentsPerThread * PAYMENT_AMOUNT, log.getBalance());
+        }
+    }
+
+    private static FileChannel openLog(Path logFile) throws IOException {
+        return FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * A log channel whose next force fails after the records have been written, like a disk that fails to flush,
+     * or whose next truncate fails. It counts forces and can make them slow.
+     */
+    private static class FailingForceChannel extends FileChannel {
+
+        private final FileChannel channel;
+        final AtomicInteger numberOfForces = new AtomicInteger();
+        volatile boolean failNextForce;
+        volatile boolean failNextTruncate;
+        volatile long forceDelayInMs;
+
+        FailingForceChannel(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public void force(boolean metaData) throws IOException {
+            if (failNextForce) {
+                failNextForce = false;
+                throw new IOException("Disk failed to flush");
+            }
+            numberOfForces.incrementAndGet();
+            if (forceDelayInMs > 0) {
+                try {
+                    Thread.sleep(forceDelayInMs);
+                } catch (InterruptedException exception) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            channel.force(metaData);
+        }
+
+        @Override
+        public int read(ByteBuffer destination) throws IOException {
+            return channel.read(destination);
+        }
+
+        @Override
+        public long read(ByteBuffer[] destinations, int offset, int length) throws IOException {
+            return channel.read(destinations, offset, length);
+        }
+
+        @Override
+        public int write(ByteBuffer source) throws IOException {
+            return channel.write(source);
+        }
+
+        @Override
+        public long write(ByteBuffer[] sources, int offset, int length) throws IOException {
+            return channel.write(sources, offset, length);
+        }
+
+        @Override
+        public long position() throws IOException {
+            return channel.position();
+        }
+
+        @Override
+        public FileChannel position(long newPosition) throws IOException {
+            channel.position(newPosition);
+            return this;
+        }
+
+        @Override
+        public long size() throws IOException {
+            return channel.size();
+        }
+
+        @Override
+        public FileChannel truncate(long size) throws IOException {
+            if (failNextTruncate) {
+                failNextTruncate = false;
+                throw new IOException("Disk failed to truncate");
+            }
+            channel.truncate(size);
+            return this;
+        }
+
+        @Override
+        public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+            return channel.transferTo(position, count, target);
+        }
+
+        @Override
+        public long transferFrom(ReadableByteChannel source, long position, long count) throws IOException {
+            return channel.transferFrom(source, position, count);
+        }
+
+        @Override
+        public int read(ByteBuffer destination, long position) throws IOException {
+            return channel.read(destination, position);
+        }
+
+        @Override
+        public int write(ByteBuffer source, long position) throws IOException {
+            return channel.write(source, position);
+        }
+
+        @Override
+        public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+            return channel.map(mode, position, size);
+        }
+
+        @Override
+        public FileLock lock(long position, long size, boolean shared) throws IOException {
+            return channel.lock(position, size, shared);
+        }
+
+        @Override
+        public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+            return channel.tryLock(position, size, shared);
+        }
+
+        @Override
+        protected void implCloseChannel() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -1,6 +1,7 @@
 import org.junit.jupiter.api.Test;
 
 import java.time.LocalDate;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -99,6 +100,17 @@ public class TestProduct {
         assertEquals(actualPriceWithVatAndDiscount, EXPECTED_PRICE_WITH_VAT12_AND_DEFAULT_DISCOUNT);
     }
 
+    @Test
+    void returnsNewDiscountedPrice_when_discountIsChanged() {
+        Product product = createProductWithDefaultValues(VAT.FOOD);
+        product.setDiscount(25);
+
+        assertEquals(25, product.getDiscount());
+        assertEquals(1680_00, product.getPriceWithVatAndDiscount());
+        assertEquals(560_00, product.getDiscountAmount());
+        assertEquals(EXPECTED_PRICE_WITH_VAT12, product.getPriceWithVat());
+    }
+
     @Test
     void setsDiscountToDefaultValueZero_when_creatingProduct_withoutDiscount() {
         Product product = new Product.ProductBuilder(DEFAULT_BRAND_NAME, DEFAULT_PRODUCT_NAME)
@@ -176,6 +188,51 @@ public class TestProduct {
         assertTrue(correctBrand && correctName);
     }
 
+    @Test
+    void throwsException_when_creatingProduct_withInvalidBarcode() {
+        assertThrows(IllegalArgumentException.class, () ->
+                new Product.ProductBuilder(DEFAULT_BRAND_NAME, DEFAULT_PRODUCT_NAME)
+                        .setPrice(DEFAULT_PRICE)
+                        .setAmount(DEFAULT_AMOUNT)
+                        .setVatRate(VAT.FOOD)
+                        .setBarcode(-1)
+                        .build());
+    }
+
+    @Test
+    void leavesAmountUnchanged_when_reservingMoreThanInStock() {
+        Product product = createProductWithDefaultValues(VAT.FOOD);
+        assertFalse(product.tryReserve(DEFAULT_AMOUNT + 1));
+        assertEquals(DEFAULT_AMOUNT, product.getAmount());
+    }
+
+    @Test
+    void neverOversells_when_manyLanesReserveTheSameProduct() throws InterruptedException {
+        Product product = createProductWithDefaultValues(VAT.FOOD);
+        int numberOfLanes = 20;
+        int attemptsPerLane = 100;
+        product.setAmount(1000);
+        AtomicInteger successfulReservations = new AtomicInteger();
+
+        Thread[] lanes = new Thread[numberOfLanes];
+        for (int i = 0; i < numberOfLanes; i++) {
+            lanes[i] = new Thread(() -> {
+                for (int attempt = 0; attempt < attemptsPerLane; attempt++) {
+                    if (product.tryReserve(1)) {
+                        successfulReservations.incrementAndGet();
+                    }
+                }
+            });
+            lanes[i].start();
+        }
+        for (Thread lane : lanes) {
+            lane.join();
+        }
+
+        assertEquals(1000, successfulReservations.get());
+        assertEquals(0, product.getAmount());
+    }
+
     /**
      * Support method used to create a product with default values.
      *
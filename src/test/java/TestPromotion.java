@@ -0,0 +1,135 @@
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestPromotion {
+
+    private final Product milk = new Product.ProductBuilder("Arla", "Mellanmjölk").setAmount(20).setPrice(2000).setVatRate(VAT.FOOD).build();
+    private final Product muesli = new Product.ProductBuilder("Axa", "Fruktmusli").setAmount(20).setPrice(3600).setVatRate(VAT.FOOD).build();
+    private final Product cheese = new Product.ProductBuilder("Arla", "Hushållsost").setAmount(20).setDiscount(5).setPrice(12600).setVatRate(VAT.FOOD).build();
+
+    @Test
+    void givesOneUnitForFree_when_scanningThreeForTwo() {
+        Promotions promotions = new Promotions();
+        promotions.add(Promotion.multiBuy("3 för 2", milk, 3, 2));
+        Purchase purchase = new Purchase(promotions);
+
+        purchase.scanItem(milk, 2);
+        assertEquals(0, purchase.getPromotionDiscount());
+        purchase.scanItem(milk);
+        assertEquals(milk.getPriceWithVatAndDiscount(), purchase.getPromotionDiscount());
+        purchase.scanItem(milk);
+        assertEquals(milk.getPriceWithVatAndDiscount(), purchase.getPromotionDiscount());
+        assertEquals(4 * milk.getPriceWithVatAndDiscount() - milk.getPriceWithVatAndDiscount(), purchase.getTotalPrice());
+    }
+
+    @Test
+    void takesBackDiscount_when_removingItemOfAppliedPromotion() {
+        Promotions promotions = new Promotions();
+        promotions.add(Promotion.multiBuy("3 för 2", milk, 3, 2));
+        Purchase purchase = new Purchase(promotions);
+
+        purchase.scanItem(milk, 3);
+        purchase.removeScannedItem(milk);
+
+        assertEquals(0, purchase.getPromotionDiscount());
+        assertEquals(0, purchase.getTotalDiscount());
+    }
+
+    @Test
+    void chargesBundlePrice_when_scanningEveryProductOfBundle() {
+        Promotions promotions = new Promotions();
+        promotions.add(Promotion.bundle("Frukost", 50_00, milk, muesli));
+        Purchase purchase = new Purchase(promotions);
+
+        purchase.scanItem(milk);
+        assertEquals(0, purchase.getPromotionDiscount());
+        purchase.scanItem(muesli);
+
+        assertEquals(50_00, purchase.getTotalPrice());
+    }
+
+    @Test
+    void givesPercentOff_when_reachingThresholdQuantity() {
+        Promotions promotions = new Promotions();
+        promotions.add(Promotion.threshold("Ostfest", 3, 10, cheese, milk));
+        Purchase purchase = new Purchase(promotions);
+
+        purchase.scanItem(cheese);
+        purchase.scanItem(milk);
+        assertEquals(0, purchase.getPromotionDiscount());
+        purchase.scanItem(milk);
+
+        int memberValue = cheese.getPriceWithVatAndDiscount() + 2 * milk.getPriceWithVatAndDiscount();
+        assertEquals(memberValue / 10, purchase.getPromotionDiscount());
+        assertEquals(cheese.getDiscountAmount() + memberValue / 10, purchase.getTotalDiscount());
+    }
+
+    @Test
+    void listsAppliedPromotions_when_printingReceipt() {
+        Promotions promotions = new Promotions();
+        Promotion threeForTwo = Promotion.multiBuy("3 för 2", milk, 3, 2);
+        promotions.add(threeForTwo);
+        promotions.add(Promotion.bundle("Frukost", 50_00, milk, muesli));
+        Purchase purchase = new Purchase(promotions);
+        purchase.scanItem(milk, 3);
+
+        Receipt receipt = new Receipt(purchase);
+
+        assertEquals(1, receipt.getAppliedPromotions().size());
+        assertEquals(milk.getPriceWithVatAndDiscount(), (int) receipt.getAppliedPromotions().get(threeForTwo));
+        assertTrue(receipt.toString().contains("\n3 för 2, rabatt: 22kr\n"));
+    }
+
+    @Test
+    void countsUnitsScannedBefore_when_promotionIsAddedDuringPurchase() {
+        Promotions promotions = new Promotions();
+        Purchase purchase = new Purchase(promotions);
+        purchase.scanItem(milk, 2);
+
+        promotions.add(Promotion.multiBuy("3 för 2", milk, 3, 2));
+        purchase.scanItem(milk);
+
+        assertEquals(milk.getPriceWithVatAndDiscount(), purchase.getPromotionDiscount());
+    }
+
+    @Test
+    void totalIsNotAboveUndiscountedPrice_when_removingUnitsScannedBeforeBundleWasAdded() {
+        Promotions promotions = new Promotions();
+        Purchase purchase = new Purchase(promotions);
+        purchase.scanItem(milk);
+        purchase.scanItem(muesli);
+
+        promotions.add(Promotion.bundle("Frukost", 50_00, milk, muesli));
+        purchase.removeScannedItem(milk);
+
+        assertEquals(0, purchase.getPromotionDiscount());
+        assertEquals(muesli.getPriceWithVatAndDiscount(), purchase.getTotalPrice());
+    }
+
+    @Test
+    void givesUnitAwayAtScannedPrice_when_discountOfProductChangesAfterScanning() {
+        Promotions promotions = new Promotions();
+        promotions.add(Promotion.multiBuy("3 för 2", milk, 3, 2));
+        Purchase purchase = new Purchase(promotions);
+        int scannedPrice = milk.getPriceWithVatAndDiscount();
+        purchase.scanItem(milk, 3);
+
+        milk.setDiscount(50);
+
+        assertEquals(scannedPrice, purchase.getPromotionDiscount());
+    }
+
+    @Test
+    void throwsException_when_creatingMultiBuy_withPayQuantityNotBelowBuyQuantity() {
+        assertThrows(IllegalArgumentException.class, () -> Promotion.multiBuy("2 för 2", milk, 2, 2));
+    }
+
+    @Test
+    void throwsException_when_addingPromotionToTwoCatalogs() {
+        Promotion promotion = Promotion.multiBuy("3 för 2", milk, 3, 2);
+        new Promotions().add(promotion);
+
+        assertThrows(IllegalArgumentException.class, () -> new Promotions().add(promotion));
+    }
+}
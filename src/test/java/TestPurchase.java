@@ -251,6 +251,69 @@ public class TestPurchase {
         assertThrows(NoSuchElementException.class, () -> purchase.removeScannedItem(products.get(3)));
     }
 
+    @Test
+    public void scanningManyUnitsAtOnceGivesSameTotalsAsScanningThemOneByOne(){
+        ArrayList<Product> products = setUpProducts();
+        Purchase purchaseOneByOne = new Purchase();
+        for(int i = 0; i < 4; i++){
+            purchaseOneByOne.scanItem(products.get(2));
+        }
+        Purchase purchaseAtOnce = new Purchase();
+        purchaseAtOnce.scanItem(products.get(2), 4);
+
+        assertEquals(purchaseOneByOne.getTotalPrice(), purchaseAtOnce.getTotalPrice());
+        assertEquals(purchaseOneByOne.getTotalVAT(), purchaseAtOnce.getTotalVAT());
+        assertEquals(purchaseOneByOne.getTotalDiscount(), purchaseAtOnce.getTotalDiscount());
+        assertEquals(4, (int) purchaseAtOnce.getPurchasedItems().get(products.get(2)));
+        assertEquals(2, products.get(2).getAmount());
+    }
+
+    @Test
+    public void scanningItemsWhereOneHasTooFewUnitsInStoreScansNothing(){
+        Purchase purchase = new Purchase();
+        ArrayList<Product> products = setUpProducts();
+        HashMap<Product, Integer> itemsToScan = new HashMap<>();
+        itemsToScan.put(products.get(0), 3);
+        itemsToScan.put(products.get(5), 2);
+
+        assertThrows(IllegalArgumentException.class, () -> purchase.scanItems(itemsToScan));
+        assertEquals(new HashMap<Product, Integer>(), purchase.getPurchasedItems());
+        assertEquals(10, products.get(0).getAmount());
+        assertEquals(1, products.get(5).getAmount());
+    }
+
+    @Test
+    public void removingManyUnitsAtOnceLeavesRemainingUnitsInPurchase(){
+        Purchase purchase = new Purchase();
+        ArrayList<Product> products = setUpProducts();
+        purchase.scanItem(products.get(1), 5);
+        purchase.removeScannedItem(products.get(1), 3);
+
+        assertEquals(2, (int) purchase.getPurchasedItems().get(products.get(1)));
+        assertEquals(2 * products.get(1).getPriceInMinorUnits(), purchase.getTotalPriceExVat());
+        assertEquals(8, products.get(1).getAmount());
+        assertThrows(IllegalArgumentException.class, () -> purchase.removeScannedItem(products.get(1), 3));
+    }
+
+    @Test
+    public void purchasedItemsAreListedInScanOrder(){
+        Purchase purchase = new Purchase();
+        ArrayList<Product> products = setUpProducts();
+        purchase.scanItem(products.get(4));
+        purchase.scanItem(products.get(0));
+        purchase.scanItem(products.get(3));
+        purchase.scanItem(products.get(0));
+        purchase.removeScannedItem(products.get(4));
+        purchase.scanItem(products.get(4));
+
+        ArrayList<Product> expectedOrder = new ArrayList<>();
+        expectedOrder.add(products.get(0));
+        expectedOrder.add(products.get(3));
+        expectedOrder.add(products.get(4));
+        assertEquals(expectedOrder, new ArrayList<>(purchase.getPurchasedItems().keySet()));
+        assertEquals(2, (int) purchase.getPurchasedItems().get(products.get(0)));
+    }
+
     private ArrayList<Product> setUpProducts(){
         ArrayList<Product> productList = new ArrayList<>();
         productList.add(new Product.ProductBuilder("Arla", "Mellanmjölk").setAmount(10).setDiscount(0).setPrice(2000).setVatRate(VAT.FOOD).build());
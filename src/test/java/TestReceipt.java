@@ -2,8 +2,12 @@ import org.junit.jupiter.api.Test;
 import org.mockito.MockedStatic;
 import org.mockito.Mockito;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -30,6 +34,42 @@ public class TestReceipt {
 
     }
 
+    @Test
+    public void receiptIsNotChangedByScanningAfterItWasCreated(){
+        Purchase purchase = setUpPurchase();
+        Receipt receipt = new Receipt(purchase);
+        String receiptBeforeScanning = receipt.toString();
+        purchase.scanItem(purchase.getPurchasedItems().keySet().iterator().next());
+        purchase.cancelPurchase();
+
+        assertEquals(receiptBeforeScanning, receipt.toString());
+    }
+
+    @Test
+    public void renderingToByteBufferGivesSameTextAsToString(){
+        Receipt receipt = new Receipt(setUpPurchase());
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        int bytesWritten = ReceiptRenderer.renderText(receipt, buffer);
+
+        byte[] expectedBytes = receipt.toString().getBytes(StandardCharsets.UTF_8);
+        assertEquals(expectedBytes.length, bytesWritten);
+        assertArrayEquals(expectedBytes, Arrays.copyOf(buffer.array(), bytesWritten));
+    }
+
+    @Test
+    public void renderingAsJsonListsItemsAndTotalsInMinorUnits() throws IOException {
+        Purchase purchase = new Purchase();
+        purchase.scanItem(new Product.ProductBuilder("Zeta", "\"Extra\" mozzarella").setAmount(10).setPrice(3400).setVatRate(VAT.FOOD).build(), 2);
+        Receipt receipt = new Receipt(purchase);
+        StringBuilder json = new StringBuilder();
+        ReceiptRenderer.renderJson(receipt, json);
+
+        String expectedJson = "{\"items\":[{\"brandName\":\"Zeta\",\"productName\":\"\\\"Extra\\\" mozzarella\",\"quantity\":2}],\"promotions\":[],"
+                + "\"totalPriceExVat\":6800,\"totalVat\":816,\"totalDiscount\":0,\"totalPrice\":7616,"
+                + "\"date\":\"" + receipt.date + "\"}";
+        assertEquals(expectedJson, json.toString());
+    }
+
     private ArrayList<Product> setUpProducts(){
         ArrayList<Product> productList = new ArrayList<>();
         productList.add(new Product.ProductBuilder("Arla", "Mellanmjölk").setAmount(10).setDiscount(0).setPrice(2000).setVatRate(VAT.FOOD).build());
@@ -0,0 +1,133 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestReceiptJournal {
+
+    private Path journalDirectory;
+    private InventoryBalance inventoryBalance;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        journalDirectory = Files.createTempDirectory("receipts");
+        inventoryBalance = new InventoryBalance();
+        inventoryBalance.addProduct(new Product.ProductBuilder("Arla", "Mellanmjölk").setAmount(100).setPrice(2000).setVatRate(VAT.FOOD).setBarcode(7310865004703L).build());
+        inventoryBalance.addProduct(new Product.ProductBuilder("Lambi", "8P toalettpapper").setAmount(100).setDiscount(10).setPrice(6500).setVatRate(VAT.STANDARD).setBarcode(7311041013717L).build());
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        try (Stream<Path> files = Files.list(journalDirectory)) {
+            for (Path file : files.toList()) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(journalDirectory);
+    }
+
+    @Test
+    void readsBackSameReceipts_when_journalIsReopened() {
+        Receipt firstReceipt = createReceipt(1);
+        Receipt secondReceipt = createReceipt(3);
+        try (ReceiptJournal journal = new ReceiptJournal(journalDirectory.toString(), inventoryBalance)) {
+            assertEquals(1, journal.append(firstReceipt));
+            assertEquals(2, journal.append(secondReceipt));
+        }
+
+        try (ReceiptJournal journal = new ReceiptJournal(journalDirectory.toString(), inventoryBalance)) {
+            assertEquals(2, journal.getNumberOfReceipts());
+            assertEquals(secondReceipt.toString(), journal.get(2).toString());
+            assertEquals(2, journal.get(2).getId());
+            List<Receipt> receiptsOfTheDay = journal.getReceiptsFrom(firstReceipt.date);
+            assertEquals(2, receiptsOfTheDay.size());
+            assertEquals(firstReceipt.toString(), receiptsOfTheDay.get(0).toString());
+            assertEquals(3, journal.append(createReceipt(2)));
+        }
+    }
+
+    @Test
+    void startsNewSegment_when_receiptDoesNotFitInCurrentSegment() throws IOException {
+        try (ReceiptJournal journal = new ReceiptJournal(journalDirectory.toString(), inventoryBalance, 64)) {
+            for (int quantity = 1; quantity <= 10; quantity++) {
+                journal.append(createReceipt(quantity));
+            }
+            assertEquals(10, journal.getNumberOfReceipts());
+            assertEquals(createReceipt(7).getTotalPrice(), journal.get(7).getTotalPrice());
+        }
+        try (Stream<Path> files = Files.list(journalDirectory)) {
+            assertTrue(files.count() > 1);
+        }
+    }
+
+    @Test
+    void readsBackSameReceipts_when_inventoryIsReloadedWithOtherSkuIds() {
+        inventoryBalance.addProduct(new Product.ProductBuilder("Zoégas", "Skånerost").setAmount(100).setPrice(5900).setVatRate(VAT.FOOD).build());
+        Purchase purchase = new Purchase();
+        purchase.scanItem(inventoryBalance.get("Zoégas", "Skånerost"), 2);
+        purchase.scanItem(inventoryBalance.get("Lambi", "8P toalettpapper"));
+        Receipt receipt = new Receipt(purchase);
+        try (ReceiptJournal journal = new ReceiptJournal(journalDirectory.toString(), inventoryBalance)) {
+            journal.append(receipt);
+        }
+
+        InventoryBalance reloadedInventory = new InventoryBalance();
+        reloadedInventory.addProduct(new Product.ProductBuilder("Lambi", "8P toalettpapper").setAmount(100).setDiscount(10).setPrice(6500).setVatRate(VAT.STANDARD).setBarcode(7311041013717L).build());
+        reloadedInventory.addProduct(new Product.ProductBuilder("Zoégas", "Skånerost").setAmount(100).setPrice(5900).setVatRate(VAT.FOOD).build());
+        try (ReceiptJournal journal = new ReceiptJournal(journalDirectory.toString(), reloadedInventory)) {
+            assertEquals(receipt.toString(), journal.get(1).toString());
+        }
+    }
+
+    @Test
+    void treatsTornRecordAsEndOfJournal_when_checksumDoesNotMatch() throws IOException {
+        try (ReceiptJournal journal = new ReceiptJournal(journalDirectory.toString(), inventoryBalance)) {
+            journal.append(createReceipt(1));
+            journal.append(createReceipt(2));
+        }
+        Path segment = journalDirectory.resolve("receipts-00000000.journal");
+        byte[] bytes = Files.readAllBytes(segment);
+        int secondRecord = 4 + 8 + ByteBuffer.wrap(bytes).getInt(4);
+        bytes[secondRecord + 8 + 2] ^= 0x40;
+        Files.write(segment, bytes);
+
+        try (ReceiptJournal journal = new ReceiptJournal(journalDirectory.toString(), inventoryBalance)) {
+            assertEquals(1, journal.getNumberOfReceipts());
+            assertEquals(2, journal.append(createReceipt(3)));
+            assertEquals(createReceipt(3).getTotalPrice(), journal.get(2).getTotalPrice());
+        }
+    }
+
+    @Test
+    void throwsException_when_gettingReceiptNotInJournal() {
+        try (ReceiptJournal journal = new ReceiptJournal(journalDirectory.toString(), inventoryBalance)) {
+            journal.append(createReceipt(1));
+            assertThrows(NoSuchElementException.class, () -> journal.get(2));
+        }
+    }
+
+    @Test
+    void throwsException_when_appendingSameReceiptTwice() {
+        Receipt receipt = createReceipt(1);
+        try (ReceiptJournal journal = new ReceiptJournal(journalDirectory.toString(), inventoryBalance)) {
+            journal.append(receipt);
+            assertThrows(IllegalArgumentException.class, () -> journal.append(receipt));
+        }
+    }
+
+    private Receipt createReceipt(int quantity) {
+        Purchase purchase = new Purchase();
+        purchase.scanItem(inventoryBalance.get("Arla", "Mellanmjölk"));
+        purchase.scanItem(inventoryBalance.get("Lambi", "8P toalettpapper"), quantity);
+        return new Receipt(purchase);
+    }
+}
@@ -0,0 +1,95 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestRegisterStateFile {
+
+    private Path directory;
+    private Path databaseFile;
+    private Path textFile;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        directory = Files.createTempDirectory("register-state");
+        databaseFile = directory.resolve("cashRegisterMoney.state");
+        textFile = directory.resolve("cashRegisterMoney.txt");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    @Test
+    void readsOlderCopy_when_newestCopyIsTorn() throws IOException {
+        RegisterStateFile.write(databaseFile, 100_00, 0);
+        RegisterStateFile.write(databaseFile, 250_00, 0);
+        assertEquals(250_00, RegisterStateFile.read(databaseFile).getBalanceInMinorUnit());
+
+        // The second write went to the second slot; a crash halfway through it leaves its balance half written.
+        try (RandomAccessFile file = new RandomAccessFile(databaseFile.toFile(), "rw")) {
+            file.seek(RegisterStateFile.SLOT_SIZE_IN_BYTES + 14);
+            file.write(new byte[]{0x7F, 0x7F});
+        }
+
+        assertEquals(100_00, RegisterStateFile.read(databaseFile).getBalanceInMinorUnit());
+        RegisterStateFile.write(databaseFile, 300_00, 0);
+        assertEquals(300_00, RegisterStateFile.read(databaseFile).getBalanceInMinorUnit());
+    }
+
+    @Test
+    void keepsTextFormat_when_textFileIsWritten() throws IOException {
+        Files.writeString(textFile, "200000\n3\n");
+
+        RegisterStateFile.State state = RegisterStateFile.read(textFile);
+        assertEquals(2000_00, state.getBalanceInMinorUnit());
+        assertEquals(3, state.getGeneration());
+
+        RegisterStateFile.write(textFile, 2100_00, 3);
+        assertEquals(List.of("210000", "3"), Files.readAllLines(textFile));
+        RegisterStateFile.write(textFile, 2200_00, 0);
+        assertEquals(List.of("220000"), Files.readAllLines(textFile));
+    }
+
+    @Test
+    void writesSameStateToStateFileAndLeavesTextFile_when_textFileIsMigrated() throws IOException {
+        Files.writeString(textFile, "200000\n3\n");
+
+        Path stateFile = RegisterStateFile.migrate(textFile);
+
+        assertEquals(databaseFile, stateFile);
+        assertEquals(RegisterStateFile.FILE_SIZE_IN_BYTES, Files.size(stateFile));
+        assertEquals(2000_00, RegisterStateFile.read(stateFile).getBalanceInMinorUnit());
+        assertEquals(3, RegisterStateFile.read(stateFile).getGeneration());
+        assertEquals("200000\n3\n", Files.readString(textFile));
+        assertThrows(IllegalArgumentException.class, () -> RegisterStateFile.migrate(textFile));
+    }
+
+    @Test
+    void throwsException_when_neitherCopyIsValid() throws IOException {
+        RegisterStateFile.write(databaseFile, 100_00, 0);
+        RegisterStateFile.write(databaseFile, 250_00, 0);
+        try (RandomAccessFile file = new RandomAccessFile(databaseFile.toFile(), "rw")) {
+            file.seek(Integer.BYTES);
+            file.writeLong(-1);
+            file.seek(RegisterStateFile.SLOT_SIZE_IN_BYTES + Integer.BYTES);
+            file.writeLong(-1);
+        }
+
+        assertThrows(IllegalArgumentException.class, () -> RegisterStateFile.read(databaseFile));
+    }
+}
@@ -0,0 +1,34 @@
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestSplitPayment {
+
+    @Test
+    void paysRestInCash_when_giftCardAndCardPayPartOfCost() {
+        SplitPayment payment = new SplitPayment.SplitPaymentBuilder(347_50)
+                .addGiftCard(100_00)
+                .addCard(200_00)
+                .addCash(CashMoney.valueOf(50_00), 1)
+                .build();
+
+        assertEquals(47_50, payment.getCashPartInMinorUnit());
+        assertEquals(50_00, payment.getCashTenderedInMinorUnit());
+    }
+
+    @Test
+    void throwsException_when_cardsPayMoreThanCost() {
+        SplitPayment.SplitPaymentBuilder builder = new SplitPayment.SplitPaymentBuilder(100_00)
+                .addGiftCard(60_00)
+                .addCard(60_00);
+        assertThrows(IllegalArgumentException.class, builder::build);
+    }
+
+    @Test
+    void throwsException_when_cashDoesNotCoverRest() {
+        SplitPayment.SplitPaymentBuilder builder = new SplitPayment.SplitPaymentBuilder(100_00)
+                .addCard(60_00)
+                .addCash(CashMoney.valueOf(20_00), 1);
+        assertThrows(IllegalArgumentException.class, builder::build);
+    }
+}
@@ -0,0 +1,52 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestStripedTotals {
+
+    @Test
+    void sumFinishes_when_everyLaneKeepsPaying() throws InterruptedException {
+        StripedTotals totals = new StripedTotals(7);
+        AtomicBoolean paying = new AtomicBoolean(true);
+        Thread[] lanes = new Thread[totals.numberOfLanes()];
+        for (int i = 0; i < lanes.length; i++) {
+            int lane = i;
+            lanes[i] = new Thread(() -> {
+                while (paying.get()) {
+                    totals.add(lane, 1);
+                }
+            });
+            lanes[i].start();
+        }
+
+        AtomicBoolean sumDecreased = new AtomicBoolean();
+        Thread totaler = new Thread(() -> {
+            long lastSum = 0;
+            for (int i = 0; i < 10_000; i++) {
+                long sum = totals.sum();
+                if (sum < lastSum) {
+                    sumDecreased.set(true);
+                }
+                lastSum = sum;
+            }
+        });
+        totaler.start();
+        totaler.join(TimeUnit.SECONDS.toMillis(30));
+        boolean finished = !totaler.isAlive();
+        paying.set(false);
+        for (Thread lane : lanes) {
+            lane.join();
+        }
+
+        assertTrue(finished);
+        assertFalse(sumDecreased.get());
+        long expectedSum = 0;
+        for (int lane = 0; lane < totals.numberOfLanes(); lane++) {
+            expectedSum += totals.get(lane);
+        }
+        assertEquals(expectedSum, totals.sum());
+    }
+}